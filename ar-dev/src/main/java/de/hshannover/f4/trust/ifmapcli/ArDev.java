@@ -44,6 +44,7 @@ import org.w3c.dom.Document;
 
 import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
 import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
+import de.hshannover.f4.trust.ifmapcli.common.PublishRequestFactory;
 import de.hshannover.f4.trust.ifmapj.binding.IfmapStrings;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifiers;
@@ -70,8 +71,15 @@ public class ArDev extends AbstractClient {
 		ParserUtil.addAccessRequest(parser);
 		ParserUtil.addDevice(parser);
 
-		parseParameters(parser, args);
+		publishIfmapData(parser, args, new PublishRequestFactory() {
+			@Override
+			public PublishRequest createPublishRequest() {
+				return createRequest();
+			}
+		});
+	}
 
+	private static PublishRequest createRequest() {
 		printParameters(KEY_OPERATION, new String[] {KEY_ACCESS_REQUEST, KEY_DEVICE});
 		
 		String ar = resource.getString(KEY_ACCESS_REQUEST);
@@ -97,7 +105,6 @@ public class ArDev extends AbstractClient {
 			request = Requests.createPublishReq(publishDelete);
 		}
 
-		// publish
-		publishIfmapData(request);
+		return request;
 	}
 }
@@ -44,6 +44,7 @@ import org.w3c.dom.Document;
 
 import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
 import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
+import de.hshannover.f4.trust.ifmapcli.common.PublishRequestFactory;
 import de.hshannover.f4.trust.ifmapj.binding.IfmapStrings;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifiers;
@@ -72,8 +73,15 @@ public class AuthAs extends AbstractClient {
 		ParserUtil.addAccessRequest(parser);
 		ParserUtil.addUsernameIdentity(parser);
 
-		parseParameters(parser, args);
-		
+		publishIfmapData(parser, args, new PublishRequestFactory() {
+			@Override
+			public PublishRequest createPublishRequest() {
+				return createRequest();
+			}
+		});
+	}
+
+	private static PublishRequest createRequest() {
 		printParameters(KEY_OPERATION, new String[] {KEY_ACCESS_REQUEST, KEY_IDENTITY_USERNAME});
 
 		String ar = resource.getString(KEY_ACCESS_REQUEST);
@@ -100,8 +108,7 @@ public class AuthAs extends AbstractClient {
 			request = Requests.createPublishReq(publishDelete);
 		}
 
-		// publish
-		publishIfmapData(request);
+		return request;
 	}
 }
 
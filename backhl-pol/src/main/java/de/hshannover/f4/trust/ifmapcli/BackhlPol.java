@@ -43,6 +43,7 @@ import org.w3c.dom.Document;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
 import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
+import de.hshannover.f4.trust.ifmapcli.common.PublishRequestFactory;
 import de.hshannover.f4.trust.ifmapj.binding.IfmapStrings;
 import de.hshannover.f4.trust.ifmapj.extendedIdentifiers.IcsIdentifiers;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
@@ -85,8 +86,15 @@ public class BackhlPol extends AbstractClient {
 		ParserUtil.addIcsNetworkName(parserA);
 		ParserUtil.addIcsPolicy(parserA);
 
-		parseParameters(parser, args);
+		publishIfmapData(parser, args, new PublishRequestFactory() {
+			@Override
+			public PublishRequest createPublishRequest() {
+				return createRequest();
+			}
+		});
+	}
 
+	private static PublishRequest createRequest() {
 		//metadata is assigned to an overlay-network-group identifier
 		if (resource.getString("target").equals("identifier")) {
 
@@ -119,8 +127,7 @@ public class BackhlPol extends AbstractClient {
 				request = Requests.createPublishReq(publishDelete);
 			}
 
-			// publish
-			publishIfmapData(request);
+			return request;
 		} else { //metadata associates two backhaul-interface identifiers
 			
 			printParameters(KEY_OPERATION, new String[] {KEY_ICS_BACKHAUL_INTERFACE,
@@ -154,10 +161,8 @@ public class BackhlPol extends AbstractClient {
 				request = Requests.createPublishReq(publishDelete);
 			}
 
-			// publish
-			publishIfmapData(request);
+			return request;
 		}
-
 	}
 
 }
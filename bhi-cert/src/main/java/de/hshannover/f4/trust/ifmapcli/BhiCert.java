@@ -43,6 +43,7 @@ import org.w3c.dom.Document;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
 import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
+import de.hshannover.f4.trust.ifmapcli.common.PublishRequestFactory;
 import de.hshannover.f4.trust.ifmapj.binding.IfmapStrings;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifiers;
@@ -73,8 +74,15 @@ public class BhiCert extends AbstractClient {
 		ParserUtil.addDistinguishedNameIdentity(parser);
 		ParserUtil.addIcsCertificate(parser);
 
-		parseParameters(parser, args);
+		publishIfmapData(parser, args, new PublishRequestFactory() {
+			@Override
+			public PublishRequest createPublishRequest() {
+				return createRequest();
+			}
+		});
+	}
 
+	private static PublishRequest createRequest() {
 		printParameters(KEY_OPERATION, new String[] {KEY_IDENTITY_DISTINGUISHED_NAME, KEY_ICS_CERTIFICATE});
 
 		String distName = resource.getString(KEY_IDENTITY_DISTINGUISHED_NAME);
@@ -101,8 +109,7 @@ public class BhiCert extends AbstractClient {
 			request = Requests.createPublishReq(publishDelete);
 		}
 
-		// publish
-		publishIfmapData(request);
+		return request;
 	}
 
 }
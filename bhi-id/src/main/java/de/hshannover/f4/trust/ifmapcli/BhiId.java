@@ -43,6 +43,7 @@ import org.w3c.dom.Document;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
 import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
+import de.hshannover.f4.trust.ifmapcli.common.PublishRequestFactory;
 import de.hshannover.f4.trust.ifmapj.binding.IfmapStrings;
 import de.hshannover.f4.trust.ifmapj.extendedIdentifiers.IcsIdentifiers;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
@@ -74,8 +75,15 @@ public class BhiId extends AbstractClient {
 		ParserUtil.addIcsBackhaulInterface(parser);
 		ParserUtil.addDistinguishedNameIdentity(parser);
 
-		parseParameters(parser, args);
+		publishIfmapData(parser, args, new PublishRequestFactory() {
+			@Override
+			public PublishRequest createPublishRequest() {
+				return createRequest();
+			}
+		});
+	}
 
+	private static PublishRequest createRequest() {
 		printParameters(KEY_OPERATION, new String[] {KEY_ICS_BACKHAUL_INTERFACE, KEY_IDENTITY_DISTINGUISHED_NAME});
 
 		String bhi = resource.getString(KEY_ICS_BACKHAUL_INTERFACE);
@@ -101,9 +109,7 @@ public class BhiId extends AbstractClient {
 			request = Requests.createPublishReq(publishDelete);
 		}
 
-		// publish
-		publishIfmapData(request);
-
+		return request;
 	}
 
 }
@@ -39,22 +39,26 @@
 
 package de.hshannover.f4.trust.ifmapcli.common;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.util.Collection;
-
-import javax.xml.transform.TransformerException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
 
 import net.sourceforge.argparse4j.ArgumentParsers;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.ArgumentParserException;
 import net.sourceforge.argparse4j.inf.Namespace;
 
-import org.w3c.dom.Document;
-
 import de.hshannover.f4.trust.ifmapcli.common.enums.IdType;
+import de.hshannover.f4.trust.ifmapcli.common.enums.OutputFormat;
 import de.hshannover.f4.trust.ifmapj.IfmapJ;
 import de.hshannover.f4.trust.ifmapj.channel.SSRC;
-import de.hshannover.f4.trust.ifmapj.config.BasicAuthConfig;
 import de.hshannover.f4.trust.ifmapj.exception.InitializationException;
 import de.hshannover.f4.trust.ifmapj.extendedIdentifiers.IcsIdentifiers;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
@@ -74,6 +78,12 @@ public abstract class AbstractClient {
 	// File and System IO
 	public static final String KEY_META_FILE_IN_SYSTEM_IN = "meta-file-in-system-in";
 
+	// batch mode
+	public static final String KEY_BATCH = "batch";
+	public static final String KEY_BATCH_SIZE = "batch-size";
+	public static final String KEY_BATCH_BYTES = "batch-bytes";
+	public static final String KEY_PROGRESS = "progress";
+
 	// Identifier
 	public static final String KEY_ACCESS_REQUEST = "accessRequest";
 	public static final String KEY_DEVICE = "device";
@@ -134,6 +144,18 @@ public abstract class AbstractClient {
 	public static final String KEY_TERMINAL_IDENTIFIER_TYPE = "terminal-identifier-type";
 	public static final String KEY_NAMESPACE_PREFIX = "namespacePrefix";
 	public static final String KEY_NAMESPACE_URI = "namespaceUri";
+	public static final String KEY_OUTPUT = "output";
+	public static final String KEY_FORMAT = "format";
+	public static final String KEY_ROOTS = "roots";
+	public static final String KEY_EXPORT = "export";
+	public static final String KEY_DIFF = "diff";
+	public static final String KEY_CACHE_TTL = "cacheTtl";
+
+	// subscribe
+	public static final String KEY_FOLLOW = "follow";
+	public static final String KEY_WORKERS = "workers";
+	public static final String KEY_VIEW = "view";
+	public static final String KEY_SUBSCRIPTIONS = "subscriptions";
 
 	// purge
 	public static final String KEY_PUBLISHER_ID = "publisherId";
@@ -142,6 +164,26 @@ public abstract class AbstractClient {
 	public static final String KEY_NUMBER_REQUESTS = "requests";
 	public static final String KEY_NUMBER_UPDATES = "updates";
 	public static final String KEY_NUMBER_SPRINTS = "sprint-size";
+	public static final String KEY_SESSIONS = "sessions";
+	public static final String KEY_RATE = "rate";
+	public static final String KEY_RAMP_UP = "ramp-up";
+	public static final String KEY_DURATION = "duration";
+	public static final String KEY_HISTOGRAM = "histogram";
+	public static final String KEY_GENERATE = "generate";
+	public static final String KEY_QUEUE_SIZE = "queue-size";
+	public static final String KEY_OPEN_LOOP = "open-loop";
+	public static final String KEY_END_TO_END = "end-to-end";
+
+	// pdp
+	public static final String KEY_POPULATION = "population";
+	public static final String KEY_USERS = "users";
+	public static final String KEY_RECORDS = "records";
+	public static final String KEY_HOLD = "hold";
+
+	// ifmapcli-daemon
+	public static final String KEY_DAEMON_PORT = "daemon-port";
+	public static final String KEY_DAEMON_MAX_IDLE = "daemon-max-idle";
+	public static final String KEY_DAEMON_TOKEN_FILE = "daemon-token-file";
 
 	// layer-2-information
 	public static final String KEY_VLAN_NUMBER = "vlan-number";
@@ -155,6 +197,7 @@ public abstract class AbstractClient {
 
 	// feature
 	public static final String KEY_TARGET_DEVICE = "target-device";
+	public static final String KEY_SEED = "seed";
 
 	// feature2
 	public static final String KEY_DEPTH = "depth";
@@ -203,6 +246,18 @@ public abstract class AbstractClient {
 
 	protected static Namespace resource;
 
+	/**
+	 * Set once a tool runs within a long-running JVM, see
+	 * {@link #runInProcess(Method, String[], File)}.
+	 */
+	private static volatile boolean sInProcess = false;
+
+	/**
+	 * The working directory of the caller of the running tool, or
+	 * <code>null</code> for the one of this JVM.
+	 */
+	private static volatile File sWorkingDirectory = null;
+
 	// in order to create the necessary objects, make use of the appropriate
 	// factory classes
 	protected static StandardIfmapMetadataFactory mf = IfmapJ
@@ -215,7 +270,10 @@ public abstract class AbstractClient {
 			.createContentAuthorizationMetadataFactory();
 
 	protected static ArgumentParser createDefaultParser() {
-		ArgumentParser parser = ArgumentParsers.newArgumentParser(command);
+		// batch mode maps the named fields of JSON records to the
+		// positional arguments
+		ArgumentParser parser = PositionalArguments.record(
+				ArgumentParsers.newArgumentParser(command));
 
 		parser.description("ifmapcli version " + DefaultConfig.IFMAP_CLI_VERSION);
 
@@ -231,8 +289,110 @@ public abstract class AbstractClient {
 			resource = parser.parseArgs(arguments);
 		} catch (ArgumentParserException e) {
 			parser.handleError(e);
-			System.exit(1);
+			exit(1);
+		}
+	}
+
+	/**
+	 * Terminate the tool with the given exit status. Within a long-running
+	 * JVM (see {@link #runInProcess(Method, String[], File)}) an
+	 * {@link ExitException} is thrown instead of calling System.exit().
+	 *
+	 * @param status - the exit status
+	 */
+	protected static void exit(int status) {
+		if (sInProcess) {
+			throw new ExitException(status);
+		}
+		System.exit(status);
+	}
+
+	/**
+	 * Run the main() method of a tool within this JVM. Calls of
+	 * {@link #exit(int)} end the tool instead of the JVM.
+	 *
+	 * @param main - the main() method of the tool
+	 * @param args - the command line of the tool
+	 * @param workingDirectory - the directory relative file names of the
+	 *            command line are resolved against, see
+	 *            {@link #resolveFile(String)}
+	 * @return the exit status of the tool; 0 if main() returns, -1 if it
+	 *         fails with an exception
+	 */
+	protected static int runInProcess(Method main, String[] args, File workingDirectory) {
+		sInProcess = true;
+		sWorkingDirectory = workingDirectory;
+		try {
+			main.invoke(null, (Object) args);
+			return 0;
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof ExitException) {
+				return ((ExitException) cause).getStatus();
+			}
+			cause.printStackTrace();
+			return -1;
+		} catch (IllegalAccessException e) {
+			e.printStackTrace();
+			return -1;
+		} finally {
+			sWorkingDirectory = null;
+		}
+	}
+
+	/**
+	 * Resolve a file name of the command line. A relative name is resolved
+	 * against the working directory of the caller when the tool runs
+	 * within a long-running JVM, see
+	 * {@link #runInProcess(Method, String[], File)}.
+	 *
+	 * @param name - the file name
+	 * @return the file
+	 */
+	protected static File resolveFile(String name) {
+		File file = new File(name);
+		File workingDirectory = sWorkingDirectory;
+		if (workingDirectory != null && !file.isAbsolute()) {
+			return new File(workingDirectory, name);
 		}
+		return file;
+	}
+
+	/**
+	 * Check that the parsed command line holds either the identifier (see
+	 * {@link ParserUtil#addOptionalIdentifier}) or the given option, and
+	 * exit otherwise.
+	 *
+	 * @param parser - the parser of the command line
+	 * @param alternativeKey - the dest of the option
+	 * @param alternative - the name of the option
+	 */
+	protected static void checkIdentifierOr(ArgumentParser parser, String alternativeKey,
+			String alternative) {
+		boolean type = resource.get(KEY_IDENTIFIER_TYPE) != null;
+		boolean identifier = resource.get(KEY_IDENTIFIER) != null;
+		String error = null;
+		if (resource.get(alternativeKey) != null) {
+			if (type || identifier) {
+				error = alternative + " replaces identifier-type and identifier";
+			}
+		} else if (!type || !identifier) {
+			error = "identifier-type and identifier are required unless " + alternative
+					+ " is given";
+		}
+		if (error != null) {
+			parser.handleError(new ArgumentParserException(error, parser));
+			exit(1);
+		}
+	}
+
+	/**
+	 * @return the positional arguments of a parser created by
+	 *         {@link #createDefaultParser()}, each given by its name and
+	 *         dest, for {@link BatchRecords#toArguments(String, List)}
+	 */
+	protected static List<String[]> getPositionals(ArgumentParser parser) {
+		return PositionalArguments.of(parser);
 	}
 
 	protected static void printParameters(String operation, String[] keys) {
@@ -258,31 +418,168 @@ public abstract class AbstractClient {
 		printParameters(null, keys);
 	}
 
+	protected static ConnectionConfig getConnectionConfig() {
+		return ConnectionConfig.fromNamespace(resource, sWorkingDirectory);
+	}
+
 	protected static SSRC createSSRC() throws FileNotFoundException, InitializationException {
-		boolean threadSafe = true;
-		int initialConnectionTimeout = 120 * 1000;
-		BasicAuthConfig config = new BasicAuthConfig(
-				resource.getString(ParserUtil.URL), 
-				resource.getString(ParserUtil.USER), 
-				resource.getString(ParserUtil.PASS), 
-				resource.getString(ParserUtil.KEYSTORE_PATH), 
-				resource.getString(ParserUtil.KEYSTORE_PASS), 
-				threadSafe, 
-				initialConnectionTimeout);
-		SSRC ssrc = IfmapJ.createSsrc(config);
-
-		return ssrc;
+		return getConnectionConfig().createSsrc();
 	}
 
+	/**
+	 * Publish the request on a session of the default {@link SessionPool}.<br/>
+	 * The session is kept open afterwards, so that subsequent publish<br/>
+	 * requests within the same JVM do not have to establish a new one.
+	 *
+	 * @param request
+	 */
 	protected static void publishIfmapData(PublishRequest request) {
+		SessionPool pool = SessionPool.getDefault();
+		PooledSession session = null;
+		try {
+			session = pool.acquire(getConnectionConfig());
+			session.publish(request);
+			pool.release(session);
+		} catch (Exception e) {
+			if (session != null) {
+				pool.invalidate(session);
+			}
+			e.printStackTrace();
+			exit(-1);
+		}
+	}
+
+	/**
+	 * Parse the command line, build the request with the given factory and
+	 * publish it. If the command line consists of <code>--batch FILE</code>
+	 * and connection and common parameters only, the tool runs in batch mode
+	 * instead, see {@link #publishBatch}.
+	 *
+	 * @param parser - the parser of the tool
+	 * @param args - the command line
+	 * @param factory - builds the request from {@link #resource}
+	 */
+	protected static void publishIfmapData(ArgumentParser parser, String[] args,
+			PublishRequestFactory factory) {
+		ParserUtil.addBatchArgumentsTo(parser);
+
+		// the tool parser requires the positional arguments, which are in
+		// the records in batch mode, so the batch mode has its own parser
+		Namespace batch = null;
 		try {
-			SSRC ssrc = createSSRC();
-			ssrc.newSession();
-			ssrc.publish(request);
-			ssrc.endSession();
+			batch = createBatchParser().parseArgs(args);
+		} catch (ArgumentParserException e) {
+			// not in batch mode, the tool parser reports the errors
+		}
+
+		if (batch == null || batch.getString(KEY_BATCH) == null) {
+			parseParameters(parser, args);
+			publishIfmapData(factory.createPublishRequest());
+		} else {
+			// the parameters of the command line apply to every record
+			parser.setDefaults(batch.getAttrs());
+			publishBatch(parser, batch.getString(KEY_BATCH),
+					Math.max(1, batch.getInt(KEY_BATCH_SIZE)), factory);
+		}
+	}
+
+	/**
+	 * @return a parser for a command line in batch mode: the connection,
+	 *         common and batch parameters; without help, which is left to
+	 *         the parser of the tool
+	 */
+	private static ArgumentParser createBatchParser() {
+		ArgumentParser parser = ArgumentParsers.newArgumentParser(command, false);
+		ParserUtil.addConnectionArgumentsTo(parser);
+		ParserUtil.addCommonArgumentsTo(parser);
+		ParserUtil.addBatchArgumentsTo(parser);
+		return parser;
+	}
+
+	/**
+	 * Publish the records of a batch file (or stdin for '-'). Every record
+	 * is parsed like a command line of the tool (see {@link BatchRecords}),
+	 * with the parameters of the command line (e.g. connection parameters)
+	 * as defaults. The elements of all records are streamed in requests of
+	 * <code>batchSize</code> elements over one pooled session. Records that
+	 * cannot be parsed are reported and skipped.
+	 */
+	private static void publishBatch(ArgumentParser parser, String batchFile, int batchSize,
+			PublishRequestFactory factory) {
+		SessionPool pool = SessionPool.getDefault();
+		PooledSession session = null;
+		ChunkedPublisher publisher = null;
+		BufferedReader reader = null;
+		List<String[]> positionals = PositionalArguments.of(parser);
+		long records = 0;
+		long errors = 0;
+		long start = System.currentTimeMillis();
+
+		try {
+			InputStream in = batchFile.equals("-") ? System.in : new FileInputStream(resolveFile(batchFile));
+			reader = new BufferedReader(new InputStreamReader(in, "UTF-8"), 64 * 1024);
+
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (!BatchRecords.isRecord(line)) {
+					continue;
+				}
+
+				PublishRequest request;
+				try {
+					List<String> recordArgs = BatchRecords.toArguments(line, positionals);
+					resource = parser.parseArgs(recordArgs.toArray(new String[recordArgs.size()]));
+					request = factory.createPublishRequest();
+				} catch (ArgumentParserException e) {
+					errors++;
+					System.err.println(batchFile + ":" + lineNumber + ": " + e.getMessage());
+					continue;
+				} catch (RuntimeException e) {
+					errors++;
+					System.err.println(batchFile + ":" + lineNumber + ": " + e.getMessage());
+					continue;
+				}
+
+				if (publisher == null) {
+					session = pool.acquire(getConnectionConfig());
+					publisher = new ChunkedPublisher(session, batchSize);
+				}
+				publisher.addAll(request.getPublishElements());
+				records++;
+			}
+
+			if (publisher != null) {
+				publisher.flush();
+				pool.release(session);
+				session = null;
+			}
 		} catch (Exception e) {
+			if (session != null) {
+				pool.invalidate(session);
+			}
 			e.printStackTrace();
-			System.exit(-1);
+			exit(-1);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+
+		if (resource != null && resource.getBoolean(ParserUtil.VERBOSE)) {
+			long duration = System.currentTimeMillis() - start;
+			System.out.println(command + ": " + records + " records, "
+					+ (publisher == null ? 0 : publisher.getElementCount()) + " elements in "
+					+ (publisher == null ? 0 : publisher.getRequestCount()) + " requests, "
+					+ errors + " errors, " + duration + "ms");
+		}
+		if (errors > 0) {
+			exit(1);
 		}
 	}
 
@@ -372,20 +669,48 @@ public abstract class AbstractClient {
 	 * @param searchResult
 	 */
 	protected static void parseSearchResult(SearchResult searchResult) {
+		try {
+			ResultWriter writer = ResultWriter.open(null, OutputFormat.text);
+			writer.write(searchResult);
+			writer.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
 
-		Collection<ResultItem> resultItems = searchResult.getResultItems();
-		for (ResultItem resultItem : resultItems) {
-			System.out.println("****************************************************************************");
-			System.out.println(resultItem);
-			Collection<Document> meta = resultItem.getMetadata();
-			for (Document document : meta) {
-				try {
-					System.out.println(Common.documentToString(document));
-				} catch (TransformerException e) {
-					e.printStackTrace();
-				}
-			}
-			System.out.println("****************************************************************************");
+	/**
+	 * Create a {@link ResultWriter} for the --output and --format
+	 * arguments, see {@link ParserUtil#addOutputArguments(ArgumentParser)}.
+	 * @return the writer
+	 * @throws FileNotFoundException
+	 */
+	protected static ResultWriter createResultWriter() throws FileNotFoundException {
+		OutputFormat format = resource.get(KEY_FORMAT);
+		String output = resource.getString(KEY_OUTPUT);
+		if (output != null && !output.equals("-")) {
+			output = resolveFile(output).getPath();
+		}
+		return ResultWriter.open(output, format == null ? OutputFormat.text : format);
+	}
+
+	/**
+	 * Thrown by {@link #exit(int)} when the tool runs within a long-running
+	 * JVM. It is an Error, so that the <code>catch (Exception e)</code>
+	 * blocks of the tools let it pass.
+	 */
+	public static class ExitException extends Error {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int mStatus;
+
+		public ExitException(int status) {
+			super("exit(" + status + ")");
+			mStatus = status;
+		}
+
+		public int getStatus() {
+			return mStatus;
 		}
 	}
 }
@@ -0,0 +1,412 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (common), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns the records of a batch file into argument vectors, exactly as if<br/>
+ * they had been given on the command line of the tool. Two formats are<br/>
+ * supported and detected per line:<br/>
+ * <ul>
+ * 	<li>CSV: every field is one argument, e.g.<br/>
+ * 	<code>update,192.168.0.1,aa:bb:cc:dd:ee:ff,--dhcp-server,dhcp1</code><br/>
+ * 	Fields may be quoted with '"'. Empty unquoted fields are skipped.</li>
+ * 	<li>JSON (one object per line): keys starting with '-' are options,<br/>
+ * 	all other keys name positional arguments, by their name or dest as<br/>
+ * 	given to argparse4j; their values are put in the order of the<br/>
+ * 	positional arguments, whatever the order of the keys, e.g.<br/>
+ * 	<code>{"ip-address": "192.168.0.1", "publish-operation": "update",
+ * 	"--dhcp-server": "dhcp1"}</code><br/>
+ * 	Unknown keys are rejected. A JSON array of strings is taken as the<br/>
+ * 	argument vector itself.</li>
+ * </ul>
+ * Blank lines and lines starting with '#' are ignored ({@link #isRecord}).
+ *
+ */
+public final class BatchRecords {
+
+	private BatchRecords() {
+	}
+
+	public static boolean isRecord(String line) {
+		String trimmed = line.trim();
+		return trimmed.length() > 0 && !trimmed.startsWith("#");
+	}
+
+	/**
+	 * Same as {@link #toArguments(String, List)} for records without named
+	 * positional arguments: JSON objects may only hold options.
+	 */
+	public static List<String> toArguments(String line) {
+		return toArguments(line, null);
+	}
+
+	/**
+	 * @param line - a CSV or JSON record
+	 * @param positionals - the positional arguments in the order they are
+	 *            expected, each given by the keys that name it in JSON
+	 *            objects (see {@link #positional(String...)})
+	 * @return the argument vector of the record
+	 * @throws IllegalArgumentException if the record is malformed
+	 */
+	public static List<String> toArguments(String line, List<String[]> positionals) {
+		String trimmed = line.trim();
+		if (trimmed.startsWith("{") || trimmed.startsWith("[")) {
+			return new JsonRecordParser(trimmed, positionals).parse();
+		}
+		return parseCsv(line);
+	}
+
+	/**
+	 * @return the positional arguments of fixed records, each named by one
+	 *         key, for {@link #toArguments(String, List)}
+	 */
+	public static List<String[]> positionals(String... names) {
+		List<String[]> positionals = new ArrayList<String[]>();
+		for (String name : names) {
+			positionals.add(new String[] {name});
+		}
+		return positionals;
+	}
+
+	static List<String> parseCsv(String line) {
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		boolean wasQuoted = false;
+
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c == '"') {
+					if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+						field.append('"');
+						i++;
+					} else {
+						quoted = false;
+					}
+				} else {
+					field.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+				wasQuoted = true;
+			} else if (c == ',') {
+				addField(fields, field, wasQuoted);
+				field.setLength(0);
+				wasQuoted = false;
+			} else {
+				field.append(c);
+			}
+		}
+		if (quoted) {
+			throw new IllegalArgumentException("unterminated quoted field");
+		}
+		addField(fields, field, wasQuoted);
+		return fields;
+	}
+
+	private static void addField(List<String> fields, StringBuilder field, boolean wasQuoted) {
+		String value = wasQuoted ? field.toString() : field.toString().trim();
+		if (wasQuoted || value.length() > 0) {
+			fields.add(value);
+		}
+	}
+
+	/**
+	 * Minimal parser for one flat JSON object or array per line. Nested
+	 * objects are not supported since command lines are flat as well.
+	 */
+	private static class JsonRecordParser {
+
+		private final String mText;
+		private final List<String[]> mPositionals;
+		private int mPos;
+
+		// true if the last value was a number or true/false/null
+		private boolean mLastWasLiteral;
+
+		JsonRecordParser(String text, List<String[]> positionals) {
+			mText = text;
+			mPositionals = positionals;
+		}
+
+		List<String> parse() {
+			List<String> args = new ArrayList<String>();
+			skipWhitespace();
+			if (peek() == '[') {
+				parseArray(args);
+			} else {
+				parseObject(args);
+			}
+			skipWhitespace();
+			if (mPos != mText.length()) {
+				throw error("unexpected trailing characters");
+			}
+			return args;
+		}
+
+		private void parseObject(List<String> args) {
+			int count = mPositionals == null ? 0 : mPositionals.size();
+			List<List<String>> positionalValues = new ArrayList<List<String>>();
+			for (int i = 0; i < count; i++) {
+				positionalValues.add(null);
+			}
+			List<String> options = new ArrayList<String>();
+
+			expect('{');
+			skipWhitespace();
+			if (peek() == '}') {
+				mPos++;
+			} else {
+				parseMembers(positionalValues, options);
+			}
+
+			// positionals first, an option with several values would take
+			// the positionals that follow it
+			for (int i = 0; i < count; i++) {
+				List<String> values = positionalValues.get(i);
+				if (values != null) {
+					for (int j = 0; j < i; j++) {
+						if (positionalValues.get(j) == null) {
+							throw new IllegalArgumentException("missing key \""
+									+ mPositionals.get(j)[0] + "\"");
+						}
+					}
+					args.addAll(values);
+				}
+			}
+			args.addAll(options);
+		}
+
+		private void parseMembers(List<List<String>> positionalValues, List<String> options) {
+			while (true) {
+				skipWhitespace();
+				int keyPos = mPos;
+				String key = parseString();
+				skipWhitespace();
+				expect(':');
+				skipWhitespace();
+				boolean option = key.startsWith("-");
+
+				List<String> values = new ArrayList<String>();
+				if (peek() == '[') {
+					parseArray(values);
+					if (option) {
+						options.add(key);
+						options.addAll(values);
+					}
+				} else {
+					String value = parseValue();
+					boolean isNull = mLastWasLiteral && "null".equals(value);
+					boolean isFalse = mLastWasLiteral && "false".equals(value);
+					if (option && mLastWasLiteral && "true".equals(value)) {
+						// flag without argument
+						options.add(key);
+					} else if (option && !isNull && !isFalse) {
+						options.add(key);
+						options.add(value);
+					} else if (!option && !isNull) {
+						values.add(value);
+					}
+				}
+
+				if (!option) {
+					int index = indexOf(key);
+					if (index < 0) {
+						mPos = keyPos;
+						throw error("unknown key \"" + key + "\", expected options or "
+								+ describePositionals());
+					} else if (positionalValues.get(index) != null) {
+						mPos = keyPos;
+						throw error("duplicate key \"" + key + "\"");
+					}
+					// null and [] leave the positional out
+					positionalValues.set(index, values.isEmpty() ? null : values);
+				}
+
+				skipWhitespace();
+				char c = next();
+				if (c == '}') {
+					return;
+				} else if (c != ',') {
+					throw error("expected ',' or '}'");
+				}
+			}
+		}
+
+		private int indexOf(String key) {
+			if (mPositionals != null) {
+				for (int i = 0; i < mPositionals.size(); i++) {
+					for (String name : mPositionals.get(i)) {
+						if (key.equals(name)) {
+							return i;
+						}
+					}
+				}
+			}
+			return -1;
+		}
+
+		private String describePositionals() {
+			if (mPositionals == null || mPositionals.isEmpty()) {
+				return "no positional arguments";
+			}
+			StringBuilder sb = new StringBuilder();
+			for (String[] names : mPositionals) {
+				sb.append(sb.length() == 0 ? "" : ", ").append('"').append(names[0]).append('"');
+			}
+			return sb.toString();
+		}
+
+		private void parseArray(List<String> values) {
+			expect('[');
+			skipWhitespace();
+			if (peek() == ']') {
+				mPos++;
+				return;
+			}
+			while (true) {
+				skipWhitespace();
+				values.add(parseValue());
+				skipWhitespace();
+				char c = next();
+				if (c == ']') {
+					return;
+				} else if (c != ',') {
+					throw error("expected ',' or ']'");
+				}
+			}
+		}
+
+		private String parseValue() {
+			if (peek() == '"') {
+				mLastWasLiteral = false;
+				return parseString();
+			}
+			int start = mPos;
+			while (mPos < mText.length() && ",}] \t".indexOf(mText.charAt(mPos)) < 0) {
+				mPos++;
+			}
+			if (start == mPos) {
+				throw error("value expected");
+			}
+			mLastWasLiteral = true;
+			return mText.substring(start, mPos);
+		}
+
+		private String parseString() {
+			expect('"');
+			StringBuilder sb = new StringBuilder();
+			while (true) {
+				char c = next();
+				if (c == '"') {
+					return sb.toString();
+				} else if (c == '\\') {
+					char e = next();
+					switch (e) {
+					case 'b':
+						sb.append('\b');
+						break;
+					case 'f':
+						sb.append('\f');
+						break;
+					case 'n':
+						sb.append('\n');
+						break;
+					case 'r':
+						sb.append('\r');
+						break;
+					case 't':
+						sb.append('\t');
+						break;
+					case 'u':
+						if (mPos + 4 > mText.length()) {
+							throw error("invalid unicode escape");
+						}
+						try {
+							sb.append((char) Integer.parseInt(mText.substring(mPos, mPos + 4), 16));
+						} catch (NumberFormatException ex) {
+							throw error("invalid unicode escape");
+						}
+						mPos += 4;
+						break;
+					default:
+						sb.append(e);
+						break;
+					}
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+
+		private void skipWhitespace() {
+			while (mPos < mText.length() && Character.isWhitespace(mText.charAt(mPos))) {
+				mPos++;
+			}
+		}
+
+		private char peek() {
+			if (mPos >= mText.length()) {
+				throw error("unexpected end of record");
+			}
+			return mText.charAt(mPos);
+		}
+
+		private char next() {
+			char c = peek();
+			mPos++;
+			return c;
+		}
+
+		private void expect(char c) {
+			if (next() != c) {
+				mPos--;
+				throw error("expected '" + c + "'");
+			}
+		}
+
+		private IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(message + " at column " + (mPos + 1));
+		}
+	}
+}
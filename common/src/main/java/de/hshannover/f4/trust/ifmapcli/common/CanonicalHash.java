@@ -0,0 +1,176 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (common), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+
+/**
+ * 64-bit FNV-1a hashes of the canonical forms of identifiers and metadata,<br/>
+ * used to compare graphs without keeping them in memory.<br/>
+ * <br/>
+ * The canonical form of an identifier is its key, see<br/>
+ * {@link IdentifierAttributes#getKey(Identifier)}. The canonical form of<br/>
+ * metadata consists of the namespace and local names of its elements, their<br/>
+ * attributes by namespace, local name and value, sorted, and their trimmed<br/>
+ * text. Namespace declarations,<br/>
+ * prefixes and the <code>ifmap-timestamp</code> attribute, which the MAPS<br/>
+ * sets on every publish, do not change the hash.
+ *
+ */
+public final class CanonicalHash {
+
+	private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long PRIME = 0x100000001b3L;
+
+	// separates the parts of a canonical form, cannot occur in XML text
+	private static final char SEPARATOR = '\u0000';
+
+	private static final String TIMESTAMP = "ifmap-timestamp";
+
+	private CanonicalHash() {
+	}
+
+	/**
+	 * @return the hash of an identifier
+	 */
+	public static long hash(Identifier identifier) {
+		return hash(IdentifierAttributes.getKey(identifier));
+	}
+
+	/**
+	 * @return the hash of a string, e.g. the key of an identifier
+	 */
+	public static long hash(String value) {
+		return update(OFFSET_BASIS, value);
+	}
+
+	/**
+	 * @return the hash of a link between two identifiers, which does not
+	 *         depend on the order of the identifiers
+	 */
+	public static long hashLink(long identifier1, long identifier2) {
+		return identifier1 <= identifier2
+				? combine(identifier1, identifier2)
+				: combine(identifier2, identifier1);
+	}
+
+	/**
+	 * @return the hash of a metadata document
+	 */
+	public static long hash(Document metadata) {
+		return update(OFFSET_BASIS, metadata.getDocumentElement());
+	}
+
+	/**
+	 * @return a hash of two hashes, e.g. of the identifier or link and one
+	 *         of its metadata
+	 */
+	public static long combine(long first, long second) {
+		long hash = OFFSET_BASIS;
+		for (int shift = 0; shift < 64; shift += 8) {
+			hash = (hash ^ ((first >>> shift) & 0xff)) * PRIME;
+		}
+		for (int shift = 0; shift < 64; shift += 8) {
+			hash = (hash ^ ((second >>> shift) & 0xff)) * PRIME;
+		}
+		return hash;
+	}
+
+	private static long update(long hash, Element element) {
+		hash = update(hash, element.getNamespaceURI());
+		hash = update(hash, element.getLocalName() != null ? element.getLocalName() : element.getTagName());
+
+		NamedNodeMap attributeMap = element.getAttributes();
+		List<String> attributes = new ArrayList<String>(attributeMap.getLength());
+		for (int i = 0; i < attributeMap.getLength(); i++) {
+			Attr attribute = (Attr) attributeMap.item(i);
+			String name = attribute.getName();
+			if (name.equals("xmlns") || name.startsWith("xmlns:") || name.equals(TIMESTAMP)) {
+				continue;
+			}
+			// like elements, by namespace and local name, not by prefix
+			String key = attribute.getLocalName() != null ? attribute.getLocalName() : name;
+			if (attribute.getNamespaceURI() != null) {
+				key = attribute.getNamespaceURI() + SEPARATOR + key;
+			}
+			attributes.add(key + '=' + attribute.getValue());
+		}
+		Collections.sort(attributes);
+		for (String attribute : attributes) {
+			hash = update(hash, attribute);
+		}
+
+		StringBuilder text = new StringBuilder();
+		for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeType() == Node.ELEMENT_NODE) {
+				hash = update(hash, (Element) child);
+			} else if (child.getNodeType() == Node.TEXT_NODE
+					|| child.getNodeType() == Node.CDATA_SECTION_NODE) {
+				text.append(child.getNodeValue());
+			}
+		}
+		hash = update(hash, text.toString().trim());
+		// end of element, so that nesting changes the hash
+		return update(hash, SEPARATOR);
+	}
+
+	private static long update(long hash, String value) {
+		if (value != null) {
+			for (int i = 0; i < value.length(); i++) {
+				hash = update(hash, value.charAt(i));
+			}
+		}
+		return update(hash, SEPARATOR);
+	}
+
+	private static long update(long hash, char c) {
+		hash = (hash ^ (c & 0xff)) * PRIME;
+		return (hash ^ (c >>> 8)) * PRIME;
+	}
+}
@@ -0,0 +1,363 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (common), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli.common;
+
+import java.io.PrintStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import de.hshannover.f4.trust.ifmapj.exception.IfmapErrorResult;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapException;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+import de.hshannover.f4.trust.ifmapj.messages.PublishDelete;
+import de.hshannover.f4.trust.ifmapj.messages.PublishElement;
+import de.hshannover.f4.trust.ifmapj.messages.PublishNotify;
+import de.hshannover.f4.trust.ifmapj.messages.PublishRequest;
+import de.hshannover.f4.trust.ifmapj.messages.PublishUpdate;
+import de.hshannover.f4.trust.ifmapj.messages.Requests;
+
+/**
+ * Collects {@link PublishElement}s and sends them in {@link PublishRequest}s<br/>
+ * of at most <code>maxElements</code> elements over one session. Call<br/>
+ * {@link #flush()} to send the remaining elements.<br/>
+ * <br/>
+ * Optionally a request is also sent before it grows beyond a number of<br/>
+ * bytes, as estimated by {@link #estimateSize(PublishElement)}. When<br/>
+ * pipelined, a request is sent on a background thread while the next one<br/>
+ * is collected; the requests are still sent one after the other, and an<br/>
+ * error is thrown by the next call. Pipelined publishers must be closed.
+ *
+ */
+public class ChunkedPublisher {
+
+	// the publish, update and identifier tags around the metadata
+	private static final int ELEMENT_OVERHEAD = 120;
+	private static final int IDENTIFIER_OVERHEAD = 40;
+
+	private final PooledSession mSession;
+	private final int mMaxElements;
+	private long mMaxBytes;
+
+	private PublishRequest mCurrent;
+	private int mCurrentSize;
+	private long mCurrentBytes;
+
+	private long mElementCount;
+	private long mSentCount;
+	private long mRequestCount;
+	private long mByteCount;
+	private final long mStart = System.nanoTime();
+
+	private ExecutorService mSender;
+	private Future<?> mInFlight;
+	private int mInFlightSize;
+
+	private PrintStream mProgress;
+	private long mProgressInterval;
+	private long mNextProgress;
+
+	public ChunkedPublisher(PooledSession session, int maxElements) {
+		if (maxElements < 1) {
+			throw new IllegalArgumentException("maxElements must be positive");
+		}
+		mSession = session;
+		mMaxElements = maxElements;
+	}
+
+	/**
+	 * @param maxBytes - the estimated size a request should not exceed, 0 for
+	 *            no limit; an element that is larger on its own is sent alone
+	 */
+	public void setMaxBytes(long maxBytes) {
+		mMaxBytes = maxBytes;
+	}
+
+	/**
+	 * Send the requests on a background thread, see {@link ChunkedPublisher}.
+	 */
+	public void setPipelined(boolean pipelined) {
+		if (pipelined && mSender == null) {
+			mSender = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "chunked-publisher");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Print the progress to <code>out</code> after a request, at most every
+	 * <code>intervalMillis</code> milliseconds.
+	 */
+	public void setProgress(PrintStream out, long intervalMillis) {
+		mProgress = out;
+		mProgressInterval = intervalMillis * 1000000L;
+		mNextProgress = System.nanoTime() + mProgressInterval;
+	}
+
+	public void add(PublishElement element) throws IfmapErrorResult, IfmapException {
+		long size = mMaxBytes > 0 ? estimateSize(element) : 0;
+		if (mCurrentSize > 0 && mMaxBytes > 0 && mCurrentBytes + size > mMaxBytes) {
+			send();
+		}
+		if (mCurrent == null) {
+			mCurrent = Requests.createPublishReq();
+		}
+		mCurrent.addPublishElement(element);
+		mCurrentSize++;
+		mCurrentBytes += size;
+		mElementCount++;
+
+		if (mCurrentSize >= mMaxElements) {
+			send();
+		}
+	}
+
+	public void addAll(Collection<? extends PublishElement> elements)
+			throws IfmapErrorResult, IfmapException {
+		for (PublishElement element : elements) {
+			add(element);
+		}
+	}
+
+	/**
+	 * Send the elements that were added since the last request. When
+	 * pipelined, wait until all requests are sent.
+	 */
+	public void flush() throws IfmapErrorResult, IfmapException {
+		send();
+		awaitInFlight();
+	}
+
+	/**
+	 * Send the remaining elements and stop the background thread.
+	 */
+	public void close() throws IfmapErrorResult, IfmapException {
+		try {
+			flush();
+		} finally {
+			if (mSender != null) {
+				mSender.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of elements that were added since the last request
+	 *         and are not sent yet
+	 */
+	public int getPendingCount() {
+		return mCurrentSize;
+	}
+
+	public long getElementCount() {
+		return mElementCount;
+	}
+
+	public long getRequestCount() {
+		return mRequestCount;
+	}
+
+	/**
+	 * @return the estimated size of all requests, only counted with a
+	 *         byte limit
+	 */
+	public long getByteCount() {
+		return mByteCount;
+	}
+
+	/**
+	 * Print the totals and the throughput since the publisher was created.
+	 */
+	public void report(PrintStream out) {
+		double seconds = (System.nanoTime() - mStart) / 1e9;
+		out.println("Elements:        " + mElementCount + " in " + mRequestCount + " requests");
+		if (mMaxBytes > 0) {
+			out.println("Estimated size:  " + mByteCount / 1024 + " KiB");
+		}
+		out.println("Total Duration:  " + String.format("%.3f", seconds) + " s");
+		out.println("Throughput:      " + String.format("%.1f", mElementCount / seconds) + " elements/s");
+	}
+
+	/**
+	 * Estimate the size of the XML of a publish element: the identifiers,
+	 * the metadata, or the filter of a delete.
+	 */
+	public static long estimateSize(PublishElement element) {
+		long size = ELEMENT_OVERHEAD;
+		for (Identifier identifier : new Identifier[] {element.getIdentifier1(), element.getIdentifier2()}) {
+			if (identifier != null) {
+				size += IDENTIFIER_OVERHEAD + IdentifierAttributes.getKey(identifier).length();
+			}
+		}
+		List<Document> metadata = null;
+		if (element instanceof PublishUpdate) {
+			metadata = ((PublishUpdate) element).getMetadata();
+		} else if (element instanceof PublishNotify) {
+			metadata = ((PublishNotify) element).getMetadata();
+		} else if (element instanceof PublishDelete && ((PublishDelete) element).getFilter() != null) {
+			size += ((PublishDelete) element).getFilter().length();
+		}
+		if (metadata != null) {
+			for (Document document : metadata) {
+				size += estimateSize(document.getDocumentElement());
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Tags, attributes and text of a node and its children.
+	 */
+	private static long estimateSize(Node node) {
+		switch (node.getNodeType()) {
+		case Node.ELEMENT_NODE:
+			// <name ...></name>
+			long size = 2 * node.getNodeName().length() + 5;
+			NamedNodeMap attributes = node.getAttributes();
+			for (int i = 0; i < attributes.getLength(); i++) {
+				Node attribute = attributes.item(i);
+				// name="value"
+				size += attribute.getNodeName().length() + attribute.getNodeValue().length() + 4;
+			}
+			for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+				size += estimateSize(child);
+			}
+			return size;
+		case Node.TEXT_NODE:
+		case Node.CDATA_SECTION_NODE:
+			return node.getNodeValue().length();
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Send the current request, or hand it to the background thread.
+	 */
+	private void send() throws IfmapErrorResult, IfmapException {
+		if (mCurrentSize == 0) {
+			return;
+		}
+		final PublishRequest request = mCurrent;
+		int size = mCurrentSize;
+		mByteCount += mCurrentBytes;
+		mCurrent = null;
+		mCurrentSize = 0;
+		mCurrentBytes = 0;
+
+		if (mSender == null) {
+			mSession.publish(request);
+			sent(size);
+			return;
+		}
+		// only one request in flight, so they arrive in order
+		awaitInFlight();
+		mInFlight = mSender.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws IfmapErrorResult, IfmapException {
+				mSession.publish(request);
+				return null;
+			}
+		});
+		mInFlightSize = size;
+	}
+
+	/**
+	 * Wait for the request on the background thread and throw its error.
+	 */
+	private void awaitInFlight() throws IfmapErrorResult, IfmapException {
+		if (mInFlight == null) {
+			return;
+		}
+		Future<?> inFlight = mInFlight;
+		mInFlight = null;
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					inFlight.get();
+					break;
+				} catch (InterruptedException e) {
+					// the request is sent anyway, do not lose track of it
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IfmapErrorResult) {
+				throw (IfmapErrorResult) cause;
+			} else if (cause instanceof IfmapException) {
+				throw (IfmapException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw (Error) cause;
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		sent(mInFlightSize);
+	}
+
+	private void sent(int size) {
+		mSentCount += size;
+		mRequestCount++;
+		if (mProgress != null && System.nanoTime() >= mNextProgress) {
+			mNextProgress = System.nanoTime() + mProgressInterval;
+			double seconds = (System.nanoTime() - mStart) / 1e9;
+			mProgress.println(mSentCount + " elements in " + mRequestCount + " requests, "
+					+ String.format("%.1f", mSentCount / seconds) + " elements/s");
+		}
+	}
+}
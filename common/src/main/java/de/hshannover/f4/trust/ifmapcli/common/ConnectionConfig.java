@@ -0,0 +1,183 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (common), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli.common;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+import net.sourceforge.argparse4j.inf.Namespace;
+import de.hshannover.f4.trust.ifmapj.IfmapJ;
+import de.hshannover.f4.trust.ifmapj.channel.SSRC;
+import de.hshannover.f4.trust.ifmapj.config.BasicAuthConfig;
+import de.hshannover.f4.trust.ifmapj.exception.InitializationException;
+
+/**
+ * Immutable set of connection parameters for a MAPS. Two configurations<br/>
+ * are equal if they would authenticate the same user against the same<br/>
+ * server with the same truststore, so instances can be used as keys of<br/>
+ * the {@link SessionPool}.
+ *
+ */
+public class ConnectionConfig {
+
+	private static final boolean THREAD_SAFE = true;
+	private static final int INITIAL_CONNECTION_TIMEOUT = 120 * 1000;
+
+	private final String mUrl;
+	private final String mUser;
+	private final String mPass;
+	private final String mKeystorePath;
+	private final String mKeystorePass;
+
+	public ConnectionConfig(String url, String user, String pass,
+			String keystorePath, String keystorePass) {
+		mUrl = url;
+		mUser = user;
+		mPass = pass;
+		mKeystorePath = keystorePath;
+		mKeystorePass = keystorePass;
+	}
+
+	/**
+	 * Read the connection parameters that were added by
+	 * {@link ParserUtil#addConnectionArgumentsTo}.
+	 *
+	 * @param res - the parsed command line
+	 * @return the connection parameters
+	 */
+	public static ConnectionConfig fromNamespace(Namespace res) {
+		return fromNamespace(res, null);
+	}
+
+	/**
+	 * Read the connection parameters that were added by
+	 * {@link ParserUtil#addConnectionArgumentsTo}, with a relative keystore
+	 * path resolved against the given directory.
+	 *
+	 * @param res - the parsed command line
+	 * @param workingDirectory - the directory, or <code>null</code> for the
+	 *            working directory of this JVM
+	 * @return the connection parameters
+	 */
+	public static ConnectionConfig fromNamespace(Namespace res, File workingDirectory) {
+		String keystorePath = res.getString(ParserUtil.KEYSTORE_PATH);
+		if (workingDirectory != null && keystorePath != null
+				&& !new File(keystorePath).isAbsolute()) {
+			keystorePath = new File(workingDirectory, keystorePath).getPath();
+		}
+		return new ConnectionConfig(
+				res.getString(ParserUtil.URL),
+				res.getString(ParserUtil.USER),
+				res.getString(ParserUtil.PASS),
+				keystorePath,
+				res.getString(ParserUtil.KEYSTORE_PASS));
+	}
+
+	/**
+	 * Create a new, not yet connected {@link SSRC} for these parameters.
+	 *
+	 * @return the new SSRC
+	 * @throws FileNotFoundException
+	 * @throws InitializationException
+	 */
+	public SSRC createSsrc() throws FileNotFoundException, InitializationException {
+		BasicAuthConfig config = new BasicAuthConfig(
+				mUrl,
+				mUser,
+				mPass,
+				mKeystorePath,
+				mKeystorePass,
+				THREAD_SAFE,
+				INITIAL_CONNECTION_TIMEOUT);
+		return IfmapJ.createSsrc(config);
+	}
+
+	public String getUrl() {
+		return mUrl;
+	}
+
+	public String getUser() {
+		return mUser;
+	}
+
+	public String getKeystorePath() {
+		return mKeystorePath;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof ConnectionConfig)) {
+			return false;
+		}
+		ConnectionConfig other = (ConnectionConfig) o;
+		return equal(mUrl, other.mUrl)
+				&& equal(mUser, other.mUser)
+				&& equal(mPass, other.mPass)
+				&& equal(mKeystorePath, other.mKeystorePath)
+				&& equal(mKeystorePass, other.mKeystorePass);
+	}
+
+	@Override
+	public int hashCode() {
+		int result = 17;
+		result = 31 * result + hash(mUrl);
+		result = 31 * result + hash(mUser);
+		result = 31 * result + hash(mPass);
+		result = 31 * result + hash(mKeystorePath);
+		result = 31 * result + hash(mKeystorePass);
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		// never print the passwords
+		return mUser + "@" + mUrl + " (" + mKeystorePath + ")";
+	}
+
+	private static boolean equal(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	private static int hash(String s) {
+		return s == null ? 0 : s.hashCode();
+	}
+}
@@ -53,4 +53,7 @@ public class DefaultConfig {
 	public static final String DEFAULT_PASS = "test";
 	public static final String DEFAULT_KEYSTORE_PATH = "/ifmapcli.jks";
 	public static final String DEFAULT_KEYSTORE_PASS = "ifmapcli";
+
+	public static final int DEFAULT_DAEMON_PORT = 8448;
+	public static final String DEFAULT_DAEMON_TOKEN_FILE = ".ifmapcli-daemon.token";
 }
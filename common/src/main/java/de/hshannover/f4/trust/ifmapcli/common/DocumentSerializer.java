@@ -0,0 +1,143 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (common), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli.common;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+
+/**
+ * Serializes metadata {@link Document}s to XML strings.<br/>
+ * <br/>
+ * Looking up a {@link TransformerFactory} and creating a {@link Transformer}<br/>
+ * costs far more than transforming a small metadata document, so every<br/>
+ * thread keeps one indented and one compact {@link Transformer} and a<br/>
+ * buffer that are reused for all documents. The indented output is the<br/>
+ * same as that of {@link Common#documentToString(Document)} has always been.
+ *
+ */
+public final class DocumentSerializer {
+
+	// buffers that grew larger are not kept for the next document
+	private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+
+	private static final ThreadLocal<Transformer> sIndenting = new ThreadLocal<Transformer>();
+	private static final ThreadLocal<Transformer> sCompact = new ThreadLocal<Transformer>();
+	private static final ThreadLocal<StringWriter> sBuffer = new ThreadLocal<StringWriter>();
+
+	private DocumentSerializer() {
+	}
+
+	/**
+	 * @return the document as indented XML without XML declaration
+	 */
+	public static String serialize(Document doc) throws TransformerException {
+		return serialize(doc, true);
+	}
+
+	/**
+	 * @param indent - whether to indent the elements by four spaces or to
+	 *            write the document without additional whitespace
+	 * @return the document as XML without XML declaration
+	 */
+	public static String serialize(Document doc, boolean indent) throws TransformerException {
+		return transform(doc, indent).toString();
+	}
+
+	/**
+	 * Appends the document as XML without XML declaration to
+	 * <code>out</code>.
+	 *
+	 * @param indent - see {@link #serialize(Document, boolean)}
+	 */
+	public static void appendTo(Appendable out, Document doc, boolean indent)
+			throws TransformerException, IOException {
+		out.append(transform(doc, indent));
+	}
+
+	private static StringBuffer transform(Document doc, boolean indent) throws TransformerException {
+		ThreadLocal<Transformer> cache = indent ? sIndenting : sCompact;
+		Transformer transformer = cache.get();
+		if (transformer == null) {
+			transformer = newTransformer(indent);
+			cache.set(transformer);
+		}
+
+		StringWriter writer = sBuffer.get();
+		if (writer == null || writer.getBuffer().capacity() > MAX_RETAINED_BUFFER) {
+			writer = new StringWriter(4096);
+			sBuffer.set(writer);
+		}
+		writer.getBuffer().setLength(0);
+
+		try {
+			transformer.transform(new DOMSource(doc), new StreamResult(writer));
+		} catch (TransformerException e) {
+			// do not reuse a transformer that may be left in a broken state
+			cache.remove();
+			throw e;
+		}
+		return writer.getBuffer();
+	}
+
+	private static Transformer newTransformer(boolean indent)
+			throws TransformerConfigurationException {
+		TransformerFactory tf = TransformerFactory.newInstance();
+		Transformer transformer = tf.newTransformer();
+		transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+		transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+		transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+		if (indent) {
+			transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+			transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
+		} else {
+			transformer.setOutputProperty(OutputKeys.INDENT, "no");
+		}
+		return transformer;
+	}
+}
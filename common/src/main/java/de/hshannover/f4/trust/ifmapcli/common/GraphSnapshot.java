@@ -0,0 +1,614 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (common), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli.common;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.transform.TransformerException;
+
+import org.w3c.dom.Document;
+
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+import de.hshannover.f4.trust.ifmapj.messages.ResultItem;
+
+/**
+ * A read-only snapshot of a MAP graph (usually the result of a search) in a<br/>
+ * compact binary file that is accessed through a memory mapping.<br/>
+ * <br/>
+ * The file starts with fixed-size tables, so every identifier, link and<br/>
+ * metadata item can be looked up by its index without reading the rest:<br/>
+ * <pre>
+ * header      magic, version, identifier/link/metadata counts
+ * identifiers per identifier: data offset, first metadata, metadata count
+ * links       per link: identifier 1, identifier 2, first metadata, metadata count
+ * adjacency   per identifier: offset of its links (one more entry than identifiers),
+ *             then the indices of the links of all identifiers
+ * metadata    per metadata item: data offset, length, identifier or link (-1 - link)
+ * hashes      per identifier: hash, index; sorted by hash
+ *             per metadata item: hash, index; sorted by hash
+ * data        the identifiers (element name and attributes) and the metadata
+ *             (compact XML, UTF-8)
+ * </pre>
+ * All numbers are big-endian. Every identifier is stored once; the metadata<br/>
+ * of an identifier or link is stored consecutively. The hashes are those of<br/>
+ * {@link CanonicalHash}; the hash of a metadata item includes the hash of its<br/>
+ * identifier or link. Since both hash tables are sorted, a {@link Diff} looks<br/>
+ * up the items of a new search result in a snapshot as they arrive, without<br/>
+ * holding the new graph.<br/>
+ * <br/>
+ * Snapshots are written by a {@link Builder} and read with {@link #load}.<br/>
+ * Files must be smaller than 2 GB.
+ *
+ */
+public class GraphSnapshot {
+
+	private static final int MAGIC = 0x49464d47; // "IFMG"
+	private static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 20;
+	private static final int IDENTIFIER_ENTRY_SIZE = 16;
+	private static final int LINK_ENTRY_SIZE = 16;
+	private static final int METADATA_ENTRY_SIZE = 16;
+	private static final int HASH_ENTRY_SIZE = 12;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Receives the differences between a snapshot and a search result.
+	 */
+	public interface DiffHandler {
+
+		/**
+		 * @param identifier an identifier of the search result
+		 */
+		void identifierAdded(Identifier identifier) throws IOException;
+
+		/**
+		 * @param identifier the index in the snapshot
+		 */
+		void identifierRemoved(int identifier) throws IOException;
+
+		/**
+		 * @param item the result item that carries <code>metadata</code>
+		 */
+		void metadataAdded(ResultItem item, Document metadata) throws IOException;
+
+		/**
+		 * @param metadata the index in the snapshot
+		 */
+		void metadataRemoved(int metadata) throws IOException;
+	}
+
+	private final ByteBuffer mBuffer;
+	private final int mIdentifierCount;
+	private final int mLinkCount;
+	private final int mMetadataCount;
+	private final int mIdentifierTable;
+	private final int mLinkTable;
+	private final int mMetadataTable;
+	private final int mIdentifierHashes;
+	private final int mMetadataHashes;
+
+	private GraphSnapshot(ByteBuffer buffer) throws IOException {
+		mBuffer = buffer;
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException("not a graph snapshot");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("unsupported graph snapshot version " + buffer.getInt(4)
+					+ ", export it again");
+		}
+		mIdentifierCount = buffer.getInt(8);
+		mLinkCount = buffer.getInt(12);
+		mMetadataCount = buffer.getInt(16);
+		mIdentifierTable = HEADER_SIZE;
+		mLinkTable = mIdentifierTable + mIdentifierCount * IDENTIFIER_ENTRY_SIZE;
+		// the adjacency lists follow the links
+		int adjacency = mLinkTable + mLinkCount * LINK_ENTRY_SIZE;
+		mMetadataTable = adjacency + (mIdentifierCount + 1) * 4 + 2 * mLinkCount * 4;
+		mIdentifierHashes = mMetadataTable + mMetadataCount * METADATA_ENTRY_SIZE;
+		mMetadataHashes = mIdentifierHashes + mIdentifierCount * HASH_ENTRY_SIZE;
+	}
+
+	/**
+	 * Maps a snapshot file into memory.
+	 */
+	public static GraphSnapshot load(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			// the mapping stays valid after the channel is closed
+			return new GraphSnapshot(buffer);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * @return the first entry of a hash table with the given hash, or -1
+	 */
+	private int find(int table, int count, long hash) {
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (hashAt(table, middle) < hash) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low < count && hashAt(table, low) == hash ? low : -1;
+	}
+
+	private long hashAt(int table, int entry) {
+		return mBuffer.getLong(table + entry * HASH_ENTRY_SIZE);
+	}
+
+	private int hashIndex(int table, int entry) {
+		return mBuffer.getInt(table + entry * HASH_ENTRY_SIZE + 8);
+	}
+
+	public int getIdentifierCount() {
+		return mIdentifierCount;
+	}
+
+	public int getLinkCount() {
+		return mLinkCount;
+	}
+
+	/**
+	 * @return the element name of an identifier, e.g. <code>device</code>
+	 */
+	public String getElementName(int identifier) {
+		ByteBuffer data = identifierData(identifier);
+		return readString(data);
+	}
+
+	/**
+	 * @return the attributes of an identifier, as alternating names and
+	 *         values, see {@link IdentifierAttributes#getAttributes}
+	 */
+	public List<String> getAttributes(int identifier) {
+		ByteBuffer data = identifierData(identifier);
+		readString(data);
+		int count = data.getShort() & 0xffff;
+		List<String> attributes = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			attributes.add(readString(data));
+		}
+		return attributes;
+	}
+
+	public int getLinkIdentifier1(int link) {
+		return mBuffer.getInt(mLinkTable + link * LINK_ENTRY_SIZE);
+	}
+
+	public int getLinkIdentifier2(int link) {
+		return mBuffer.getInt(mLinkTable + link * LINK_ENTRY_SIZE + 4);
+	}
+
+	/**
+	 * @return a metadata item as compact XML
+	 */
+	public String getMetadata(int metadata) {
+		int entry = mMetadataTable + metadata * METADATA_ENTRY_SIZE;
+		int offset = (int) mBuffer.getLong(entry);
+		int length = mBuffer.getInt(entry + 8);
+		ByteBuffer data = mBuffer.duplicate();
+		data.position(offset);
+		data.limit(offset + length);
+		return UTF8.decode(data).toString();
+	}
+
+	/**
+	 * @return the index of the identifier a metadata item is attached to,
+	 *         or -1 - the index of its link
+	 */
+	public int getMetadataOwner(int metadata) {
+		return mBuffer.getInt(mMetadataTable + metadata * METADATA_ENTRY_SIZE + 12);
+	}
+
+	private ByteBuffer identifierData(int identifier) {
+		ByteBuffer data = mBuffer.duplicate();
+		data.position((int) mBuffer.getLong(mIdentifierTable + identifier * IDENTIFIER_ENTRY_SIZE));
+		return data;
+	}
+
+	private static String readString(ByteBuffer data) {
+		int length = data.getShort() & 0xffff;
+		ByteBuffer bytes = data.slice();
+		bytes.limit(length);
+		data.position(data.position() + length);
+		return UTF8.decode(bytes).toString();
+	}
+
+	/**
+	 * Compares the items of a search result with a snapshot, one item at a
+	 * time. Every identifier and metadata item is looked up in the sorted
+	 * hash tables of the snapshot, so besides the mapping only one bit per
+	 * entry of the snapshot and the hashes of the added identifiers are
+	 * kept. Metadata that occurs more often than in the snapshot is added.
+	 */
+	public static class Diff {
+
+		private final GraphSnapshot mPrevious;
+		private final DiffHandler mHandler;
+		private final BitSet mIdentifiersFound;
+		private final BitSet mMetadataFound;
+		private final Set<Long> mAddedIdentifiers = new HashSet<Long>();
+
+		public Diff(GraphSnapshot previous, DiffHandler handler) {
+			mPrevious = previous;
+			mHandler = handler;
+			mIdentifiersFound = new BitSet(previous.mIdentifierCount);
+			mMetadataFound = new BitSet(previous.mMetadataCount);
+		}
+
+		/**
+		 * Reports the identifiers and metadata of an item that are not in
+		 * the snapshot.
+		 */
+		public void add(ResultItem item) throws IOException {
+			Identifier first = item.getIdentifier1();
+			Identifier second = item.getIdentifier2();
+			long ownerHash;
+			if (first != null && second != null) {
+				ownerHash = CanonicalHash.hashLink(identifier(first), identifier(second));
+			} else {
+				ownerHash = identifier(first != null ? first : second);
+			}
+
+			GraphSnapshot previous = mPrevious;
+			for (Document document : item.getMetadata()) {
+				long hash = CanonicalHash.combine(ownerHash, CanonicalHash.hash(document));
+				int entry = previous.find(previous.mMetadataHashes, previous.mMetadataCount, hash);
+				while (entry >= 0 && mMetadataFound.get(entry)) {
+					entry++;
+					if (entry == previous.mMetadataCount
+							|| previous.hashAt(previous.mMetadataHashes, entry) != hash) {
+						entry = -1;
+					}
+				}
+				if (entry >= 0) {
+					mMetadataFound.set(entry);
+				} else {
+					mHandler.metadataAdded(item, document);
+				}
+			}
+		}
+
+		/**
+		 * Reports the identifiers and metadata items of the snapshot that
+		 * none of the added items contained.
+		 */
+		public void finish() throws IOException {
+			GraphSnapshot previous = mPrevious;
+			for (int entry = mIdentifiersFound.nextClearBit(0); entry < previous.mIdentifierCount;
+					entry = mIdentifiersFound.nextClearBit(entry + 1)) {
+				mHandler.identifierRemoved(previous.hashIndex(previous.mIdentifierHashes, entry));
+			}
+			for (int entry = mMetadataFound.nextClearBit(0); entry < previous.mMetadataCount;
+					entry = mMetadataFound.nextClearBit(entry + 1)) {
+				mHandler.metadataRemoved(previous.hashIndex(previous.mMetadataHashes, entry));
+			}
+		}
+
+		/**
+		 * @return the hash of an identifier, which is reported once if it
+		 *         is not in the snapshot
+		 */
+		private long identifier(Identifier identifier) throws IOException {
+			long hash = CanonicalHash.hash(identifier);
+			int entry = mPrevious.find(mPrevious.mIdentifierHashes, mPrevious.mIdentifierCount, hash);
+			if (entry >= 0) {
+				mIdentifiersFound.set(entry);
+			} else if (mAddedIdentifiers.add(hash)) {
+				mHandler.identifierAdded(identifier);
+			}
+			return hash;
+		}
+	}
+
+	/**
+	 * Collects identifiers, links and their metadata from result items and
+	 * writes them as snapshot. Identifiers are interned by their key.
+	 */
+	public static class Builder {
+
+		/**
+		 * A serialized metadata item and the hash of its canonical form.
+		 */
+		private static class Blob {
+			private final byte[] mData;
+			private final long mHash;
+
+			Blob(byte[] data, long hash) {
+				mData = data;
+				mHash = hash;
+			}
+		}
+
+		private final Map<String, Integer> mIdentifiers = new HashMap<String, Integer>();
+		private final List<Identifier> mIdentifierList = new ArrayList<Identifier>();
+		private final List<Long> mIdentifierHashes = new ArrayList<Long>();
+		private final List<int[]> mLinks = new ArrayList<int[]>();
+		private final Map<Integer, List<Blob>> mMetadataOfIdentifier = new HashMap<Integer, List<Blob>>();
+		private final List<List<Blob>> mMetadataOfLink = new ArrayList<List<Blob>>();
+
+		/**
+		 * Adds an identifier or link and its metadata.
+		 */
+		public void add(ResultItem item) throws TransformerException {
+			Identifier first = item.getIdentifier1();
+			Identifier second = item.getIdentifier2();
+			List<Blob> metadata = new ArrayList<Blob>(item.getMetadata().size());
+			for (Document document : item.getMetadata()) {
+				metadata.add(new Blob(DocumentSerializer.serialize(document, false).getBytes(UTF8),
+						CanonicalHash.hash(document)));
+			}
+
+			if (first != null && second != null) {
+				mLinks.add(new int[] {intern(first), intern(second)});
+				mMetadataOfLink.add(metadata);
+			} else {
+				int identifier = intern(first != null ? first : second);
+				List<Blob> existing = mMetadataOfIdentifier.get(identifier);
+				if (existing == null) {
+					mMetadataOfIdentifier.put(identifier, metadata);
+				} else {
+					existing.addAll(metadata);
+				}
+			}
+		}
+
+		public int getIdentifierCount() {
+			return mIdentifierList.size();
+		}
+
+		public int getLinkCount() {
+			return mLinks.size();
+		}
+
+		/**
+		 * Writes the snapshot to a temporary file next to <code>file</code>
+		 * and renames it, so readers never see a partial snapshot.
+		 */
+		public void write(File file) throws IOException {
+			File tmp = new File(file.getPath() + ".tmp");
+			OutputStream out = new FileOutputStream(tmp);
+			try {
+				writeTo(out);
+			} finally {
+				out.close();
+			}
+
+			if (!tmp.renameTo(file)) {
+				// renameTo does not replace existing files on every platform
+				if (!file.delete() || !tmp.renameTo(file)) {
+					throw new IOException("cannot rename " + tmp + " to " + file);
+				}
+			}
+		}
+
+		private void writeTo(OutputStream stream) throws IOException {
+			int identifierCount = mIdentifierList.size();
+			int linkCount = mLinks.size();
+
+			// metadata in the order of the identifier and link tables
+			List<Blob> metadata = new ArrayList<Blob>();
+			List<Integer> owners = new ArrayList<Integer>();
+			int[] identifierMetaFirst = new int[identifierCount];
+			int[] identifierMetaCount = new int[identifierCount];
+			for (int i = 0; i < identifierCount; i++) {
+				List<Blob> of = mMetadataOfIdentifier.get(i);
+				identifierMetaFirst[i] = metadata.size();
+				identifierMetaCount[i] = of == null ? 0 : of.size();
+				if (of != null) {
+					metadata.addAll(of);
+					owners.addAll(Collections.nCopies(of.size(), i));
+				}
+			}
+			int[] linkMetaFirst = new int[linkCount];
+			for (int l = 0; l < linkCount; l++) {
+				linkMetaFirst[l] = metadata.size();
+				metadata.addAll(mMetadataOfLink.get(l));
+				owners.addAll(Collections.nCopies(mMetadataOfLink.get(l).size(), -1 - l));
+			}
+			long[] metadataHashes = new long[metadata.size()];
+			for (int m = 0; m < metadataHashes.length; m++) {
+				metadataHashes[m] = CanonicalHash.combine(ownerHash(owners.get(m)), metadata.get(m).mHash);
+			}
+			long[] identifierHashes = new long[identifierCount];
+			for (int i = 0; i < identifierCount; i++) {
+				identifierHashes[i] = mIdentifierHashes.get(i);
+			}
+
+			// adjacency lists
+			int[] adjacencyOffsets = new int[identifierCount + 1];
+			for (int[] link : mLinks) {
+				adjacencyOffsets[link[0] + 1]++;
+				adjacencyOffsets[link[1] + 1]++;
+			}
+			for (int i = 0; i < identifierCount; i++) {
+				adjacencyOffsets[i + 1] += adjacencyOffsets[i];
+			}
+			int[] adjacency = new int[2 * linkCount];
+			int[] fill = new int[identifierCount];
+			for (int l = 0; l < linkCount; l++) {
+				int[] link = mLinks.get(l);
+				adjacency[adjacencyOffsets[link[0]] + fill[link[0]]++] = l;
+				adjacency[adjacencyOffsets[link[1]] + fill[link[1]]++] = l;
+			}
+
+			// identifier data
+			ByteArrayOutputStream identifierBytes = new ByteArrayOutputStream();
+			DataOutputStream identifierData = new DataOutputStream(identifierBytes);
+			int[] identifierOffsets = new int[identifierCount];
+			for (int i = 0; i < identifierCount; i++) {
+				Identifier identifier = mIdentifierList.get(i);
+				List<String> attributes = IdentifierAttributes.getAttributes(identifier);
+				identifierOffsets[i] = identifierData.size();
+				writeString(identifierData, IdentifierAttributes.getElementName(identifier));
+				identifierData.writeShort(attributes.size());
+				for (String attribute : attributes) {
+					writeString(identifierData, attribute);
+				}
+			}
+			identifierData.flush();
+
+			long dataStart = HEADER_SIZE
+					+ (long) identifierCount * IDENTIFIER_ENTRY_SIZE
+					+ (long) linkCount * LINK_ENTRY_SIZE
+					+ (identifierCount + 1) * 4L
+					+ 2L * linkCount * 4
+					+ (long) metadata.size() * METADATA_ENTRY_SIZE
+					+ (long) (identifierCount + metadata.size()) * HASH_ENTRY_SIZE;
+			long metadataStart = dataStart + identifierBytes.size();
+
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(identifierCount);
+			out.writeInt(linkCount);
+			out.writeInt(metadata.size());
+
+			for (int i = 0; i < identifierCount; i++) {
+				out.writeLong(dataStart + identifierOffsets[i]);
+				out.writeInt(identifierMetaFirst[i]);
+				out.writeInt(identifierMetaCount[i]);
+			}
+			for (int l = 0; l < linkCount; l++) {
+				int[] link = mLinks.get(l);
+				out.writeInt(link[0]);
+				out.writeInt(link[1]);
+				out.writeInt(linkMetaFirst[l]);
+				out.writeInt(mMetadataOfLink.get(l).size());
+			}
+			for (int offset : adjacencyOffsets) {
+				out.writeInt(offset);
+			}
+			for (int link : adjacency) {
+				out.writeInt(link);
+			}
+			long offset = metadataStart;
+			for (int m = 0; m < metadata.size(); m++) {
+				out.writeLong(offset);
+				out.writeInt(metadata.get(m).mData.length);
+				out.writeInt(owners.get(m));
+				offset += metadata.get(m).mData.length;
+			}
+			writeHashes(out, identifierHashes);
+			writeHashes(out, metadataHashes);
+
+			identifierBytes.writeTo(out);
+			for (Blob item : metadata) {
+				out.write(item.mData);
+			}
+			out.flush();
+		}
+
+		private long ownerHash(int owner) {
+			if (owner >= 0) {
+				return mIdentifierHashes.get(owner);
+			}
+			int[] link = mLinks.get(-1 - owner);
+			return CanonicalHash.hashLink(mIdentifierHashes.get(link[0]), mIdentifierHashes.get(link[1]));
+		}
+
+		private int intern(Identifier identifier) {
+			String key = IdentifierAttributes.getKey(identifier);
+			Integer index = mIdentifiers.get(key);
+			if (index == null) {
+				index = mIdentifierList.size();
+				mIdentifiers.put(key, index);
+				mIdentifierList.add(identifier);
+				mIdentifierHashes.add(CanonicalHash.hash(key));
+			}
+			return index;
+		}
+
+		private static void writeHashes(DataOutputStream out, final long[] hashes) throws IOException {
+			Integer[] order = new Integer[hashes.length];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					long x = hashes[a];
+					long y = hashes[b];
+					return x < y ? -1 : (x == y ? 0 : 1);
+				}
+			});
+			for (Integer index : order) {
+				out.writeLong(hashes[index]);
+				out.writeInt(index);
+			}
+		}
+
+		private static void writeString(DataOutputStream out, String value) throws IOException {
+			byte[] bytes = value.getBytes(UTF8);
+			out.writeShort(bytes.length);
+			out.write(bytes);
+		}
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (common), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.hshannover.f4.trust.ifmapj.identifier.AccessRequest;
+import de.hshannover.f4.trust.ifmapj.identifier.Device;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+import de.hshannover.f4.trust.ifmapj.identifier.IdentifierWithAd;
+import de.hshannover.f4.trust.ifmapj.identifier.Identity;
+import de.hshannover.f4.trust.ifmapj.identifier.IdentityType;
+import de.hshannover.f4.trust.ifmapj.identifier.IpAddress;
+import de.hshannover.f4.trust.ifmapj.identifier.MacAddress;
+
+/**
+ * Describes an {@link Identifier} the way IF-MAP 2.0 marshals it: by its<br/>
+ * element name and its attributes, in the order of the schema. The name of<br/>
+ * a device, which is a child element, is reported as attribute<br/>
+ * <code>name</code>.
+ *
+ */
+public final class IdentifierAttributes {
+
+	public static final String ACCESS_REQUEST = "access-request";
+	public static final String DEVICE = "device";
+	public static final String IDENTITY = "identity";
+	public static final String IP_ADDRESS = "ip-address";
+	public static final String MAC_ADDRESS = "mac-address";
+
+	private IdentifierAttributes() {
+	}
+
+	/**
+	 * @return the element name, e.g. <code>ip-address</code>
+	 */
+	public static String getElementName(Identifier identifier) {
+		if (identifier instanceof AccessRequest) {
+			return ACCESS_REQUEST;
+		} else if (identifier instanceof Device) {
+			return DEVICE;
+		} else if (identifier instanceof Identity) {
+			return IDENTITY;
+		} else if (identifier instanceof IpAddress) {
+			return IP_ADDRESS;
+		} else if (identifier instanceof MacAddress) {
+			return MAC_ADDRESS;
+		}
+		throw new IllegalArgumentException("unknown identifier " + identifier);
+	}
+
+	/**
+	 * @return the attributes that are set, as alternating names and values
+	 */
+	public static List<String> getAttributes(Identifier identifier) {
+		List<String> attributes = new ArrayList<String>(6);
+		if (identifier instanceof AccessRequest) {
+			add(attributes, "name", ((AccessRequest) identifier).getName());
+		} else if (identifier instanceof Device) {
+			add(attributes, "name", ((Device) identifier).getName());
+		} else if (identifier instanceof Identity) {
+			Identity identity = (Identity) identifier;
+			add(attributes, "name", identity.getName());
+			add(attributes, "type", identityTypeName(identity.getType()));
+			add(attributes, "other-type-definition", identity.getOtherTypeDefinition());
+		} else if (identifier instanceof IpAddress) {
+			IpAddress ip = (IpAddress) identifier;
+			add(attributes, "value", ip.getValue());
+			add(attributes, "type", ip.getType() == null ? null : ip.getType().toString());
+		} else if (identifier instanceof MacAddress) {
+			add(attributes, "value", ((MacAddress) identifier).getValue());
+		} else {
+			throw new IllegalArgumentException("unknown identifier " + identifier);
+		}
+		if (identifier instanceof IdentifierWithAd) {
+			add(attributes, "administrative-domain",
+					((IdentifierWithAd) identifier).getAdministrativeDomain());
+		}
+		return attributes;
+	}
+
+	/**
+	 * @return a string that is equal for two identifiers if and only if they
+	 *         denote the same identifier, e.g.
+	 *         <code>ip-address value=10.0.0.1 type=IPv4</code>
+	 */
+	public static String getKey(Identifier identifier) {
+		return getKey(getElementName(identifier), getAttributes(identifier));
+	}
+
+	/**
+	 * @return the key of an identifier given by its element name and
+	 *         attributes, see {@link #getKey(Identifier)}
+	 */
+	public static String getKey(String elementName, List<String> attributes) {
+		StringBuilder sb = new StringBuilder(elementName);
+		for (int i = 0; i < attributes.size(); i += 2) {
+			sb.append(' ').append(attributes.get(i)).append('=');
+			String value = attributes.get(i + 1);
+			for (int j = 0; j < value.length(); j++) {
+				char c = value.charAt(j);
+				if (c == ' ' || c == '\\') {
+					sb.append('\\');
+				}
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the value of the type attribute of an identity, e.g.
+	 *         <code>username</code> for {@link IdentityType#userName}
+	 */
+	public static String identityTypeName(IdentityType type) {
+		if (type == null) {
+			return null;
+		}
+		if (type == IdentityType.userName) {
+			return "username";
+		}
+		String name = type.toString();
+		StringBuilder sb = new StringBuilder(name.length() + 2);
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (Character.isUpperCase(c)) {
+				sb.append('-').append(Character.toLowerCase(c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void add(List<String> attributes, String name, String value) {
+		if (value != null && value.length() > 0) {
+			attributes.add(name);
+			attributes.add(value);
+		}
+	}
+}
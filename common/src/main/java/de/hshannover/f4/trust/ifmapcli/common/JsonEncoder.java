@@ -0,0 +1,250 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (common), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli.common;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+
+/**
+ * Writes identifiers and metadata as JSON directly from the ifmapj objects<br/>
+ * and the metadata DOM, without serializing the metadata to XML first.<br/>
+ * <br/>
+ * An identifier becomes an object with its element name as only key, e.g.<br/>
+ * <code>{"ip-address":{"value":"10.0.0.1","type":"IPv4"}}</code>.<br/>
+ * <br/>
+ * A metadata document is flattened into one object: <code>meta</code> is<br/>
+ * the qualified name of the root element, the attributes of the root<br/>
+ * element keep their names, and the text of every leaf element and every<br/>
+ * other attribute is stored under its path of local names below the root,<br/>
+ * joined by dots. Keys that occur more than once get an array of values,<br/>
+ * e.g. <code>{"meta":"meta:capability","ifmap-cardinality":"multiValue",<br/>
+ * "name":"finance"}</code>. The values of an attribute or child named<br/>
+ * <code>meta</code> follow the root element name in that array.<br/>
+ * All values are strings.
+ *
+ */
+public final class JsonEncoder {
+
+	private static final String XMLNS = "http://www.w3.org/2000/xmlns/";
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private JsonEncoder() {
+	}
+
+	/**
+	 * Appends <code>value</code> as JSON string, or <code>null</code>.
+	 */
+	public static void appendString(Appendable out, String value) throws IOException {
+		if (value == null) {
+			out.append("null");
+			return;
+		}
+		out.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				out.append("\\\"");
+				break;
+			case '\\':
+				out.append("\\\\");
+				break;
+			case '\n':
+				out.append("\\n");
+				break;
+			case '\r':
+				out.append("\\r");
+				break;
+			case '\t':
+				out.append("\\t");
+				break;
+			default:
+				if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+					out.append("\\u").append(HEX[(c >> 12) & 0xf]).append(HEX[(c >> 8) & 0xf])
+							.append(HEX[(c >> 4) & 0xf]).append(HEX[c & 0xf]);
+				} else {
+					out.append(c);
+				}
+				break;
+			}
+		}
+		out.append('"');
+	}
+
+	public static void appendIdentifier(Appendable out, Identifier identifier) throws IOException {
+		appendIdentifier(out, IdentifierAttributes.getElementName(identifier),
+				IdentifierAttributes.getAttributes(identifier));
+	}
+
+	/**
+	 * @param attributes - alternating names and values, see
+	 *            {@link IdentifierAttributes#getAttributes}
+	 */
+	public static void appendIdentifier(Appendable out, String element, List<String> attributes)
+			throws IOException {
+		out.append('{');
+		appendString(out, element);
+		out.append(":{");
+		for (int i = 0; i < attributes.size(); i += 2) {
+			if (i > 0) {
+				out.append(',');
+			}
+			appendString(out, attributes.get(i));
+			out.append(':');
+			appendString(out, attributes.get(i + 1));
+		}
+		out.append("}}");
+	}
+
+	public static void appendMetadata(Appendable out, Document metadata) throws IOException {
+		Element root = metadata.getDocumentElement();
+
+		// key -> values of the attribute and leaf element nodes, in document
+		// order, after the name of the root element
+		Map<String, List<String>> values = new LinkedHashMap<String, List<String>>();
+		add(values, "meta", root.getNodeName());
+		collectAttributes(root, null, values);
+		collectChildren(root, null, values);
+
+		out.append('{');
+		boolean first = true;
+		for (Map.Entry<String, List<String>> entry : values.entrySet()) {
+			if (!first) {
+				out.append(',');
+			}
+			first = false;
+			appendString(out, entry.getKey());
+			out.append(':');
+			List<String> strings = entry.getValue();
+			if (strings.size() == 1) {
+				appendString(out, strings.get(0));
+			} else {
+				out.append('[');
+				for (int i = 0; i < strings.size(); i++) {
+					if (i > 0) {
+						out.append(',');
+					}
+					appendString(out, strings.get(i));
+				}
+				out.append(']');
+			}
+		}
+		out.append('}');
+	}
+
+	private static int collectAttributes(Element element, String path,
+			Map<String, List<String>> values) {
+		int count = 0;
+		NamedNodeMap attributes = element.getAttributes();
+		for (int i = 0; i < attributes.getLength(); i++) {
+			Attr attribute = (Attr) attributes.item(i);
+			if (XMLNS.equals(attribute.getNamespaceURI())
+					|| attribute.getName().startsWith("xmlns")) {
+				continue;
+			}
+			add(values, join(path, localName(attribute)), valueOf(attribute));
+			count++;
+		}
+		return count;
+	}
+
+	private static void collectChildren(Element element, String path,
+			Map<String, List<String>> values) {
+		for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeType() != Node.ELEMENT_NODE) {
+				continue;
+			}
+			Element childElement = (Element) child;
+			String childPath = join(path, localName(childElement));
+			int attributes = collectAttributes(childElement, childPath, values);
+			if (hasElementChildren(childElement)) {
+				collectChildren(childElement, childPath, values);
+			} else if (attributes == 0
+					|| childElement.getTextContent().trim().length() > 0) {
+				// an empty element that only carries attributes has no value
+				add(values, childPath, valueOf(childElement));
+			}
+		}
+	}
+
+	private static boolean hasElementChildren(Element element) {
+		for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeType() == Node.ELEMENT_NODE) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void add(Map<String, List<String>> values, String key, String value) {
+		List<String> strings = values.get(key);
+		if (strings == null) {
+			strings = new ArrayList<String>(1);
+			values.put(key, strings);
+		}
+		strings.add(value);
+	}
+
+	private static String valueOf(Node node) {
+		if (node.getNodeType() == Node.ATTRIBUTE_NODE) {
+			return node.getNodeValue();
+		}
+		return node.getTextContent().trim();
+	}
+
+	private static String localName(Node node) {
+		return node.getLocalName() != null ? node.getLocalName() : node.getNodeName();
+	}
+
+	private static String join(String path, String name) {
+		return path == null ? name : path + "." + name;
+	}
+}
@@ -0,0 +1,239 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (common), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli.common;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Records latencies in nanoseconds into log-linear buckets, in the spirit<br/>
+ * of HdrHistogram: every power of two is split into {@value #SUB_BUCKETS}<br/>
+ * linear sub-buckets, so a recorded value is off by less than 1%.<br/>
+ * <br/>
+ * All buckets are allocated up front and {@link #record(long)} does not<br/>
+ * allocate. A histogram is not thread-safe; record into one histogram per<br/>
+ * thread and {@link #add(LatencyHistogram)} them afterwards.
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private static final double[] REPORTED_PERCENTILES = {50.0, 90.0, 99.0, 99.9};
+
+	private final long[] mCounts = new long[BUCKET_COUNT];
+	private long mTotalCount;
+	private long mSum;
+	private long mMin = Long.MAX_VALUE;
+	private long mMax;
+
+	/**
+	 * Records one latency.
+	 *
+	 * @param nanos - the latency; negative values are recorded as 0
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		mCounts[indexOf(value)]++;
+		mTotalCount++;
+		mSum += value;
+		if (value < mMin) {
+			mMin = value;
+		}
+		if (value > mMax) {
+			mMax = value;
+		}
+	}
+
+	/**
+	 * Adds all values recorded in <code>other</code> to this histogram.
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			mCounts[i] += other.mCounts[i];
+		}
+		mTotalCount += other.mTotalCount;
+		mSum += other.mSum;
+		mMin = Math.min(mMin, other.mMin);
+		mMax = Math.max(mMax, other.mMax);
+	}
+
+	public void reset() {
+		Arrays.fill(mCounts, 0);
+		mTotalCount = 0;
+		mSum = 0;
+		mMin = Long.MAX_VALUE;
+		mMax = 0;
+	}
+
+	public long getTotalCount() {
+		return mTotalCount;
+	}
+
+	public long getMin() {
+		return mTotalCount == 0 ? 0 : mMin;
+	}
+
+	public long getMax() {
+		return mMax;
+	}
+
+	public double getMean() {
+		return mTotalCount == 0 ? 0.0 : (double) mSum / mTotalCount;
+	}
+
+	/**
+	 * @param percentile - between 0 and 100
+	 * @return the largest value that is equivalent to the bucket in which the
+	 *         given percentile falls, but never more than {@link #getMax()}
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (mTotalCount == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * mTotalCount));
+		long cumulative = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			cumulative += mCounts[i];
+			if (cumulative >= target) {
+				return Math.min(highestEquivalentValue(i), mMax);
+			}
+		}
+		return mMax;
+	}
+
+	/**
+	 * @return the reported percentiles and the maximum in milliseconds, e.g.
+	 *         <code>p50 1.20ms p90 2.31ms p99 5.02ms p99.9 9.80ms max 12.01ms</code>
+	 */
+	public String toPercentileString() {
+		StringBuilder sb = new StringBuilder();
+		for (double p : REPORTED_PERCENTILES) {
+			sb.append(String.format("p%s %.2fms ", formatPercentile(p),
+					getValueAtPercentile(p) / 1000000.0));
+		}
+		sb.append(String.format("max %.2fms", mMax / 1000000.0));
+		return sb.toString();
+	}
+
+	/**
+	 * Writes the percentile distribution in the text format of
+	 * HdrHistogram's <code>outputPercentileDistribution</code>, so the
+	 * output can be fed to the usual plotting tools. Values are written in
+	 * milliseconds.
+	 */
+	public void writePercentileDistribution(PrintStream out) {
+		out.println(String.format("%12s %14s %10s %14s", "Value", "Percentile", "TotalCount",
+				"1/(1-Percentile)"));
+		out.println();
+
+		long cumulative = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			if (mCounts[i] == 0) {
+				continue;
+			}
+			cumulative += mCounts[i];
+			double fraction = (double) cumulative / mTotalCount;
+			long value = Math.min(highestEquivalentValue(i), mMax);
+			if (cumulative < mTotalCount) {
+				out.println(String.format("%12.3f %2.12f %10d %14.2f", value / 1000000.0,
+						fraction, cumulative, 1.0 / (1.0 - fraction)));
+			} else {
+				out.println(String.format("%12.3f %2.12f %10d", value / 1000000.0,
+						fraction, cumulative));
+			}
+		}
+
+		out.println(String.format("#[Mean    = %12.3f, StdDeviation   = %12.3f]",
+				getMean() / 1000000.0, getStdDeviation() / 1000000.0));
+		out.println(String.format("#[Max     = %12.3f, Total count    = %12d]",
+				mMax / 1000000.0, mTotalCount));
+		out.println(String.format("#[Buckets = %12d, SubBuckets     = %12d]",
+				BUCKET_COUNT / SUB_BUCKETS, SUB_BUCKETS));
+	}
+
+	private double getStdDeviation() {
+		if (mTotalCount == 0) {
+			return 0.0;
+		}
+		double mean = getMean();
+		double squares = 0.0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			if (mCounts[i] != 0) {
+				double deviation = medianEquivalentValue(i) - mean;
+				squares += deviation * deviation * mCounts[i];
+			}
+		}
+		return Math.sqrt(squares / mTotalCount);
+	}
+
+	private static int indexOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return shift * SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+	private static long lowestEquivalentValue(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		return (long) (index - shift * SUB_BUCKETS) << shift;
+	}
+
+	private static long highestEquivalentValue(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		return lowestEquivalentValue(index) + (1L << shift) - 1;
+	}
+
+	private static double medianEquivalentValue(int index) {
+		return (lowestEquivalentValue(index) + highestEquivalentValue(index)) / 2.0;
+	}
+
+	private static String formatPercentile(double p) {
+		return p == Math.rint(p) ? Long.toString((long) p) : Double.toString(p);
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (common), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * A metadata document that is built once and copied for every publish.<br/>
+ * Creating metadata with the metadata factories builds a new DOM, with<br/>
+ * namespace handling for every element, although most metadata a tool<br/>
+ * publishes is the same every time. A template clones a prototype instead<br/>
+ * and only replaces the values of its slots, e.g. a timestamp.<br/>
+ * <br/>
+ * A slot is the text of the first element with a given local name, or an<br/>
+ * attribute of the root element if the name starts with '@'. Slots are<br/>
+ * resolved to child positions once, so filling them does not search the<br/>
+ * copy.<br/>
+ * <br/>
+ * Templates are thread-safe: every thread clones its own copy of the<br/>
+ * prototype once and creates its documents from that copy.
+ *
+ */
+public class MetadataTemplate {
+
+	private final Document mPrototype;
+	private final List<String> mSlotNames = new ArrayList<String>();
+	private final List<int[]> mSlotPaths = new ArrayList<int[]>();
+	private final ThreadLocal<Document> mLocalPrototype = new ThreadLocal<Document>();
+
+	/**
+	 * @param prototype - the metadata, which must not be modified afterwards
+	 * @param slots - the names of the variable parts, see {@link MetadataTemplate}
+	 */
+	public MetadataTemplate(Document prototype, String... slots) {
+		mPrototype = prototype;
+		for (String slot : slots) {
+			mSlotNames.add(slot);
+			if (slot.startsWith("@")) {
+				mSlotPaths.add(new int[0]);
+			} else {
+				List<Integer> path = new ArrayList<Integer>();
+				if (!find(prototype.getDocumentElement(), slot, path)) {
+					throw new IllegalArgumentException("no element " + slot + " in the prototype");
+				}
+				int[] indices = new int[path.size()];
+				for (int i = 0; i < indices.length; i++) {
+					indices[i] = path.get(i);
+				}
+				mSlotPaths.add(indices);
+			}
+		}
+	}
+
+	/**
+	 * @param values - the values of the slots, in the order they were given
+	 *            to the constructor
+	 * @return a new copy of the prototype with the slots filled in
+	 */
+	public Document create(String... values) {
+		if (values.length != mSlotPaths.size()) {
+			throw new IllegalArgumentException("expected " + mSlotPaths.size() + " values, got "
+					+ values.length);
+		}
+		Document document = (Document) localPrototype().cloneNode(true);
+		for (int i = 0; i < values.length; i++) {
+			Element root = document.getDocumentElement();
+			String name = mSlotNames.get(i);
+			if (name.startsWith("@")) {
+				root.setAttribute(name.substring(1), values[i]);
+			} else {
+				Node node = root;
+				for (int index : mSlotPaths.get(i)) {
+					node = node.getChildNodes().item(index);
+				}
+				node.setTextContent(values[i]);
+			}
+		}
+		return document;
+	}
+
+	private Document localPrototype() {
+		Document prototype = mLocalPrototype.get();
+		if (prototype == null) {
+			// reading a DOM is not thread-safe either
+			synchronized (mPrototype) {
+				prototype = (Document) mPrototype.cloneNode(true);
+			}
+			mLocalPrototype.set(prototype);
+		}
+		return prototype;
+	}
+
+	/**
+	 * Depth-first search for the first element with the given local name
+	 * below <code>parent</code>, recording the child indices on the way.
+	 */
+	private static boolean find(Node parent, String localName, List<Integer> path) {
+		for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
+			Node child = parent.getChildNodes().item(i);
+			if (child.getNodeType() != Node.ELEMENT_NODE) {
+				continue;
+			}
+			path.add(i);
+			String name = child.getLocalName() != null ? child.getLocalName() : child.getNodeName();
+			if (name.equals(localName) || find(child, localName, path)) {
+				return true;
+			}
+			path.remove(path.size() - 1);
+		}
+		return false;
+	}
+}
@@ -38,15 +38,21 @@
  */
 package de.hshannover.f4.trust.ifmapcli.common;
 
+import java.io.File;
 import java.util.Date;
 
 import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.impl.type.FileArgumentType;
+import net.sourceforge.argparse4j.inf.Argument;
 import net.sourceforge.argparse4j.inf.ArgumentGroup;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.ArgumentType;
 import de.hshannover.f4.trust.ifmapcli.common.enums.EnforcementAction;
 import de.hshannover.f4.trust.ifmapcli.common.enums.EventType;
 import de.hshannover.f4.trust.ifmapcli.common.enums.FeatureType;
 import de.hshannover.f4.trust.ifmapcli.common.enums.IdType;
+import de.hshannover.f4.trust.ifmapcli.common.enums.OutputFormat;
 import de.hshannover.f4.trust.ifmapcli.common.enums.Significance;
 import de.hshannover.f4.trust.ifmapcli.common.enums.WlanSecurityEnum;
 
@@ -60,6 +66,30 @@ public class ParserUtil {
 
 	public static final String VERBOSE = "verbose";
 
+	public static final String ROOTS_OPTION = "--roots";
+	public static final String SUBSCRIPTIONS_OPTION = "--subscriptions";
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	/**
+	 * A {@link FileArgumentType} that resolves relative file names with
+	 * {@link AbstractClient#resolveFile(String)} before they are verified.
+	 */
+	private static class ResolvingFileType implements ArgumentType<File> {
+
+		private final FileArgumentType mType;
+
+		ResolvingFileType(FileArgumentType type) {
+			mType = type;
+		}
+
+		@Override
+		public File convert(ArgumentParser parser, Argument arg, String value)
+				throws ArgumentParserException {
+			String name = value.equals("-") ? value : AbstractClient.resolveFile(value).getPath();
+			return mType.convert(parser, arg, name);
+		}
+	}
+
 	public static void addConnectionArgumentsTo(ArgumentParser parser) {
 		// get environment variables
 		String url = System.getenv("IFMAP_URL");
@@ -101,6 +131,41 @@ public class ParserUtil {
 				.help("print logging information");
 	}
 
+	/**
+	 * The batch arguments of
+	 * {@link AbstractClient#publishIfmapData(ArgumentParser, String[], PublishRequestFactory)},
+	 * which parses a command line in batch mode with its own parser.
+	 */
+	public static void addBatchArgumentsTo(ArgumentParser parser) {
+		ArgumentGroup group = parser.addArgumentGroup("batch parameters");
+		group.addArgument("--batch").type(String.class)
+				.dest(AbstractClient.KEY_BATCH)
+				.help("publish every record (CSV or JSON line with the positional arguments and"
+						+ " options of this tool) of the given file, - for stdin; only connection"
+						+ " parameters and -v may be given besides");
+		group.addArgument("--batch-size").type(Integer.class)
+				.dest(AbstractClient.KEY_BATCH_SIZE).setDefault(DEFAULT_BATCH_SIZE)
+				.help("maximum number of publish elements per request in batch mode");
+	}
+
+	public static void addBatchSize(ArgumentParser parser) {
+		parser.addArgument("--batch-size").type(Integer.class)
+				.dest(AbstractClient.KEY_BATCH_SIZE).setDefault(DEFAULT_BATCH_SIZE)
+				.help("maximum number of publish elements per request");
+	}
+
+	public static void addBatchBytes(ArgumentParser parser) {
+		parser.addArgument("--batch-bytes").type(Long.class)
+				.dest(AbstractClient.KEY_BATCH_BYTES).setDefault(1024L * 1024L)
+				.help("maximum estimated size of a request in bytes (0 = no limit)");
+	}
+
+	public static void addProgress(ArgumentParser parser) {
+		parser.addArgument("--progress").type(Integer.class)
+				.dest(AbstractClient.KEY_PROGRESS).setDefault(5)
+				.help("seconds between progress messages on stderr (0 = none)");
+	}
+
 	public static void addPublishOperation(ArgumentParser parser) {
 		parser.addArgument("publish-operation").type(String.class)
 				.dest(AbstractClient.KEY_OPERATION).choices("update", "delete")
@@ -185,6 +250,21 @@ public class ParserUtil {
 				.dest(AbstractClient.KEY_IDENTIFIER).help("the identifier");
 	}
 
+	/**
+	 * Same as {@link #addIdentifierType} and {@link #addIdentifier}, but
+	 * both may be left out if the option <code>alternative</code> is given
+	 * instead, see {@link AbstractClient#checkIdentifierOr}.
+	 */
+	public static void addOptionalIdentifier(ArgumentParser parser, String alternative,
+			IdType... types) {
+		parser.addArgument("identifier-type").type(IdType.class).nargs("?")
+				.dest(AbstractClient.KEY_IDENTIFIER_TYPE).choices(types)
+				.help("the type of the identifier, unless " + alternative + " is given");
+		parser.addArgument("identifier").type(String.class).nargs("?")
+				.dest(AbstractClient.KEY_IDENTIFIER)
+				.help("the identifier, unless " + alternative + " is given");
+	}
+
 	public static void addIdentifierTypeTwo(ArgumentParser parser, IdType... types) {
 		parser.addArgument("identifier-type-two").type(IdType.class)
 				.dest(AbstractClient.KEY_IDENTIFIER_TYPE_TWO).choices(types)
@@ -203,7 +283,7 @@ public class ParserUtil {
 	}
 
 	public static void addExIdentifier(ArgumentParser parser) {
-		parser.addArgument("extended-identifier").type(Arguments.fileType().verifyCanRead())
+		parser.addArgument("extended-identifier").type(new ResolvingFileType(Arguments.fileType().verifyCanRead()))
 				.dest(AbstractClient.KEY_EX_IDENTIFIER).help("the path to the xml file");
 	}
 
@@ -233,7 +313,7 @@ public class ParserUtil {
 	}
 
 	public static void addMetaFileInSystemIn(ArgumentParser parser) {
-		parser.addArgument("--meta-in").type(Arguments.fileType().acceptSystemIn().verifyCanRead())
+		parser.addArgument("--meta-in").type(new ResolvingFileType(Arguments.fileType().acceptSystemIn().verifyCanRead()))
 				.dest(AbstractClient.KEY_META_FILE_IN_SYSTEM_IN).help("Meta filename or - for system in");
 	}
 
@@ -334,6 +414,77 @@ public class ParserUtil {
 				.help("custom namespace URI. example: http://www.foo.bar/2012/ifmap-metadata/1");
 	}
 
+	public static void addRootsArguments(ArgumentParser parser) {
+		ArgumentGroup group = parser.addArgumentGroup("multi-search parameters");
+		group.addArgument(ROOTS_OPTION).type(String.class)
+				.dest(AbstractClient.KEY_ROOTS)
+				.help("search from every start identifier in this file ('-' for stdin), one "
+						+ "'identifier-type,identifier' per line, instead of a single one");
+		group.addArgument("--sessions").type(Integer.class)
+				.dest(AbstractClient.KEY_SESSIONS).setDefault(4)
+				.help("number of searches that run concurrently, each on its own session");
+	}
+
+	public static void addOutputArguments(ArgumentParser parser) {
+		ArgumentGroup group = parser.addArgumentGroup("output parameters");
+		group.addArgument("--output", "-o").type(String.class)
+				.dest(AbstractClient.KEY_OUTPUT)
+				.help("write the results to this file instead of the console");
+		group.addArgument("--format").type(OutputFormat.class)
+				.dest(AbstractClient.KEY_FORMAT).setDefault(OutputFormat.text)
+				.help("output format: text (default), or xml or jsonl with one result item per line");
+	}
+
+	public static void addExport(ArgumentParser parser) {
+		parser.addArgument("--export").type(String.class)
+				.dest(AbstractClient.KEY_EXPORT)
+				.help("write the result as graph snapshot to this file instead of printing it");
+	}
+
+	public static void addDiff(ArgumentParser parser) {
+		parser.addArgument("--diff").type(String.class)
+				.dest(AbstractClient.KEY_DIFF)
+				.help("print only the identifiers and metadata that were added or removed since "
+						+ "this graph snapshot was exported");
+	}
+
+	public static void addCacheTtl(ArgumentParser parser) {
+		parser.addArgument("--cache-ttl").type(Integer.class)
+				.dest(AbstractClient.KEY_CACHE_TTL).setDefault(0)
+				.help("answer identical searches from a result cache if the result is at most this "
+						+ "many seconds old (default: 0, no cache); the cache lives only as long as the "
+						+ "JVM, so it has no effect outside the ifmapcli daemon");
+	}
+
+	public static void addFollow(ArgumentParser parser) {
+		parser.addArgument("--follow", "-f").action(Arguments.storeTrue())
+				.dest(AbstractClient.KEY_FOLLOW).setDefault(false)
+				.help("poll continuously without waiting for input and reconnect if the session is lost");
+	}
+
+	public static void addSubscriptions(ArgumentParser parser) {
+		parser.addArgument(SUBSCRIPTIONS_OPTION).type(String.class)
+				.dest(AbstractClient.KEY_SUBSCRIPTIONS)
+				.help("subscribe to every record of this file ('-' for stdin) on one session: the "
+						+ "subscription name followed by the positional arguments and options of "
+						+ "this tool. Results are written per name; if --output is a directory, "
+						+ "to one file per name");
+	}
+
+	public static void addView(ArgumentParser parser) {
+		parser.addArgument("--view").action(Arguments.storeTrue())
+				.dest(AbstractClient.KEY_VIEW).setDefault(false)
+				.help("keep a local replica of the subscribed graph and answer queries from stdin "
+						+ "instead of printing the poll results");
+	}
+
+	public static void addWorkers(ArgumentParser parser) {
+		parser.addArgument("--workers").type(Integer.class)
+				.dest(AbstractClient.KEY_WORKERS)
+				.setDefault(Runtime.getRuntime().availableProcessors())
+				.help("number of threads that format the results");
+	}
+
 	public static void addPublisherId(ArgumentParser parser) {
 		parser.addArgument("--publisher-id", "-p").type(String.class)
 				.dest(AbstractClient.KEY_PUBLISHER_ID).help("the publisher id");
@@ -357,6 +508,138 @@ public class ParserUtil {
 				.help("size of one sprint");
 	}
 
+	public static void addPerf1Sessions(ArgumentParser parser) {
+		parser.addArgument("--sessions").type(Integer.class)
+				.dest(AbstractClient.KEY_SESSIONS).setDefault(1)
+				.help("number of concurrent sessions, each with its own SSRC");
+	}
+
+	public static void addPerf1Rate(ArgumentParser parser) {
+		parser.addArgument("--rate").type(Double.class)
+				.dest(AbstractClient.KEY_RATE).setDefault(0.0)
+				.help("target publish requests per second over all sessions (0 = unlimited)");
+	}
+
+	public static void addPerf1RampUp(ArgumentParser parser) {
+		parser.addArgument("--ramp-up").type(Integer.class)
+				.dest(AbstractClient.KEY_RAMP_UP).setDefault(0)
+				.help("seconds over which the start of the sessions is spread");
+	}
+
+	public static void addPerf1Duration(ArgumentParser parser) {
+		parser.addArgument("--duration").type(Integer.class)
+				.dest(AbstractClient.KEY_DURATION).setDefault(0)
+				.help("run for the given number of seconds instead of a fixed number of requests");
+	}
+
+	public static void addPerf1Histogram(ArgumentParser parser) {
+		parser.addArgument("--histogram").type(String.class)
+				.dest(AbstractClient.KEY_HISTOGRAM)
+				.help("write the latency distribution of all requests to this file");
+	}
+
+	public static void addPerf1Generate(ArgumentParser parser) {
+		parser.addArgument("--generate").type(String.class)
+				.dest(AbstractClient.KEY_GENERATE).choices("upfront", "lazy", "producer")
+				.setDefault("upfront")
+				.help("build all requests before the test, each one before it is sent, or on a producer thread");
+	}
+
+	public static void addPerf1QueueSize(ArgumentParser parser) {
+		parser.addArgument("--queue-size").type(Integer.class)
+				.dest(AbstractClient.KEY_QUEUE_SIZE).setDefault(100)
+				.help("number of requests a producer thread builds ahead");
+	}
+
+	public static void addPdpPopulation(ArgumentParser parser) {
+		ArgumentGroup group = parser.addArgumentGroup("population parameters");
+		group.addArgument("--population").type(String.class)
+				.dest(AbstractClient.KEY_POPULATION)
+				.help("file with one 'username,ip,mac' record per user ('-' for stdin)");
+		group.addArgument("--users").type(Integer.class)
+				.dest(AbstractClient.KEY_USERS)
+				.help("generate this many users instead of reading a population file");
+	}
+
+	public static void addPdpSessions(ArgumentParser parser) {
+		parser.addArgument("--sessions").type(Integer.class)
+				.dest(AbstractClient.KEY_SESSIONS).setDefault(10)
+				.help("number of concurrent sessions the logins and logoffs are spread over");
+	}
+
+	public static void addPdpRecords(ArgumentParser parser) {
+		parser.addArgument("records").type(String.class)
+				.dest(AbstractClient.KEY_RECORDS)
+				.help("file with one 'update|delete,ip,mac,username' record per login or logoff ('-' for stdin)");
+	}
+
+	public static void addPdpLogoffList(ArgumentParser parser) {
+		parser.addArgument("users").type(String.class)
+				.dest(AbstractClient.KEY_RECORDS)
+				.help("file with one 'username,ip,mac' or 'ar:name' record per user to log off ('-' for stdin)");
+	}
+
+	public static void addPdpLogoffRate(ArgumentParser parser) {
+		parser.addArgument("--rate").type(Double.class)
+				.dest(AbstractClient.KEY_RATE).setDefault(0.0)
+				.help("users logged off per second (0 = unlimited)");
+	}
+
+	public static void addPdpRate(ArgumentParser parser) {
+		parser.addArgument("--rate").type(Double.class)
+				.dest(AbstractClient.KEY_RATE).setDefault(0.0)
+				.help("logins per second over all sessions (0 = unlimited)");
+	}
+
+	public static void addPdpHold(ArgumentParser parser) {
+		parser.addArgument("--hold").type(Integer.class)
+				.dest(AbstractClient.KEY_HOLD).setDefault(0)
+				.help("seconds after which a user logs off again (0 = stay logged in)");
+	}
+
+	public static void addPdpDuration(ArgumentParser parser) {
+		parser.addArgument("--duration").type(Integer.class)
+				.dest(AbstractClient.KEY_DURATION).setDefault(0)
+				.help("cycle through the population for this many seconds (0 = every user logs in once)");
+	}
+
+	public static void addPerf1OpenLoop(ArgumentParser parser) {
+		parser.addArgument("--open-loop").action(Arguments.storeTrue())
+				.dest(AbstractClient.KEY_OPEN_LOOP).setDefault(false)
+				.help("send at --rate regardless of responses and measure latency from the intended send time");
+	}
+
+	public static void addPerf1EndToEnd(ArgumentParser parser) {
+		parser.addArgument("--end-to-end").action(Arguments.storeTrue())
+				.dest(AbstractClient.KEY_END_TO_END).setDefault(false)
+				.help("subscribe to the parent node and measure publish-to-notification latency");
+	}
+
+	public static void addDaemonPort(ArgumentParser parser) {
+		parser.addArgument("--port").type(Integer.class)
+				.dest(AbstractClient.KEY_DAEMON_PORT)
+				.setDefault(DefaultConfig.DEFAULT_DAEMON_PORT)
+				.help("loopback TCP port the daemon listens on");
+	}
+
+	public static void addDaemonMaxIdle(ArgumentParser parser) {
+		parser.addArgument("--max-idle").type(Integer.class)
+				.dest(AbstractClient.KEY_DAEMON_MAX_IDLE).setDefault(60)
+				.help("minutes after which an unused MAP session is closed");
+	}
+
+	public static void addDaemonTokenFile(ArgumentParser parser) {
+		String tokenFile = System.getenv("IFMAPCLI_DAEMON_TOKEN_FILE");
+		if (tokenFile == null) {
+			tokenFile = new File(System.getProperty("user.home"),
+					DefaultConfig.DEFAULT_DAEMON_TOKEN_FILE).getPath();
+		}
+		parser.addArgument("--token-file").type(String.class)
+				.dest(AbstractClient.KEY_DAEMON_TOKEN_FILE).setDefault(tokenFile)
+				.help("file the daemon writes the access token for its clients to,"
+						+ " readable by the owner only");
+	}
+
 	public static void addQualifier(ArgumentParser parser) {
 		parser.addArgument("--qualifier").type(String.class)
 				.dest(AbstractClient.KEY_QUALIFIER)
@@ -519,6 +802,19 @@ public class ParserUtil {
 				.help("max features per category");
 	}
 
+	public static void addFeatureSeed(ArgumentParser parser) {
+		parser.addArgument("--seed").type(Long.class)
+				.dest(AbstractClient.KEY_SEED).setDefault(42L)
+				.help("seed of the random tree, the same seed gives the same tree");
+	}
+
+	public static void addFeatureWorkers(ArgumentParser parser) {
+		parser.addArgument("--workers").type(Integer.class)
+				.dest(AbstractClient.KEY_WORKERS)
+				.setDefault(Runtime.getRuntime().availableProcessors())
+				.help("number of threads that build the tree");
+	}
+
 	public static void addFeaturePurge(ArgumentParser parser) {
 		parser.addArgument("--purge", "-p").type(Boolean.class)
 				.action(Arguments.storeTrue()).dest(AbstractClient.KEY_PURGE)
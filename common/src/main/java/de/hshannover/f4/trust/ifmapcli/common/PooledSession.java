@@ -0,0 +1,169 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (common), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli.common;
+
+import de.hshannover.f4.trust.ifmapj.channel.SSRC;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapErrorCode;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapErrorResult;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapException;
+import de.hshannover.f4.trust.ifmapj.messages.PublishRequest;
+import de.hshannover.f4.trust.ifmapj.messages.SearchRequest;
+import de.hshannover.f4.trust.ifmapj.messages.SearchResult;
+
+/**
+ * An IF-MAP session that is owned by a {@link SessionPool}. The wrapped<br/>
+ * {@link SSRC} stays connected between uses. If the MAPS answers a<br/>
+ * request with an InvalidSessionID error (e.g. because the session timed<br/>
+ * out on the server side) a new session is established and the request<br/>
+ * is sent once more.
+ *
+ */
+public class PooledSession {
+
+	private final ConnectionConfig mConfig;
+	private final SSRC mSsrc;
+
+	private volatile long mLastUsed;
+	private volatile long mLastRenewed;
+
+	PooledSession(ConnectionConfig config, SSRC ssrc) {
+		mConfig = config;
+		mSsrc = ssrc;
+		mLastUsed = System.currentTimeMillis();
+		mLastRenewed = mLastUsed;
+	}
+
+	/**
+	 * @return the underlying SSRC, e.g. to obtain the ARC or the publisher-id
+	 */
+	public SSRC getSsrc() {
+		return mSsrc;
+	}
+
+	public ConnectionConfig getConfig() {
+		return mConfig;
+	}
+
+	public void publish(PublishRequest request) throws IfmapErrorResult, IfmapException {
+		try {
+			mSsrc.publish(request);
+		} catch (IfmapErrorResult e) {
+			reestablishOrThrow(e);
+			mSsrc.publish(request);
+		}
+		touch();
+	}
+
+	public SearchResult search(SearchRequest request) throws IfmapErrorResult, IfmapException {
+		SearchResult result;
+		try {
+			result = mSsrc.search(request);
+		} catch (IfmapErrorResult e) {
+			reestablishOrThrow(e);
+			result = mSsrc.search(request);
+		}
+		touch();
+		return result;
+	}
+
+	public void purgePublisher(String publisherId) throws IfmapErrorResult, IfmapException {
+		try {
+			mSsrc.purgePublisher(publisherId);
+		} catch (IfmapErrorResult e) {
+			reestablishOrThrow(e);
+			mSsrc.purgePublisher(publisherId);
+		}
+		touch();
+	}
+
+	long getLastUsed() {
+		return mLastUsed;
+	}
+
+	long getLastRenewed() {
+		return mLastRenewed;
+	}
+
+	void open() throws IfmapErrorResult, IfmapException {
+		mSsrc.newSession();
+		mLastRenewed = System.currentTimeMillis();
+	}
+
+	/**
+	 * Keep the session alive on the MAPS. If the server already dropped the
+	 * session a new one is established.
+	 */
+	void renew() throws IfmapErrorResult, IfmapException {
+		try {
+			mSsrc.renewSession();
+		} catch (IfmapErrorResult e) {
+			reestablishOrThrow(e);
+		}
+		mLastRenewed = System.currentTimeMillis();
+	}
+
+	/**
+	 * End the session and close the TCP connection. Errors are ignored, the
+	 * session is of no use afterwards anyway.
+	 */
+	void close() {
+		try {
+			mSsrc.endSession();
+		} catch (Exception e) {
+			// the session may already be gone on the server side
+		}
+		try {
+			mSsrc.closeTcpConnection();
+		} catch (Exception e) {
+			// nothing we can do about it
+		}
+	}
+
+	private void touch() {
+		mLastUsed = System.currentTimeMillis();
+		mLastRenewed = mLastUsed;
+	}
+
+	private void reestablishOrThrow(IfmapErrorResult e) throws IfmapErrorResult, IfmapException {
+		if (e.getErrorCode() != IfmapErrorCode.InvalidSessionID) {
+			throw e;
+		}
+		open();
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (common), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli.common;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sourceforge.argparse4j.inf.Argument;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+
+/**
+ * Records the positional arguments that are added to an<br/>
+ * {@link ArgumentParser}, which argparse4j does not expose. Batch mode<br/>
+ * needs them to put the named fields of JSON records in order, see<br/>
+ * {@link BatchRecords}.
+ *
+ */
+final class PositionalArguments implements InvocationHandler {
+
+	private final ArgumentParser mParser;
+	private final List<String> mNames = new ArrayList<String>();
+	private final List<Argument> mArguments = new ArrayList<Argument>();
+
+	private PositionalArguments(ArgumentParser parser) {
+		mParser = parser;
+	}
+
+	/**
+	 * @return a parser that behaves like <code>parser</code> and records
+	 *         the positional arguments added to it
+	 */
+	static ArgumentParser record(ArgumentParser parser) {
+		return (ArgumentParser) Proxy.newProxyInstance(ArgumentParser.class.getClassLoader(),
+				new Class<?>[] {ArgumentParser.class}, new PositionalArguments(parser));
+	}
+
+	/**
+	 * @return the positional arguments of a parser created by
+	 *         {@link #record(ArgumentParser)} in order, each given by its
+	 *         name and dest; <code>null</code> for other parsers
+	 */
+	static List<String[]> of(ArgumentParser parser) {
+		if (!Proxy.isProxyClass(parser.getClass())
+				|| !(Proxy.getInvocationHandler(parser) instanceof PositionalArguments)) {
+			return null;
+		}
+		PositionalArguments recorder = (PositionalArguments) Proxy.getInvocationHandler(parser);
+		List<String[]> positionals = new ArrayList<String[]>();
+		for (int i = 0; i < recorder.mArguments.size(); i++) {
+			// the dest may be set after the argument was added
+			positionals.add(new String[] {recorder.mNames.get(i),
+					recorder.mArguments.get(i).getDest()});
+		}
+		return positionals;
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (method.getName().equals("handleError")
+				&& ((ArgumentParserException) args[0]).getParser() == proxy) {
+			// argparse4j hands errors of other parsers on to them, which
+			// would call this proxy again
+			ArgumentParserException e = (ArgumentParserException) args[0];
+			args = new Object[] {new ArgumentParserException(e.getMessage(), e.getCause(), mParser)};
+		}
+		Object result;
+		try {
+			result = method.invoke(mParser, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+		if (method.getName().equals("addArgument")) {
+			String[] names = (String[]) args[0];
+			if (names.length == 1 && !names[0].startsWith("-")) {
+				mNames.add(names[0]);
+				mArguments.add((Argument) result);
+			}
+		}
+		// keep fluent calls on the proxy
+		return result == mParser ? proxy : result;
+	}
+}
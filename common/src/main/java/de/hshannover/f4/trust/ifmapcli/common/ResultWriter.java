@@ -0,0 +1,521 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (common), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli.common;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
+
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import de.hshannover.f4.trust.ifmapcli.common.enums.OutputFormat;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+import de.hshannover.f4.trust.ifmapj.messages.PollResult;
+import de.hshannover.f4.trust.ifmapj.messages.ResultItem;
+import de.hshannover.f4.trust.ifmapj.messages.SearchResult;
+
+/**
+ * Writes search and poll results to the console or a file through a large<br/>
+ * buffer. Nothing is flushed until {@link #flush()} is called, which the<br/>
+ * tools do once per search or poll result.<br/>
+ * <br/>
+ * Formats:<br/>
+ * <ul>
+ * <li>{@link OutputFormat#text}: every result item between lines of<br/>
+ * asterisks, with indented metadata, as the tools have always printed it;<br/>
+ * poll results are grouped by result type.</li>
+ * <li>{@link OutputFormat#xml}: one <code>resultItem</code> element per<br/>
+ * line, with the type and name of its result as attributes, followed by<br/>
+ * the identifiers in IF-MAP syntax and the compact metadata. Poll results<br/>
+ * are written in the order the MAPS sent them.</li>
+ * <li>{@link OutputFormat#jsonl}: one JSON object per result item and line,<br/>
+ * e.g. <code>{"type":"update","name":"sub","identifiers":[...],<br/>
+ * "metadata":[...]}</code>, encoded by {@link JsonEncoder}. Poll results<br/>
+ * are written in the order the MAPS sent them.</li>
+ * </ul>
+ * The differences between a search result and a {@link GraphSnapshot} are<br/>
+ * written as <code>+ key</code> and <code>- key</code> lines for identifiers<br/>
+ * and <code>+ key: metadata</code> lines for metadata in text format; in the<br/>
+ * other formats as result items of type <code>added</code> or<br/>
+ * <code>removed</code>.<br/>
+ * <br/>
+ * The <code>format</code> methods do not touch the output and may be<br/>
+ * called from any thread.
+ *
+ */
+public class ResultWriter implements Closeable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String NEWLINE = System.getProperty("line.separator");
+	// JSON Lines are separated by \n on every platform
+	private static final char JSONL_NEWLINE = '\n';
+	private static final String SEPARATOR =
+			"****************************************************************************";
+
+	private static final SearchResult.Type[] POLL_RESULT_ORDER = {
+			SearchResult.Type.searchResult, SearchResult.Type.updateResult,
+			SearchResult.Type.deleteResult, SearchResult.Type.notifyResult};
+	private static final String[] POLL_RESULT_TITLES = {
+			"== SEARCH RESULTS ==", "== UPDATE RESULTS ==",
+			"== DELETE RESULTS ==", "== NOTIFY RESULTS =="};
+
+	private final Writer mOut;
+	private final OutputFormat mFormat;
+	private final boolean mCloseStream;
+
+	private DocumentBuilder mDocumentBuilder;
+
+	/**
+	 * @param closeStream - whether {@link #close()} closes <code>out</code>
+	 */
+	public ResultWriter(OutputStream out, Charset charset, OutputFormat format,
+			boolean closeStream) {
+		mOut = new BufferedWriter(new OutputStreamWriter(out, charset), BUFFER_SIZE);
+		mFormat = format;
+		mCloseStream = closeStream;
+	}
+
+	/**
+	 * @param file - the file to write to (UTF-8), or <code>null</code> or
+	 *            <code>-</code> for the console
+	 */
+	public static ResultWriter open(String file, OutputFormat format)
+			throws FileNotFoundException {
+		if (file == null || file.equals("-")) {
+			return new ResultWriter(System.out, Charset.defaultCharset(), format, false);
+		}
+		return new ResultWriter(new FileOutputStream(file), Charset.forName("UTF-8"),
+				format, true);
+	}
+
+	public OutputFormat getFormat() {
+		return mFormat;
+	}
+
+	public void write(SearchResult result) throws IOException {
+		format(mOut, result);
+	}
+
+	/**
+	 * Writes a search result of a poll result. In text format the items are
+	 * preceded by the type and name of the result, e.g.
+	 * <code>== UPDATE RESULTS sub1 ==</code>.
+	 */
+	public void writeNamed(SearchResult result) throws IOException {
+		if (mFormat == OutputFormat.text) {
+			String title = POLL_RESULT_TITLES[Arrays.asList(POLL_RESULT_ORDER).indexOf(result.getType())];
+			mOut.append(title, 0, title.length() - 3).append(' ').append(result.getName())
+					.append(" ==").append(NEWLINE);
+		}
+		format(mOut, result);
+	}
+
+	public void write(PollResult result) throws IOException {
+		format(mOut, result);
+	}
+
+	/**
+	 * Writes a single item of a search result.
+	 */
+	public void write(SearchResult result, ResultItem item) throws IOException {
+		formatItem(mOut, result, item);
+	}
+
+	/**
+	 * Writes an identifier of a search result that is not in a snapshot.
+	 */
+	public void writeAdded(Identifier identifier) throws IOException {
+		List<String> elements = new ArrayList<String>(1);
+		List<List<String>> attributes = new ArrayList<List<String>>(1);
+		addIdentifier(elements, attributes, identifier);
+		formatChange(mOut, true, elements, attributes, null, null);
+	}
+
+	/**
+	 * Writes a metadata item of a search result that is not in a snapshot.
+	 */
+	public void writeAdded(ResultItem item, Document metadata) throws IOException {
+		List<String> elements = new ArrayList<String>(2);
+		List<List<String>> attributes = new ArrayList<List<String>>(2);
+		for (Identifier identifier : new Identifier[] {item.getIdentifier1(), item.getIdentifier2()}) {
+			if (identifier != null) {
+				addIdentifier(elements, attributes, identifier);
+			}
+		}
+		formatChange(mOut, true, elements, attributes, metadata, null);
+	}
+
+	/**
+	 * Writes an identifier of a snapshot that is not in a search result.
+	 */
+	public void writeRemovedIdentifier(GraphSnapshot snapshot, int identifier) throws IOException {
+		List<String> elements = new ArrayList<String>(1);
+		List<List<String>> attributes = new ArrayList<List<String>>(1);
+		addIdentifier(elements, attributes, snapshot, identifier);
+		formatChange(mOut, false, elements, attributes, null, null);
+	}
+
+	/**
+	 * Writes a metadata item of a snapshot that is not in a search result.
+	 */
+	public void writeRemovedMetadata(GraphSnapshot snapshot, int metadata) throws IOException {
+		List<String> elements = new ArrayList<String>(2);
+		List<List<String>> attributes = new ArrayList<List<String>>(2);
+		int owner = snapshot.getMetadataOwner(metadata);
+		if (owner >= 0) {
+			addIdentifier(elements, attributes, snapshot, owner);
+		} else {
+			addIdentifier(elements, attributes, snapshot, snapshot.getLinkIdentifier1(-1 - owner));
+			addIdentifier(elements, attributes, snapshot, snapshot.getLinkIdentifier2(-1 - owner));
+		}
+		formatChange(mOut, false, elements, attributes, null, snapshot.getMetadata(metadata));
+	}
+
+	/**
+	 * Writes preformatted text, e.g. created by one of the <code>format</code>
+	 * methods.
+	 */
+	public void write(CharSequence formatted) throws IOException {
+		mOut.append(formatted);
+	}
+
+	public void flush() throws IOException {
+		mOut.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (mCloseStream) {
+			mOut.close();
+		} else {
+			mOut.flush();
+		}
+	}
+
+	/**
+	 * Formats the items of a search result.
+	 */
+	public void format(Appendable out, SearchResult result) throws IOException {
+		for (ResultItem item : result.getResultItems()) {
+			formatItem(out, result, item);
+		}
+	}
+
+	/**
+	 * Formats the search, update, delete and notify results of a poll
+	 * result. Error results are ignored.
+	 */
+	public void format(Appendable out, PollResult result) throws IOException {
+		if (mFormat != OutputFormat.text) {
+			for (SearchResult searchResult : result.getResults()) {
+				format(out, searchResult);
+			}
+			return;
+		}
+
+		for (int i = 0; i < POLL_RESULT_ORDER.length; i++) {
+			List<SearchResult> ofType = new ArrayList<SearchResult>();
+			for (SearchResult searchResult : result.getResults()) {
+				if (searchResult.getType() == POLL_RESULT_ORDER[i]) {
+					ofType.add(searchResult);
+				}
+			}
+			if (ofType.size() > 0) {
+				out.append(POLL_RESULT_TITLES[i]).append(NEWLINE);
+				for (SearchResult searchResult : ofType) {
+					format(out, searchResult);
+				}
+			}
+		}
+	}
+
+	private void formatItem(Appendable out, SearchResult result, ResultItem item)
+			throws IOException {
+		switch (mFormat) {
+		case xml:
+			formatXml(out, result, item);
+			break;
+		case jsonl:
+			formatJson(out, result, item);
+			break;
+		default:
+			formatText(out, item);
+			break;
+		}
+	}
+
+	private void formatText(Appendable out, ResultItem item) throws IOException {
+		out.append(SEPARATOR).append(NEWLINE);
+		out.append(String.valueOf(item)).append(NEWLINE);
+		for (Document document : item.getMetadata()) {
+			try {
+				DocumentSerializer.appendTo(out, document, true);
+				out.append(NEWLINE);
+			} catch (TransformerException e) {
+				e.printStackTrace();
+			}
+		}
+		out.append(SEPARATOR).append(NEWLINE);
+	}
+
+	private void formatXml(Appendable out, SearchResult result, ResultItem item)
+			throws IOException {
+		out.append("<resultItem result=\"").append(String.valueOf(result.getType())).append('"');
+		if (result.getName() != null) {
+			out.append(" name=\"");
+			escape(out, result.getName());
+			out.append('"');
+		}
+		out.append('>');
+
+		for (Identifier identifier : new Identifier[] {item.getIdentifier1(), item.getIdentifier2()}) {
+			if (identifier != null) {
+				formatXml(out, identifier);
+			}
+		}
+
+		if (!item.getMetadata().isEmpty()) {
+			out.append("<metadata>");
+			for (Document document : item.getMetadata()) {
+				try {
+					DocumentSerializer.appendTo(out, document, false);
+				} catch (TransformerException e) {
+					e.printStackTrace();
+				}
+			}
+			out.append("</metadata>");
+		}
+		out.append("</resultItem>").append(NEWLINE);
+	}
+
+	private void formatJson(Appendable out, SearchResult result, ResultItem item)
+			throws IOException {
+		String type = String.valueOf(result.getType());
+		if (type.endsWith("Result")) {
+			type = type.substring(0, type.length() - "Result".length());
+		}
+		out.append("{\"type\":");
+		JsonEncoder.appendString(out, type);
+		if (result.getName() != null) {
+			out.append(",\"name\":");
+			JsonEncoder.appendString(out, result.getName());
+		}
+
+		out.append(",\"identifiers\":[");
+		boolean first = true;
+		for (Identifier identifier : new Identifier[] {item.getIdentifier1(), item.getIdentifier2()}) {
+			if (identifier != null) {
+				if (!first) {
+					out.append(',');
+				}
+				JsonEncoder.appendIdentifier(out, identifier);
+				first = false;
+			}
+		}
+
+		out.append("],\"metadata\":[");
+		first = true;
+		for (Document document : item.getMetadata()) {
+			if (!first) {
+				out.append(',');
+			}
+			JsonEncoder.appendMetadata(out, document);
+			first = false;
+		}
+		out.append("]}").append(JSONL_NEWLINE);
+	}
+
+	/**
+	 * Formats an added or removed identifier or metadata item, which is
+	 * given either as <code>document</code> or as compact <code>xml</code>.
+	 */
+	private void formatChange(Appendable out, boolean added, List<String> elements,
+			List<List<String>> attributes, Document document, String xml) throws IOException {
+		switch (mFormat) {
+		case xml:
+			out.append("<resultItem result=\"").append(added ? "added" : "removed").append("\">");
+			for (int i = 0; i < elements.size(); i++) {
+				formatXml(out, elements.get(i), attributes.get(i));
+			}
+			if (document != null || xml != null) {
+				out.append("<metadata>");
+				appendMetadata(out, document, xml);
+				out.append("</metadata>");
+			}
+			out.append("</resultItem>").append(NEWLINE);
+			break;
+		case jsonl:
+			out.append("{\"type\":\"").append(added ? "added" : "removed").append("\",\"identifiers\":[");
+			for (int i = 0; i < elements.size(); i++) {
+				if (i > 0) {
+					out.append(',');
+				}
+				JsonEncoder.appendIdentifier(out, elements.get(i), attributes.get(i));
+			}
+			out.append("],\"metadata\":[");
+			if (document != null) {
+				JsonEncoder.appendMetadata(out, document);
+			} else if (xml != null) {
+				JsonEncoder.appendMetadata(out, parse(xml));
+			}
+			out.append("]}").append(JSONL_NEWLINE);
+			break;
+		default:
+			out.append(added ? "+ " : "- ");
+			for (int i = 0; i < elements.size(); i++) {
+				if (i > 0) {
+					out.append(" | ");
+				}
+				out.append(IdentifierAttributes.getKey(elements.get(i), attributes.get(i)));
+			}
+			if (document != null || xml != null) {
+				out.append(": ");
+				appendMetadata(out, document, xml);
+			}
+			out.append(NEWLINE);
+			break;
+		}
+	}
+
+	private static void appendMetadata(Appendable out, Document document, String xml)
+			throws IOException {
+		if (document == null) {
+			out.append(xml);
+			return;
+		}
+		try {
+			DocumentSerializer.appendTo(out, document, false);
+		} catch (TransformerException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private Document parse(String xml) throws IOException {
+		try {
+			if (mDocumentBuilder == null) {
+				DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+				factory.setNamespaceAware(true);
+				mDocumentBuilder = factory.newDocumentBuilder();
+			}
+			return mDocumentBuilder.parse(new InputSource(new StringReader(xml)));
+		} catch (ParserConfigurationException e) {
+			throw new IOException(e.getMessage(), e);
+		} catch (SAXException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	private static void addIdentifier(List<String> elements, List<List<String>> attributes,
+			Identifier identifier) {
+		elements.add(IdentifierAttributes.getElementName(identifier));
+		attributes.add(IdentifierAttributes.getAttributes(identifier));
+	}
+
+	private static void addIdentifier(List<String> elements, List<List<String>> attributes,
+			GraphSnapshot snapshot, int identifier) {
+		elements.add(snapshot.getElementName(identifier));
+		attributes.add(snapshot.getAttributes(identifier));
+	}
+
+	private static void formatXml(Appendable out, Identifier identifier) throws IOException {
+		formatXml(out, IdentifierAttributes.getElementName(identifier),
+				IdentifierAttributes.getAttributes(identifier));
+	}
+
+	private static void formatXml(Appendable out, String element, List<String> attributes)
+			throws IOException {
+		out.append('<').append(element);
+		if (element.equals(IdentifierAttributes.DEVICE)) {
+			out.append("><name>");
+			escape(out, attributes.isEmpty() ? "" : attributes.get(1));
+			out.append("</name></device>");
+			return;
+		}
+		for (int i = 0; i < attributes.size(); i += 2) {
+			out.append(' ').append(attributes.get(i)).append("=\"");
+			escape(out, attributes.get(i + 1));
+			out.append('"');
+		}
+		out.append("/>");
+	}
+
+	private static void escape(Appendable out, String value) throws IOException {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '<':
+				out.append("&lt;");
+				break;
+			case '>':
+				out.append("&gt;");
+				break;
+			case '&':
+				out.append("&amp;");
+				break;
+			case '"':
+				out.append("&quot;");
+				break;
+			default:
+				if (c < 0x20) {
+					out.append("&#").append(Integer.toString(c)).append(';');
+				} else {
+					out.append(c);
+				}
+				break;
+			}
+		}
+	}
+}
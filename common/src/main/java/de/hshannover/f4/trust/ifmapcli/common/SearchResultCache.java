@@ -0,0 +1,270 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (common), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli.common;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.w3c.dom.Document;
+
+import de.hshannover.f4.trust.ifmapj.messages.ResultItem;
+import de.hshannover.f4.trust.ifmapj.messages.SearchRequest;
+import de.hshannover.f4.trust.ifmapj.messages.SearchResult;
+
+/**
+ * Cache of search results, keyed by {@link ConnectionConfig} and the<br/>
+ * canonical form of the {@link SearchRequest}: start identifier, match-links,<br/>
+ * max-depth, max-size, result-filter, terminal identifier types and<br/>
+ * namespace declarations. Identical searches within the time to live of a<br/>
+ * result are answered without contacting the MAPS.<br/>
+ * <br/>
+ * The cache holds at most a fixed number of results and evicts the least<br/>
+ * recently used one first. Callers pass the time to live on every lookup,<br/>
+ * so invocations with different freshness requirements can share the<br/>
+ * process wide cache, e.g. in the ifmapcli daemon. The cache lives as long<br/>
+ * as the JVM, so it only pays off in a long-running process.<br/>
+ * <br/>
+ * A DOM is not safe for concurrent reads, so the cache keeps its own copy of<br/>
+ * the metadata of a result and every lookup returns a new copy. ifmapj has<br/>
+ * no public constructors for results, so the copies are proxies that answer<br/>
+ * with the copied result items and metadata and pass everything else to the<br/>
+ * original result.
+ *
+ */
+public class SearchResultCache {
+
+	public static final int DEFAULT_MAX_ENTRIES = 256;
+
+	private static SearchResultCache sDefaultCache;
+
+	/**
+	 * The connection and canonical request a result belongs to.
+	 */
+	private static final class Key {
+		private final ConnectionConfig mConfig;
+		private final String mRequest;
+
+		Key(ConnectionConfig config, String request) {
+			mConfig = config;
+			mRequest = request;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return mConfig.equals(other.mConfig) && mRequest.equals(other.mRequest);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * mConfig.hashCode() + mRequest.hashCode();
+		}
+	}
+
+	private static final class CachedResult {
+		private final SearchResult mResult;
+		private final long mCreated;
+
+		CachedResult(SearchResult result, long created) {
+			mResult = result;
+			mCreated = created;
+		}
+	}
+
+	private final Map<Key, CachedResult> mEntries;
+	private long mHits;
+	private long mMisses;
+
+	public SearchResultCache(final int maxEntries) {
+		mEntries = new LinkedHashMap<Key, CachedResult>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, CachedResult> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @return the process wide cache
+	 */
+	public static synchronized SearchResultCache getDefault() {
+		if (sDefaultCache == null) {
+			sDefaultCache = new SearchResultCache(DEFAULT_MAX_ENTRIES);
+		}
+		return sDefaultCache;
+	}
+
+	/**
+	 * @param ttl - maximum age of the result in milliseconds
+	 * @return the cached result of an identical search that is not older
+	 *         than <code>ttl</code>, or null
+	 */
+	public synchronized SearchResult get(ConnectionConfig config, SearchRequest request, long ttl) {
+		Key key = new Key(config, canonicalize(request));
+		CachedResult entry = mEntries.get(key);
+		if (entry != null && System.nanoTime() - entry.mCreated <= ttl * 1000000L) {
+			mHits++;
+			return copy(entry.mResult);
+		}
+		mMisses++;
+		return null;
+	}
+
+	/**
+	 * Cache a copy of the result of a search that was just done, before the
+	 * caller hands the result to other threads.
+	 */
+	public synchronized void put(ConnectionConfig config, SearchRequest request, SearchResult result) {
+		mEntries.put(new Key(config, canonicalize(request)), new CachedResult(copy(result), System.nanoTime()));
+	}
+
+	public synchronized void clear() {
+		mEntries.clear();
+	}
+
+	public synchronized int size() {
+		return mEntries.size();
+	}
+
+	public synchronized long getHits() {
+		return mHits;
+	}
+
+	public synchronized long getMisses() {
+		return mMisses;
+	}
+
+	/**
+	 * @return a string that is equal for two search requests if and only if
+	 *         they ask for the same result
+	 */
+	public static String canonicalize(SearchRequest request) {
+		StringBuilder sb = new StringBuilder(128);
+		sb.append(IdentifierAttributes.getKey(request.getStartIdentifier()));
+		sb.append("\nmatch-links=").append(trim(request.getMatchLinksFilter()));
+		sb.append("\nmax-depth=").append(request.getMaxDepth());
+		sb.append("\nmax-size=").append(request.getMaxSize());
+		sb.append("\nresult-filter=").append(trim(request.getResultFilter()));
+
+		sb.append("\nterminal-identifier-type=");
+		String terminal = request.getTerminalIdentifierTypes();
+		if (terminal != null) {
+			String[] types = terminal.split(",");
+			for (int i = 0; i < types.length; i++) {
+				types[i] = types[i].trim();
+			}
+			Arrays.sort(types);
+			for (int i = 0; i < types.length; i++) {
+				sb.append(i > 0 ? "," : "").append(types[i]);
+			}
+		}
+
+		// filters refer to these prefixes
+		Map<String, String> namespaces = request.getNamespaceDeclarations();
+		if (namespaces != null) {
+			for (Map.Entry<String, String> namespace : new TreeMap<String, String>(namespaces).entrySet()) {
+				sb.append("\nxmlns:").append(namespace.getKey()).append('=').append(namespace.getValue());
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return a result with copies of the result items and their metadata
+	 */
+	private static SearchResult copy(final SearchResult result) {
+		final List<ResultItem> items = new ArrayList<ResultItem>(result.getResultItems().size());
+		for (ResultItem item : result.getResultItems()) {
+			items.add(copy(item));
+		}
+		return (SearchResult) Proxy.newProxyInstance(SearchResult.class.getClassLoader(),
+				new Class<?>[] {SearchResult.class}, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (method.getName().equals("getResultItems") && args == null) {
+							return items;
+						}
+						return delegate(result, method, args);
+					}
+				});
+	}
+
+	private static ResultItem copy(final ResultItem item) {
+		final List<Document> metadata = new ArrayList<Document>(item.getMetadata().size());
+		for (Document document : item.getMetadata()) {
+			metadata.add((Document) document.cloneNode(true));
+		}
+		return (ResultItem) Proxy.newProxyInstance(ResultItem.class.getClassLoader(),
+				new Class<?>[] {ResultItem.class}, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (method.getName().equals("getMetadata") && args == null) {
+							return metadata;
+						}
+						return delegate(item, method, args);
+					}
+				});
+	}
+
+	private static Object delegate(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static String trim(String s) {
+		return s == null ? null : s.trim();
+	}
+}
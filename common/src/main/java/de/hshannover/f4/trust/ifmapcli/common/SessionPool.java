@@ -0,0 +1,238 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (common), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli.common;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import de.hshannover.f4.trust.ifmapj.exception.IfmapErrorResult;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapException;
+import de.hshannover.f4.trust.ifmapj.exception.InitializationException;
+
+/**
+ * Pool of established IF-MAP sessions, keyed by {@link ConnectionConfig}.<br/>
+ * Creating a SSRC, doing the TLS handshake and calling newSession() is<br/>
+ * by far the most expensive part of a small publish. Publishers that send<br/>
+ * many requests therefore {@link #acquire} a session, use it and<br/>
+ * {@link #release} it again, so that the setup cost is only paid once.<br/>
+ * <br/>
+ * Idle sessions are kept alive with renewSession() and are closed when<br/>
+ * they have not been used for a while. All remaining sessions of the<br/>
+ * default pool are ended when the JVM shuts down.
+ *
+ */
+public class SessionPool {
+
+	public static final long DEFAULT_KEEP_ALIVE_INTERVAL = 60 * 1000;
+	public static final long DEFAULT_MAX_IDLE_TIME = 10 * 60 * 1000;
+
+	private static SessionPool sDefaultPool;
+
+	private final long mKeepAliveInterval;
+	private final long mMaxIdleTime;
+	private final Map<ConnectionConfig, LinkedList<PooledSession>> mIdle;
+	private final Timer mTimer;
+	private boolean mClosed;
+
+	public SessionPool(long keepAliveInterval, long maxIdleTime) {
+		mKeepAliveInterval = keepAliveInterval;
+		mMaxIdleTime = maxIdleTime;
+		mIdle = new HashMap<ConnectionConfig, LinkedList<PooledSession>>();
+		mTimer = new Timer("ifmapcli-session-pool", true);
+
+		long period = Math.min(keepAliveInterval, maxIdleTime) / 2;
+		mTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				maintain();
+			}
+		}, period, period);
+	}
+
+	/**
+	 * @return the process wide pool, which is closed on JVM shutdown
+	 */
+	public static SessionPool getDefault() {
+		return initDefault(DEFAULT_KEEP_ALIVE_INTERVAL, DEFAULT_MAX_IDLE_TIME);
+	}
+
+	/**
+	 * Create the process wide pool with non-default timeouts. Has no effect
+	 * if the default pool already exists.
+	 *
+	 * @param keepAliveInterval - milliseconds between two renewSession()
+	 * @param maxIdleTime - milliseconds after which an unused session is closed
+	 * @return the process wide pool
+	 */
+	public static synchronized SessionPool initDefault(long keepAliveInterval, long maxIdleTime) {
+		if (sDefaultPool == null) {
+			final SessionPool pool = new SessionPool(keepAliveInterval, maxIdleTime);
+			Runtime.getRuntime().addShutdownHook(new Thread("ifmapcli-session-pool-shutdown") {
+				@Override
+				public void run() {
+					pool.close();
+				}
+			});
+			sDefaultPool = pool;
+		}
+		return sDefaultPool;
+	}
+
+	/**
+	 * Take an idle session for the given configuration out of the pool or
+	 * establish a new one if there is none. The caller owns the session
+	 * until it hands it back with {@link #release} or {@link #invalidate}.
+	 *
+	 * @param config - the connection parameters
+	 * @return an established session
+	 */
+	public PooledSession acquire(ConnectionConfig config) throws FileNotFoundException,
+			InitializationException, IfmapErrorResult, IfmapException {
+		synchronized (this) {
+			if (mClosed) {
+				throw new IllegalStateException("session pool is closed");
+			}
+			LinkedList<PooledSession> idle = mIdle.get(config);
+			if (idle != null && !idle.isEmpty()) {
+				return idle.removeFirst();
+			}
+		}
+
+		PooledSession session = new PooledSession(config, config.createSsrc());
+		session.open();
+		return session;
+	}
+
+	/**
+	 * Hand a session back to the pool after a successful use.
+	 *
+	 * @param session
+	 */
+	public void release(PooledSession session) {
+		synchronized (this) {
+			if (!mClosed) {
+				LinkedList<PooledSession> idle = mIdle.get(session.getConfig());
+				if (idle == null) {
+					idle = new LinkedList<PooledSession>();
+					mIdle.put(session.getConfig(), idle);
+				}
+				// most recently used first, so that rarely used sessions expire
+				idle.addFirst(session);
+				return;
+			}
+		}
+		session.close();
+	}
+
+	/**
+	 * Close a session that is in an unknown state, e.g. after an
+	 * unexpected error, instead of returning it to the pool.
+	 *
+	 * @param session
+	 */
+	public void invalidate(PooledSession session) {
+		session.close();
+	}
+
+	/**
+	 * End all idle sessions. Sessions that are currently acquired are
+	 * closed when they are released.
+	 */
+	public void close() {
+		List<PooledSession> toClose = new ArrayList<PooledSession>();
+		synchronized (this) {
+			mClosed = true;
+			mTimer.cancel();
+			for (LinkedList<PooledSession> idle : mIdle.values()) {
+				toClose.addAll(idle);
+			}
+			mIdle.clear();
+		}
+		for (PooledSession session : toClose) {
+			session.close();
+		}
+	}
+
+	/**
+	 * Evict sessions that were idle for too long and renew the others if
+	 * necessary. The network I/O is done without holding the pool lock.
+	 */
+	private void maintain() {
+		long now = System.currentTimeMillis();
+		List<PooledSession> expired = new ArrayList<PooledSession>();
+		List<PooledSession> toRenew = new ArrayList<PooledSession>();
+
+		synchronized (this) {
+			for (LinkedList<PooledSession> idle : mIdle.values()) {
+				Iterator<PooledSession> it = idle.iterator();
+				while (it.hasNext()) {
+					PooledSession session = it.next();
+					if (now - session.getLastUsed() > mMaxIdleTime) {
+						it.remove();
+						expired.add(session);
+					} else if (now - session.getLastRenewed() > mKeepAliveInterval) {
+						it.remove();
+						toRenew.add(session);
+					}
+				}
+			}
+		}
+
+		for (PooledSession session : expired) {
+			session.close();
+		}
+
+		for (PooledSession session : toRenew) {
+			try {
+				session.renew();
+				// renewing does not count as a use
+				release(session);
+			} catch (Exception e) {
+				session.close();
+			}
+		}
+	}
+}
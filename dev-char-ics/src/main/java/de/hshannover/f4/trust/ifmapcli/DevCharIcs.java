@@ -44,6 +44,7 @@ import org.w3c.dom.Document;
 
 import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
 import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
+import de.hshannover.f4.trust.ifmapcli.common.PublishRequestFactory;
 import de.hshannover.f4.trust.ifmapj.binding.IfmapStrings;
 import de.hshannover.f4.trust.ifmapj.extendedIdentifiers.ContentAuthorizationIdentifiers;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
@@ -82,8 +83,15 @@ public class DevCharIcs extends AbstractClient {
 		ParserUtil.addDiscovererId(parser);
 		ParserUtil.addDiscoveryMethod(parser);
 
-		parseParameters(parser, args);
+		publishIfmapData(parser, args, new PublishRequestFactory() {
+			@Override
+			public PublishRequest createPublishRequest() {
+				return createRequest();
+			}
+		});
+	}
 
+	private static PublishRequest createRequest() {
 		printParameters(KEY_OPERATION, new String[] {KEY_IDENTITY_DISTINGUISHED_NAME,
 				KEY_MANUFACTURER, KEY_MODEL, KEY_OS, KEY_OS_VERSION, KEY_DEVICE_TYPE,
 				KEY_DISCOVERED_TIME, KEY_DISCOVERER_ID, KEY_DISCOVERY_METHOD});
@@ -124,7 +132,6 @@ public class DevCharIcs extends AbstractClient {
 			request = Requests.createPublishReq(publishDelete);
 		}
 
-		// publish
-		publishIfmapData(request);
+		return request;
 	}
 }
@@ -45,6 +45,7 @@ import org.w3c.dom.Document;
 import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
 import de.hshannover.f4.trust.ifmapcli.common.IfmapjEnumConverter;
 import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
+import de.hshannover.f4.trust.ifmapcli.common.PublishRequestFactory;
 import de.hshannover.f4.trust.ifmapcli.common.enums.EnforcementAction;
 import de.hshannover.f4.trust.ifmapcli.common.enums.IdType;
 import de.hshannover.f4.trust.ifmapj.binding.IfmapStrings;
@@ -77,8 +78,15 @@ public class EnfReport extends AbstractClient {
 		ParserUtil.addOtherTypeDefinition(parser);
 		ParserUtil.addEnforcementReason(parser);
 
-		parseParameters(parser, args);
-		
+		publishIfmapData(parser, args, new PublishRequestFactory() {
+			@Override
+			public PublishRequest createPublishRequest() {
+				return createRequest();
+			}
+		});
+	}
+
+	private static PublishRequest createRequest() {
 		printParameters(KEY_OPERATION, new String[] {KEY_DEVICE, KEY_IDENTIFIER_TYPE, KEY_IDENTIFIER, KEY_ENFORCEMENT_ACTION, KEY_OTHERTYPE_DEFINITION, KEY_ENFORCEMENT_REASON});
 		
 		String device = resource.getString(KEY_DEVICE);
@@ -108,7 +116,6 @@ public class EnfReport extends AbstractClient {
 			request = Requests.createPublishReq(publishDelete);
 		}
 
-		// publish
-		publishIfmapData(request);
+		return request;
 	}
 }
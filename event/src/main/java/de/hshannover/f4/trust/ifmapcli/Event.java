@@ -48,11 +48,12 @@ import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
 import de.hshannover.f4.trust.ifmapcli.common.Common;
 import de.hshannover.f4.trust.ifmapcli.common.IfmapjEnumConverter;
 import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
+import de.hshannover.f4.trust.ifmapcli.common.PooledSession;
+import de.hshannover.f4.trust.ifmapcli.common.SessionPool;
 import de.hshannover.f4.trust.ifmapcli.common.enums.EventType;
 import de.hshannover.f4.trust.ifmapcli.common.enums.IdType;
 import de.hshannover.f4.trust.ifmapcli.common.enums.Significance;
 import de.hshannover.f4.trust.ifmapj.binding.IfmapStrings;
-import de.hshannover.f4.trust.ifmapj.channel.SSRC;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
 import de.hshannover.f4.trust.ifmapj.messages.MetadataLifetime;
 import de.hshannover.f4.trust.ifmapj.messages.PublishDelete;
@@ -119,10 +120,10 @@ public class Event extends AbstractClient {
 				resource.getString(KEY_INFORMATION),
 				resource.getString(KEY_VULNERABILITY_URI));
 
-		SSRC ssrc;
+		SessionPool pool = SessionPool.getDefault();
+		PooledSession session = null;
 		try {
-			ssrc = createSSRC();
-			ssrc.newSession();
+			session = pool.acquire(getConnectionConfig());
 
 			PublishRequest req = Requests.createPublishReq();
 
@@ -138,7 +139,7 @@ public class Event extends AbstractClient {
 				// TODO expand filter string to all event attributes
 				String filter = String.format(
 						"meta:event[@ifmap-publisher-id='%s' and name='%s']",
-						ssrc.getPublisherId(), resource.getString(KEY_EVENT_NAME));
+						session.getSsrc().getPublisherId(), resource.getString(KEY_EVENT_NAME));
 
 				PublishDelete publishDelete = Requests.createPublishDelete(
 						identifier, filter);
@@ -147,11 +148,14 @@ public class Event extends AbstractClient {
 				req.addPublishElement(publishDelete);
 			}
 
-			ssrc.publish(req);
-			ssrc.endSession();
+			session.publish(req);
+			pool.release(session);
 		} catch (Exception e) {
+			if (session != null) {
+				pool.invalidate(session);
+			}
 			e.printStackTrace();
-			System.exit(1);
+			exit(1);
 		}
 
 	}
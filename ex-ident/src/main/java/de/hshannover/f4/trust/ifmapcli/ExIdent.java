@@ -52,8 +52,9 @@ import org.w3c.dom.Document;
 import util.DomHelpers;
 import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
 import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
+import de.hshannover.f4.trust.ifmapcli.common.PooledSession;
+import de.hshannover.f4.trust.ifmapcli.common.SessionPool;
 import de.hshannover.f4.trust.ifmapcli.common.enums.IdType;
-import de.hshannover.f4.trust.ifmapj.channel.SSRC;
 import de.hshannover.f4.trust.ifmapj.exception.MarshalException;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifiers;
@@ -148,7 +149,7 @@ public class ExIdent extends AbstractClient {
 				try {
 					identifier2 = Identifiers
 							.createExtendedIdentity(new FileInputStream(
-									identifierNameOrFileName2));
+									resolveFile(identifierNameOrFileName2)));
 				} catch (MarshalException e) {
 					e.printStackTrace();
 				} catch (FileNotFoundException e) {
@@ -234,9 +235,10 @@ public class ExIdent extends AbstractClient {
 		String nsUri = metadata.getChildNodes().item(0).getNamespaceURI();
 		String elementname = metadata.getChildNodes().item(0).getLocalName();
 
+		SessionPool pool = SessionPool.getDefault();
+		PooledSession session = null;
 		try {
-			SSRC ssrc = createSSRC();
-			ssrc.newSession();
+			session = pool.acquire(getConnectionConfig());
 
 			PublishRequest request;
 
@@ -254,7 +256,7 @@ public class ExIdent extends AbstractClient {
 			} else {
 				PublishDelete publishDelete;
 				String filter = String.format(nsPrefix + ":" + elementname
-						+ "[@ifmap-publisher-id='%s']", ssrc.getPublisherId());
+						+ "[@ifmap-publisher-id='%s']", session.getSsrc().getPublisherId());
 				if (identifier2 == null) {
 					publishDelete = Requests.createPublishDelete(identifier1,
 							filter);
@@ -266,11 +268,14 @@ public class ExIdent extends AbstractClient {
 				request = Requests.createPublishReq(publishDelete);
 			}
 
-			ssrc.publish(request);
-			ssrc.endSession();
+			session.publish(request);
+			pool.release(session);
 		} catch (Exception e) {
+			if (session != null) {
+				pool.invalidate(session);
+			}
 			e.printStackTrace();
-			System.exit(1);
+			exit(1);
 		}
 
 	}
@@ -53,9 +53,10 @@ import org.w3c.dom.Document;
 import util.DomHelpers;
 import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
 import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
+import de.hshannover.f4.trust.ifmapcli.common.PooledSession;
+import de.hshannover.f4.trust.ifmapcli.common.SessionPool;
 import de.hshannover.f4.trust.ifmapcli.common.enums.IdType;
 import de.hshannover.f4.trust.ifmapj.binding.IfmapStrings;
-import de.hshannover.f4.trust.ifmapj.channel.SSRC;
 import de.hshannover.f4.trust.ifmapj.exception.MarshalException;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifiers;
@@ -154,7 +155,7 @@ public class ExMeta extends AbstractClient {
 			try {
 				identifier1 = Identifiers
 						.createExtendedIdentity(new FileInputStream(
-								identifierName1));
+								resolveFile(identifierName1)));
 			} catch (MarshalException e) {
 				e.printStackTrace();
 			} catch (FileNotFoundException e) {
@@ -177,7 +178,7 @@ public class ExMeta extends AbstractClient {
 				try {
 					identifier2 = Identifiers
 							.createExtendedIdentity(new FileInputStream(
-									identifierName2));
+									resolveFile(identifierName2)));
 				} catch (MarshalException e) {
 					e.printStackTrace();
 				} catch (FileNotFoundException e) {
@@ -285,9 +286,10 @@ public class ExMeta extends AbstractClient {
 		String nsUri = metadata.getChildNodes().item(0).getNamespaceURI();
 		String elementname = metadata.getChildNodes().item(0).getLocalName();
 
+		SessionPool pool = SessionPool.getDefault();
+		PooledSession session = null;
 		try {
-			SSRC ssrc = createSSRC();
-			ssrc.newSession();
+			session = pool.acquire(getConnectionConfig());
 
 			PublishRequest request;
 
@@ -304,7 +306,7 @@ public class ExMeta extends AbstractClient {
 			} else {
 				PublishDelete publishDelete;
 				String filter = String.format(nsPrefix + ":" + elementname + "[@ifmap-publisher-id='%s']",
-						ssrc.getPublisherId());
+						session.getSsrc().getPublisherId());
 				if (identifier2 == null) {
 					publishDelete = Requests.createPublishDelete(identifier1, filter);
 				} else {
@@ -314,11 +316,14 @@ public class ExMeta extends AbstractClient {
 				request = Requests.createPublishReq(publishDelete);
 			}
 
-			ssrc.publish(request);
-			ssrc.endSession();
+			session.publish(request);
+			pool.release(session);
 		} catch (Exception e) {
+			if (session != null) {
+				pool.invalidate(session);
+			}
 			e.printStackTrace();
-			System.exit(1);
+			exit(1);
 		}
 
 	}
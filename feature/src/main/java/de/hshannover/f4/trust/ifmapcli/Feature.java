@@ -38,36 +38,30 @@
  */
 package de.hshannover.f4.trust.ifmapcli;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.Random;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import net.sourceforge.argparse4j.inf.ArgumentParser;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
 
 import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
+import de.hshannover.f4.trust.ifmapcli.common.ChunkedPublisher;
 import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
-import de.hshannover.f4.trust.ifmapj.channel.SSRC;
-import de.hshannover.f4.trust.ifmapj.identifier.Device;
-import de.hshannover.f4.trust.ifmapj.identifier.Identifiers;
-import de.hshannover.f4.trust.ifmapj.identifier.Identity;
-import de.hshannover.f4.trust.ifmapj.identifier.IdentityType;
-import de.hshannover.f4.trust.ifmapj.messages.MetadataLifetime;
-import de.hshannover.f4.trust.ifmapj.messages.PublishRequest;
+import de.hshannover.f4.trust.ifmapcli.common.PooledSession;
+import de.hshannover.f4.trust.ifmapcli.common.SessionPool;
 import de.hshannover.f4.trust.ifmapj.messages.PublishUpdate;
-import de.hshannover.f4.trust.ifmapj.messages.Requests;
 
 /**
  * A simple publisher implementation that publishes random feature metadata with
  * lifetime 'forever'.
  * To delete the metadata use the ifmapcli purge tool.
  *
+ * The tree is built by a {@link FeatureGenerator} on <code>--workers</code>
+ * threads and is the same for the same <code>--seed</code>. It is published
+ * while it is built, in requests of up to <code>--batch-size</code> elements
+ * and <code>--batch-bytes</code> bytes, see {@link ChunkedPublisher}.
+ *
  * @author Ralf Steuerwald
  *
  */
@@ -77,157 +71,27 @@ public class Feature extends AbstractClient {
 	final static String NAMESPACE = "http://www.esukom.de/2012/ifmap-metadata/1";
 	final static String NAMESPACE_PREFIX = "esukom";
 
-	private static String deviceIdentifier;
-	private static int treeDepth;
-	private static int maxChildsPerCategory;
-	private static int maxFeaturePerCategory;
-
-	private static List<PublishUpdate> publishUpdates = new ArrayList<PublishUpdate>();
-
-	private static DocumentBuilder documentBuilder;
-
-	private static List<Double> featureValues = new ArrayList<Double>();
-	private static Random featureRandom = new Random(42L);
-
-	/**
-	 * Creates the child nodes for the given parent {@link Identity}. The
-	 * resulting {@link PublishUpdate}s for each child are added to
-	 * <code>mPublishUpdates</code>.
-	 *
-	 * @param parent
-	 * @param currentDepth
-	 */
-	private static void fork(Identity parent, int currentDepth, String[] path) {
-		if (currentDepth < treeDepth) {
-			int childCount = new Random().nextInt(maxChildsPerCategory) + 1;
-
-			for (int i = 0; i < childCount; i++) {
-				PublishUpdate update = Requests.createPublishUpdate();
-
-				String name = "category" + ((i % 4 == 0) ? ("X:" + (i / 4)) : i + "");
-				String fullNodeName = joinStrings(path) + "." + name;
-				Identity node = createCategory(fullNodeName, deviceIdentifier);
-
-				Document subCategoryOf = createCategoryLink("subcategory-of");
-
-				update.setIdentifier1(parent);
-				update.setIdentifier2(node);
-				update.addMetadata(subCategoryOf);
-				update.setLifeTime(MetadataLifetime.forever);
-
-				publishUpdates.add(update);
-				appendFeatures(node);
-
-				fork(node, currentDepth+1, append(name, path));
-			}
-		}
-	}
-
-	private static String joinStrings(String[] parts) {
-		StringBuffer s = new StringBuffer();
-
-		for (int i = 0; i < parts.length - 1; i++) {
-			s.append(parts[i]);
-			s.append(".");
-		}
-		s.append(parts[parts.length - 1]);
-		return s.toString();
-	}
-
-	private static String[] append(String s, String[] a) {
-		String[] result = new String[a.length + 1];
-
-		for (int i = 0; i < a.length; i++) {
-			result[i] = a[i];
-		}
-		result[a.length] = s;
-		return result;
-	}
-
-	/**
-	 * Appends random feature metadata to the given {@link Identity}.
-	 * @param node
-	 */
-	private static void appendFeatures(Identity node) {
-		int featureCount = new Random().nextInt(maxFeaturePerCategory) + 1;
-
-		for (int i = 0; i < featureCount; i++) {
-			PublishUpdate update = Requests.createPublishUpdate();
-
-			Document feature = createFeature(Math.random() + "");
-
-			update.setIdentifier1(node);
-			update.addMetadata(feature);
-			update.setLifeTime(MetadataLifetime.forever);
-
-			publishUpdates.add(update);
+	private static void printStats(double[] featureValues) {
+		System.out.println("Number of features: " + featureValues.length);
+		if (featureValues.length == 0) {
+			return;
 		}
-	}
-
-	private static Document createCategoryLink(String name) {
-		Document doc = documentBuilder.newDocument();
-		Element e = doc.createElementNS(NAMESPACE, NAMESPACE_PREFIX + ":" + name);
-		e.setAttributeNS(null, "ifmap-cardinality", "singleValue");
-
-		doc.appendChild(e);
-		return doc;
-	}
-
-	private static Document createFeature(String id) {
-		Document doc = documentBuilder.newDocument();
-		Element feature = doc.createElementNS(NAMESPACE, NAMESPACE_PREFIX + ":feature");
-
-		feature.setAttributeNS(null, "ifmap-cardinality", "multiValue");
-		feature.setAttribute("ctxp-timestamp", "2012-01-01T22:22:22");
-		feature.setAttribute("ctxp-position", "TODO");
-		feature.setAttribute("ctxp-other-devices", "TODO");
-
-		Element idElement = doc.createElement("id");
-		idElement.setTextContent(id);
-		feature.appendChild(idElement);
-
-		Element typeElement = doc.createElement("type");
-		typeElement.setTextContent("quantitive");
-		feature.appendChild(typeElement);
-
-		double v = featureRandom.nextDouble() * 10;
-		featureValues.add(v);
-
-		Element valueElement = doc.createElement("value");
-		valueElement.setTextContent(v + "");
-		feature.appendChild(valueElement);
 
-		doc.appendChild(feature);
-		return doc;
-	}
-
-	private static void printStats() {
 		double sum = 0;
-		for (Double d : featureValues) {
+		for (double d : featureValues) {
 			sum += d;
 		}
 
-		Collections.sort(featureValues);
-
-		double median = (featureValues.size() % 2 != 0 ) ? // not even number of elements?
-					(featureValues.get(featureValues.size() / 2) ) : // choose the middel
-					((featureValues.get((featureValues.size() / 2) - 1) + // choose mean of both middle values
-							featureValues.get(featureValues.size() / 2)) / 2);
-
+		// the values are sorted already
+		double median = (featureValues.length % 2 != 0 ) ? // not even number of elements?
+					(featureValues[featureValues.length / 2] ) : // choose the middel
+					((featureValues[(featureValues.length / 2) - 1] + // choose mean of both middle values
+							featureValues[featureValues.length / 2]) / 2);
 
-		System.out.println("Number of features: " + featureValues.size());
-		System.out.println("Average: " + sum / featureValues.size());
+		System.out.println("Average: " + sum / featureValues.length);
 		System.out.println("Median: " + median);
 	}
 
-	private static Identity createCategory(String name, String admDomain) {
-		return Identifiers.createIdentity(
-				IdentityType.other,
-				name,
-				admDomain,
-				OTHER_TYPE_DEFINITION);
-	}
-
 	public static void main(String[] args) {
 		command = "feature";
 		
@@ -236,54 +100,64 @@ public class Feature extends AbstractClient {
 		ParserUtil.addFeatureTreeDepth(parser);
 		ParserUtil.addFeatureMaxChilds(parser);
 		ParserUtil.addFeatureMaxFeatures(parser);
+		ParserUtil.addFeatureSeed(parser);
+		ParserUtil.addFeatureWorkers(parser);
+		ParserUtil.addBatchSize(parser);
+		ParserUtil.addBatchBytes(parser);
+		ParserUtil.addProgress(parser);
 
 		parseParameters(parser, args);
 
-		printParameters(new String[] {KEY_TARGET_DEVICE, KEY_DEPTH, KEY_MAX_CHILDS, KEY_MAX_FEATURES});
-		
-		deviceIdentifier = resource.getString(KEY_TARGET_DEVICE);
-		treeDepth = resource.getInt(KEY_DEPTH);
-		maxChildsPerCategory = resource.getInt(KEY_MAX_CHILDS);
-		maxFeaturePerCategory = resource.getInt(KEY_MAX_FEATURES);
+		printParameters(new String[] {KEY_TARGET_DEVICE, KEY_DEPTH, KEY_MAX_CHILDS, KEY_MAX_FEATURES, KEY_SEED, KEY_WORKERS, KEY_BATCH_SIZE, KEY_BATCH_BYTES, KEY_PROGRESS});
 		
+		String deviceIdentifier = resource.getString(KEY_TARGET_DEVICE);
+		int treeDepth = resource.getInt(KEY_DEPTH);
+		int maxChildsPerCategory = resource.getInt(KEY_MAX_CHILDS);
+		int maxFeaturePerCategory = resource.getInt(KEY_MAX_FEATURES);
+		long seed = resource.getLong(KEY_SEED);
+		int workers = Math.max(1, resource.getInt(KEY_WORKERS));
+		int batchSize = resource.getInt(KEY_BATCH_SIZE);
+		long batchBytes = resource.getLong(KEY_BATCH_BYTES);
+		int progress = resource.getInt(KEY_PROGRESS);
+		if (maxChildsPerCategory < 1 || maxFeaturePerCategory < 1 || batchSize < 1) {
+			parser.handleError(new ArgumentParserException(
+					"max-childs, max-features and --batch-size must be at least 1", parser));
+			exit(1);
+		}
+
+		SessionPool pool = SessionPool.getDefault();
+		PooledSession session = null;
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
 		try {
-			SSRC ssrc = createSSRC();
-	
-			DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-			documentBuilder = documentBuilderFactory.newDocumentBuilder();
-	
-			PublishUpdate update = Requests.createPublishUpdate();
-	
-			String nodeName = "rootCategory";
-			Device dev = Identifiers.createDev(deviceIdentifier);
-			Identity root = createCategory(nodeName, deviceIdentifier);
-	
-			Document deviceCategory = createCategoryLink("device-category");
-	
-			update.setIdentifier1(dev);
-			update.setIdentifier2(root);
-			update.addMetadata(deviceCategory);
-			update.setLifeTime(MetadataLifetime.forever);
-	
-			publishUpdates.add(update);
-	
-			fork(root, 0, new String[] {nodeName});
-			
-			ssrc.newSession();
-	
-			PublishRequest req = Requests.createPublishReq();
-	
-			for (PublishUpdate u : publishUpdates) {
-				req.addPublishElement(u);
+			FeatureGenerator generator = new FeatureGenerator(deviceIdentifier, treeDepth,
+					maxChildsPerCategory, maxFeaturePerCategory, seed);
+
+			session = pool.acquire(getConnectionConfig());
+			ChunkedPublisher publisher = new ChunkedPublisher(session, batchSize);
+			publisher.setMaxBytes(batchBytes);
+			publisher.setPipelined(true);
+			if (progress > 0) {
+				publisher.setProgress(System.err, progress * 1000L);
+			}
+
+			generator.start(executor, 4 * workers);
+			List<PublishUpdate> chunk;
+			while ((chunk = generator.next()) != null) {
+				publisher.addAll(chunk);
 			}
-	
-			ssrc.publish(req);
-			ssrc.endSession();
-	
-			printStats();
+			publisher.close();
+			pool.release(session);
+
+			publisher.report(System.out);
+			printStats(generator.getFeatureValues());
 		} catch (Exception e) {
+			if (session != null) {
+				pool.invalidate(session);
+			}
 			e.printStackTrace();
-			System.exit(-1);
+			exit(-1);
+		} finally {
+			executor.shutdownNow();
 		}
 	}
 }
@@ -0,0 +1,375 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (feature), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import de.hshannover.f4.trust.ifmapcli.common.MetadataTemplate;
+import de.hshannover.f4.trust.ifmapj.identifier.Device;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifiers;
+import de.hshannover.f4.trust.ifmapj.identifier.Identity;
+import de.hshannover.f4.trust.ifmapj.identifier.IdentityType;
+import de.hshannover.f4.trust.ifmapj.messages.MetadataLifetime;
+import de.hshannover.f4.trust.ifmapj.messages.PublishUpdate;
+import de.hshannover.f4.trust.ifmapj.messages.Requests;
+
+/**
+ * Generates a random feature tree below a device, see {@link Feature}.<br/>
+ * <br/>
+ * The tree only depends on the seed: every category gets its own random<br/>
+ * generator, seeded from the seed of its parent and its position, which<br/>
+ * decides the number of its children and features and the feature values.<br/>
+ * So the subtrees can be built in any order and on any thread.<br/>
+ * <br/>
+ * The subtrees of the upper levels are built as separate tasks of an<br/>
+ * executor, the lower levels inline. The tasks hand their updates over in<br/>
+ * chunks through a bounded queue, which is drained by {@link #next()}, so<br/>
+ * the tree is never held in memory as a whole. The order of the chunks<br/>
+ * depends on the scheduling, the published graph does not.
+ *
+ */
+class FeatureGenerator {
+
+	private static final String OTHER_TYPE_DEFINITION = Feature.OTHER_TYPE_DEFINITION;
+	private static final String NAMESPACE = Feature.NAMESPACE;
+	private static final String NAMESPACE_PREFIX = Feature.NAMESPACE_PREFIX;
+
+	// subtrees with at least this many levels are built as their own task
+	private static final int TASK_DEPTH = 3;
+
+	private static final int CHUNK_SIZE = 500;
+
+	private static final List<PublishUpdate> END = new ArrayList<PublishUpdate>(0);
+
+	private final String mDeviceIdentifier;
+	private final int mTreeDepth;
+	private final int mMaxChilds;
+	private final int mMaxFeatures;
+	private final long mSeed;
+
+	private final MetadataTemplate mDeviceCategory;
+	private final MetadataTemplate mSubcategoryOf;
+	private final MetadataTemplate mFeature;
+
+	private ExecutorService mExecutor;
+	private BlockingQueue<List<PublishUpdate>> mChunks;
+	private final AtomicInteger mPendingTasks = new AtomicInteger();
+	private volatile Throwable mFailure;
+	private boolean mDone;
+
+	// the feature values of all finished tasks
+	private final List<double[]> mFeatureValues = new ArrayList<double[]>();
+	private int mFeatureCount;
+
+	FeatureGenerator(String deviceIdentifier, int treeDepth, int maxChilds, int maxFeatures,
+			long seed) throws ParserConfigurationException {
+		mDeviceIdentifier = deviceIdentifier;
+		mTreeDepth = treeDepth;
+		mMaxChilds = maxChilds;
+		mMaxFeatures = maxFeatures;
+		mSeed = seed;
+
+		DocumentBuilder documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		mDeviceCategory = new MetadataTemplate(createCategoryLink(documentBuilder, "device-category"));
+		mSubcategoryOf = new MetadataTemplate(createCategoryLink(documentBuilder, "subcategory-of"));
+		mFeature = new MetadataTemplate(createFeature(documentBuilder), "id", "value");
+	}
+
+	/**
+	 * Start building the tree on the given executor.
+	 *
+	 * @param queueSize - the number of chunks the tasks may build ahead
+	 */
+	void start(ExecutorService executor, int queueSize) {
+		mExecutor = executor;
+		mChunks = new ArrayBlockingQueue<List<PublishUpdate>>(queueSize);
+
+		String nodeName = "rootCategory";
+		Device dev = Identifiers.createDev(mDeviceIdentifier);
+		Identity root = createCategory(nodeName);
+
+		PublishUpdate update = Requests.createPublishUpdate();
+		update.setIdentifier1(dev);
+		update.setIdentifier2(root);
+		update.addMetadata(mDeviceCategory.create());
+		update.setLifeTime(MetadataLifetime.forever);
+
+		submit(new Subtree(root, nodeName, 0, mSeed, update));
+	}
+
+	/**
+	 * @return the next chunk of updates, or null when the tree is complete
+	 */
+	List<PublishUpdate> next() throws Exception {
+		if (mDone) {
+			return null;
+		}
+		List<PublishUpdate> chunk = mChunks.take();
+		if (mFailure != null) {
+			mDone = true;
+			if (mFailure instanceof Exception) {
+				throw (Exception) mFailure;
+			}
+			throw new RuntimeException(mFailure);
+		}
+		if (chunk == END) {
+			mDone = true;
+			return null;
+		}
+		return chunk;
+	}
+
+	/**
+	 * @return the values of all features, sorted; only complete after
+	 *         {@link #next()} returned null
+	 */
+	synchronized double[] getFeatureValues() {
+		double[] values = new double[mFeatureCount];
+		int offset = 0;
+		for (double[] part : mFeatureValues) {
+			System.arraycopy(part, 0, values, offset, part.length);
+			offset += part.length;
+		}
+		Arrays.sort(values);
+		return values;
+	}
+
+	private void submit(Subtree task) {
+		mPendingTasks.incrementAndGet();
+		mExecutor.execute(task);
+	}
+
+	private synchronized void addFeatureValues(double[] values, int count) {
+		mFeatureValues.add(Arrays.copyOf(values, count));
+		mFeatureCount += count;
+	}
+
+	/**
+	 * Derive the seed of a child from the seed of its parent and its
+	 * position (the finalizer of SplitMix64).
+	 */
+	private static long childSeed(long parentSeed, int index) {
+		long z = parentSeed + (index + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	private Identity createCategory(String name) {
+		return Identifiers.createIdentity(
+				IdentityType.other,
+				name,
+				mDeviceIdentifier,
+				OTHER_TYPE_DEFINITION);
+	}
+
+	private static Document createCategoryLink(DocumentBuilder documentBuilder, String name) {
+		Document doc = documentBuilder.newDocument();
+		Element e = doc.createElementNS(NAMESPACE, NAMESPACE_PREFIX + ":" + name);
+		e.setAttributeNS(null, "ifmap-cardinality", "singleValue");
+
+		doc.appendChild(e);
+		return doc;
+	}
+
+	private static Document createFeature(DocumentBuilder documentBuilder) {
+		Document doc = documentBuilder.newDocument();
+		Element feature = doc.createElementNS(NAMESPACE, NAMESPACE_PREFIX + ":feature");
+
+		feature.setAttributeNS(null, "ifmap-cardinality", "multiValue");
+		feature.setAttribute("ctxp-timestamp", "2012-01-01T22:22:22");
+		feature.setAttribute("ctxp-position", "TODO");
+		feature.setAttribute("ctxp-other-devices", "TODO");
+
+		Element idElement = doc.createElement("id");
+		feature.appendChild(idElement);
+
+		Element typeElement = doc.createElement("type");
+		typeElement.setTextContent("quantitive");
+		feature.appendChild(typeElement);
+
+		Element valueElement = doc.createElement("value");
+		feature.appendChild(valueElement);
+
+		doc.appendChild(feature);
+		return doc;
+	}
+
+	/**
+	 * Builds the categories below one node; deep enough subtrees are handed
+	 * to the executor.
+	 */
+	private class Subtree implements Runnable {
+
+		private final Identity mNode;
+		private final String mFullName;
+		private final int mDepth;
+		private final long mNodeSeed;
+
+		// the link to the parent, published by this task
+		private final PublishUpdate mLink;
+
+		private List<PublishUpdate> mChunk = new ArrayList<PublishUpdate>(CHUNK_SIZE);
+		private double[] mValues = new double[64];
+		private int mValueCount;
+
+		Subtree(Identity node, String fullName, int depth, long seed, PublishUpdate link) {
+			mNode = node;
+			mFullName = fullName;
+			mDepth = depth;
+			mNodeSeed = seed;
+			mLink = link;
+		}
+
+		@Override
+		public void run() {
+			try {
+				if (mFailure == null) {
+					emit(mLink);
+					if (mDepth > 0) {
+						appendFeatures(mNode, mNodeSeed);
+					}
+					fork(mNode, mFullName, mDepth, mNodeSeed);
+					if (!mChunk.isEmpty()) {
+						mChunks.put(mChunk);
+					}
+					addFeatureValues(mValues, mValueCount);
+				}
+			} catch (Throwable t) {
+				if (mFailure == null) {
+					mFailure = t;
+				}
+			} finally {
+				if (mPendingTasks.decrementAndGet() == 0) {
+					try {
+						mChunks.put(END);
+					} catch (InterruptedException e) {
+						// the consumer is gone
+					}
+				} else if (mFailure != null) {
+					// wake up the consumer, it checks mFailure first
+					mChunks.offer(END);
+				}
+			}
+		}
+
+		/**
+		 * Creates the child nodes and features of the given node.
+		 */
+		private void fork(Identity parent, String fullName, int currentDepth, long seed)
+				throws InterruptedException {
+			if (currentDepth >= mTreeDepth) {
+				return;
+			}
+			Random random = new Random(seed);
+			int childCount = random.nextInt(mMaxChilds) + 1;
+
+			for (int i = 0; i < childCount; i++) {
+				String name = "category" + ((i % 4 == 0) ? ("X:" + (i / 4)) : i + "");
+				String fullNodeName = fullName + "." + name;
+				Identity node = createCategory(fullNodeName);
+				long nodeSeed = childSeed(seed, i);
+
+				PublishUpdate update = Requests.createPublishUpdate();
+				update.setIdentifier1(parent);
+				update.setIdentifier2(node);
+				update.addMetadata(mSubcategoryOf.create());
+				update.setLifeTime(MetadataLifetime.forever);
+
+				if (mTreeDepth - (currentDepth + 1) >= TASK_DEPTH) {
+					submit(new Subtree(node, fullNodeName, currentDepth + 1, nodeSeed, update));
+				} else {
+					emit(update);
+					appendFeatures(node, nodeSeed);
+					fork(node, fullNodeName, currentDepth + 1, nodeSeed);
+				}
+			}
+		}
+
+		/**
+		 * Appends random feature metadata to the given {@link Identity}.
+		 */
+		private void appendFeatures(Identity node, long seed) throws InterruptedException {
+			// a separate generator, so the features do not change the tree
+			Random random = new Random(~seed);
+			int featureCount = random.nextInt(mMaxFeatures) + 1;
+
+			for (int i = 0; i < featureCount; i++) {
+				String id = random.nextDouble() + "";
+				double v = random.nextDouble() * 10;
+				addValue(v);
+
+				PublishUpdate update = Requests.createPublishUpdate();
+				update.setIdentifier1(node);
+				update.addMetadata(mFeature.create(id, v + ""));
+				update.setLifeTime(MetadataLifetime.forever);
+				emit(update);
+			}
+		}
+
+		private void addValue(double v) {
+			if (mValueCount == mValues.length) {
+				mValues = Arrays.copyOf(mValues, mValues.length * 2);
+			}
+			mValues[mValueCount++] = v;
+		}
+
+		private void emit(PublishUpdate update) throws InterruptedException {
+			mChunk.add(update);
+			if (mChunk.size() == CHUNK_SIZE) {
+				mChunks.put(mChunk);
+				mChunk = new ArrayList<PublishUpdate>(CHUNK_SIZE);
+			}
+		}
+	}
+}
@@ -38,30 +38,32 @@
  */
 package de.hshannover.f4.trust.ifmapcli;
 
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Vector;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 
 import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
+import de.hshannover.f4.trust.ifmapcli.common.ChunkedPublisher;
 import de.hshannover.f4.trust.ifmapcli.common.Common;
 import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
-import de.hshannover.f4.trust.ifmapj.channel.SSRC;
+import de.hshannover.f4.trust.ifmapcli.common.PooledSession;
+import de.hshannover.f4.trust.ifmapcli.common.SessionPool;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapErrorResult;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapException;
 import de.hshannover.f4.trust.ifmapj.identifier.Device;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifiers;
 import de.hshannover.f4.trust.ifmapj.identifier.Identity;
 import de.hshannover.f4.trust.ifmapj.identifier.IdentityType;
 import de.hshannover.f4.trust.ifmapj.messages.MetadataLifetime;
-import de.hshannover.f4.trust.ifmapj.messages.PublishRequest;
 import de.hshannover.f4.trust.ifmapj.messages.PublishUpdate;
 import de.hshannover.f4.trust.ifmapj.messages.Requests;
 
@@ -70,6 +72,9 @@ import de.hshannover.f4.trust.ifmapj.messages.Requests;
  * feature metadata for a smartphone as specified in ESUKOM WP4 for MalApp
  * Detection.
  *
+ * The updates are published while the tree is traversed, in requests of up
+ * to <code>--batch-size</code> elements and <code>--batch-bytes</code> bytes,
+ * see {@link ChunkedPublisher}.
  *
  * @author Ingo Bente
  *
@@ -85,19 +90,20 @@ public class Feature2 extends AbstractClient {
 
 	private static String deviceIdentifier;
 
-	private static List<PublishUpdate> publishUpdates = new ArrayList<PublishUpdate>();
+	private static ChunkedPublisher publisher;
 
 	private static DocumentBuilder documentBuilder;
 
 	/**
 	 * Creates the child nodes for the given parent {@link Identity}. The
 	 * resulting {@link PublishUpdate}s for each child are added to
-	 * <code>mPublishUpdates</code>.
+	 * <code>publisher</code>.
 	 *
 	 * @param parent
 	 * @param currentDepth
 	 */
-	private static void fork(Identity parent, Vector<DummyFeature> features, Vector<DummyCategory> subCategories) {
+	private static void fork(Identity parent, Vector<DummyFeature> features, Vector<DummyCategory> subCategories)
+			throws IfmapErrorResult, IfmapException {
 
 		HashMap<String, Integer> instanceCounter = new HashMap<String, Integer>();
 
@@ -111,7 +117,7 @@ public class Feature2 extends AbstractClient {
 			update.addMetadata(meta);
 			update.setLifeTime(MetadataLifetime.forever);
 
-			publishUpdates.add(update);
+			publisher.add(update);
 		}
 
 		// add sub categories
@@ -143,7 +149,7 @@ public class Feature2 extends AbstractClient {
 			update.addMetadata(subCategoryOf);
 			update.setLifeTime(MetadataLifetime.forever);
 
-			publishUpdates.add(update);
+			publisher.add(update);
 
 			fork(node, subCategories.get(i).features, subCategories.get(i).subCategories);
 		}
@@ -197,13 +203,25 @@ public class Feature2 extends AbstractClient {
 
 		ArgumentParser parser = createDefaultParser();
 		ParserUtil.addFeatureTargetDevice(parser);
+		ParserUtil.addBatchSize(parser);
+		ParserUtil.addBatchBytes(parser);
+		ParserUtil.addProgress(parser);
 
 		parseParameters(parser, args);
 
-		printParameters(new String[] {KEY_TARGET_DEVICE});
+		printParameters(new String[] {KEY_TARGET_DEVICE, KEY_BATCH_SIZE, KEY_BATCH_BYTES, KEY_PROGRESS});
 		
 		deviceIdentifier = resource.getString(KEY_TARGET_DEVICE);
+		int batchSize = resource.getInt(KEY_BATCH_SIZE);
+		int progress = resource.getInt(KEY_PROGRESS);
+		if (batchSize < 1) {
+			parser.handleError(new ArgumentParserException(
+					"--batch-size must be at least 1", parser));
+			exit(1);
+		}
 		
+		SessionPool pool = SessionPool.getDefault();
+		PooledSession session = null;
 		try {
 			DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
 			documentBuilder = documentBuilderFactory.newDocumentBuilder();
@@ -213,6 +231,14 @@ public class Feature2 extends AbstractClient {
 
 			DummyCategory root = prepareCategoriesAndFeatures();
 
+			session = pool.acquire(getConnectionConfig());
+			publisher = new ChunkedPublisher(session, batchSize);
+			publisher.setMaxBytes(resource.getLong(KEY_BATCH_BYTES));
+			publisher.setPipelined(true);
+			if (progress > 0) {
+				publisher.setProgress(System.err, progress * 1000L);
+			}
+
 			// from device to category
 			String nodeName = root.localId;
 			Device dev = Identifiers.createDev(deviceIdentifier);
@@ -222,26 +248,22 @@ public class Feature2 extends AbstractClient {
 			update.setIdentifier2(rootCategory);
 			update.addMetadata(deviceCategory);
 			update.setLifeTime(MetadataLifetime.forever);
-			publishUpdates.add(update);
+			publisher.add(update);
 
 			fork(rootCategory, root.features, root.subCategories);
 
 //			fork(smartphoneCategory, new String[] {nodeName}, );
 			
-			SSRC ssrc = createSSRC();
-			ssrc.newSession();
-
-			PublishRequest req = Requests.createPublishReq();
+			publisher.close();
+			pool.release(session);
 
-			for (PublishUpdate u : publishUpdates) {
-				req.addPublishElement(u);
-			}
-
-			ssrc.publish(req);
-			ssrc.endSession();
+			publisher.report(System.out);
 		} catch (Exception e) {
+			if (session != null) {
+				pool.invalidate(session);
+			}
 			e.printStackTrace();
-			System.exit(-1);
+			exit(-1);
 		}
 
 		
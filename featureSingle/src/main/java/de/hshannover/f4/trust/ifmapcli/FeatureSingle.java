@@ -286,7 +286,7 @@ public class FeatureSingle extends AbstractClient {
 			ssrc.endSession();
 		} catch (Exception e) {
 			e.printStackTrace();
-			System.exit(-1);
+			exit(-1);
 		}
 	}
 
@@ -44,6 +44,7 @@ import org.w3c.dom.Document;
 
 import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
 import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
+import de.hshannover.f4.trust.ifmapcli.common.PublishRequestFactory;
 import de.hshannover.f4.trust.ifmapj.binding.IfmapStrings;
 import de.hshannover.f4.trust.ifmapj.extendedIdentifiers.IcsIdentifiers;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
@@ -73,8 +74,15 @@ public class GroupXref extends AbstractClient {
 		ParserUtil.addIcsOverlayManagerGroup(parser);
 		ParserUtil.addIcsLdapUri(parser);
 
-		parseParameters(parser, args);
+		publishIfmapData(parser, args, new PublishRequestFactory() {
+			@Override
+			public PublishRequest createPublishRequest() {
+				return createRequest();
+			}
+		});
+	}
 
+	private static PublishRequest createRequest() {
 		printParameters(KEY_OPERATION, new String[] {KEY_ICS_OVERLAY_MANAGER_GROUP, KEY_ICS_LDAP_URI});
 
 		String ovManGr = resource.getString(KEY_ICS_OVERLAY_MANAGER_GROUP);
@@ -101,9 +109,7 @@ public class GroupXref extends AbstractClient {
 			request = Requests.createPublishReq(publishDelete);
 		}
 
-		// publish
-		publishIfmapData(request);
-
+		return request;
 	}
 
 }
@@ -0,0 +1,373 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (ifmapcli-daemon), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
+import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
+import de.hshannover.f4.trust.ifmapcli.common.PooledSession;
+import de.hshannover.f4.trust.ifmapcli.common.SearchResultCache;
+import de.hshannover.f4.trust.ifmapcli.common.SessionPool;
+
+/**
+ * A long-running process that executes ifmapcli tools on behalf of the<br/>
+ * <code>ifmapcli-client</code> script or the {@link DaemonClient}. Each<br/>
+ * request carries the same argument vector the tool's main() method takes<br/>
+ * and the working directory of the client, relative file names are<br/>
+ * resolved against it (see {@link DaemonProtocol}).<br/>
+ * <br/>
+ * Because the tools publish through the {@link SessionPool}, all<br/>
+ * invocations share the already authenticated MAP session(s) of this JVM instead of paying for JVM startup, argument<br/>
+ * parser setup, truststore loading and newSession() every time. Likewise,<br/>
+ * search --cache-ttl answers repeated searches from the one<br/>
+ * {@link SearchResultCache} of this JVM.<br/>
+ * <br/>
+ * The daemon only listens on the loopback interface and only serves<br/>
+ * requests that carry the random token it writes to its token file<br/>
+ * (<code>--token-file</code>, by default ~/.ifmapcli-daemon.token) at<br/>
+ * startup. The file is readable by the owner only; the daemon refuses to<br/>
+ * start if it cannot restrict the permissions. Tools keep their<br/>
+ * state in static fields, so invocations are executed one after another.<br/>
+ * Tools are run via {@link AbstractClient#runInProcess}, so their exit()<br/>
+ * calls end the invocation and are reported to the client as exit status.<br/>
+ * Connection defaults (IFMAP_URL, ...) are taken from the environment<br/>
+ * of the daemon, not from the one of the client. A client that does not<br/>
+ * send its request within {@link #REQUEST_TIMEOUT} milliseconds<br/>
+ * is disconnected, so it cannot block the clients queued behind it.<br/>
+ * <br/>
+ * The stdin of the client is not forwarded. Invocations that read from<br/>
+ * stdin ('-' as file name, e.g. <code>--batch -</code>) are rejected, and<br/>
+ * a tool that reads System.in anyway gets an IOException.
+ *
+ */
+public class Daemon extends AbstractClient {
+
+	/**
+	 * Milliseconds a client may take to send its request.
+	 */
+	static final int REQUEST_TIMEOUT = 10000;
+
+	/**
+	 * Number of random bytes of the access token.
+	 */
+	private static final int TOKEN_LENGTH = 32;
+
+	private static final byte[] INVALID_TOKEN =
+			"ifmapcli daemon: missing or invalid token, see the token file of the daemon\n".getBytes();
+
+	private static final Map<String, String> TOOLS;
+
+	static {
+		Map<String, String> tools = new TreeMap<String, String>();
+		tools.put("ar-dev", "ArDev");
+		tools.put("ar-ip", "ArIp");
+		tools.put("ar-mac", "ArMac");
+		tools.put("auth-as", "AuthAs");
+		tools.put("auth-by", "AuthBy");
+		tools.put("backhl-pol", "BackhlPol");
+		tools.put("bhi-addr", "BhiAddr");
+		tools.put("bhi-cert", "BhiCert");
+		tools.put("bhi-id", "BhiId");
+		tools.put("cap", "Cap");
+		tools.put("dev-attr", "DevAttr");
+		tools.put("dev-char", "DevChar");
+		tools.put("dev-char-ics", "DevCharIcs");
+		tools.put("dev-ip", "DevIp");
+		tools.put("disc-by", "DiscBy");
+		tools.put("dn-hit", "DnHit");
+		tools.put("enf-report", "EnfReport");
+		tools.put("event", "Event");
+		tools.put("ex-ident", "ExIdent");
+		tools.put("ex-meta", "ExMeta");
+		tools.put("group-xref", "GroupXref");
+		tools.put("ifmap-client-has-task", "IfmapClientHasTask");
+		tools.put("ip-mac", "IpMac");
+		tools.put("layer2-info", "Layer2Info");
+		tools.put("location", "Location");
+		tools.put("manager-of", "ManagerOf");
+		tools.put("member-of", "MemberOf");
+		tools.put("obs-by", "ObsBy");
+		tools.put("overlay-pol", "OverlayPol");
+		tools.put("pdp", "Pdp");
+		tools.put("prot-by", "ProtBy");
+		tools.put("purge", "Purge");
+		tools.put("req-inv", "ReqInv");
+		tools.put("role", "Role");
+		tools.put("search", "Search");
+		tools.put("unexp-behavior", "UnexpBehavior");
+		tools.put("wlan-info", "WlanInfo");
+		TOOLS = Collections.unmodifiableMap(tools);
+	}
+
+	/**
+	 * Replaces System.in while a tool runs, the client's stdin is not
+	 * forwarded.
+	 */
+	private static class NoInputStream extends InputStream {
+
+		@Override
+		public int read() throws IOException {
+			throw new IOException("stdin is not available to tools run by the ifmapcli daemon");
+		}
+	}
+
+	/**
+	 * Sends everything that is written to it as output lines of the given
+	 * keyword.
+	 */
+	private static class LineOutputStream extends OutputStream {
+
+		private final OutputStream mOut;
+		private final String mKeyword;
+
+		LineOutputStream(OutputStream out, String keyword) {
+			mOut = out;
+			mKeyword = keyword;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				int n = Math.min(len, DaemonProtocol.MAX_OUTPUT);
+				DaemonProtocol.writeOutput(mOut, mKeyword, b, off, n);
+				off += n;
+				len -= n;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			mOut.flush();
+		}
+	}
+
+	public static void main(String[] args) {
+		command = "ifmapcli-daemon";
+
+		ArgumentParser parser = createDefaultParser();
+		ParserUtil.addDaemonPort(parser);
+		ParserUtil.addDaemonMaxIdle(parser);
+		ParserUtil.addDaemonTokenFile(parser);
+
+		parseParameters(parser, args);
+
+		printParameters(new String[] {KEY_DAEMON_PORT, KEY_DAEMON_MAX_IDLE, KEY_DAEMON_TOKEN_FILE});
+
+		int port = resource.getInt(KEY_DAEMON_PORT);
+		long maxIdle = resource.getInt(KEY_DAEMON_MAX_IDLE) * 60L * 1000L;
+		boolean verbose = resource.getBoolean(ParserUtil.VERBOSE);
+
+		SessionPool pool = SessionPool.initDefault(SessionPool.DEFAULT_KEEP_ALIVE_INTERVAL, maxIdle);
+
+		try {
+			// open the session for the default connection right away
+			PooledSession session = pool.acquire(getConnectionConfig());
+			pool.release(session);
+
+			File tokenFile = new File(resource.getString(KEY_DAEMON_TOKEN_FILE));
+			byte[] token = createToken(tokenFile);
+
+			ServerSocket server = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+			System.out.println("ifmapcli daemon listening on 127.0.0.1:" + port);
+
+			PrintStream stdout = System.out;
+			PrintStream stderr = System.err;
+			System.setIn(new NoInputStream());
+
+			while (true) {
+				Socket socket = server.accept();
+				try {
+					serve(socket, token, verbose ? stdout : null);
+				} catch (IOException e) {
+					stderr.println("client connection failed: " + e.getMessage());
+				} finally {
+					System.setOut(stdout);
+					System.setErr(stderr);
+					socket.close();
+				}
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * Write a new random token to the given file, which is made readable by
+	 * its owner only before. Clients have to send the token with every
+	 * request, so that other local users cannot run tools with the MAP
+	 * credentials of the daemon.
+	 *
+	 * @return the token
+	 * @throws IOException if the file cannot be written or its permissions
+	 *             cannot be restricted
+	 */
+	private static byte[] createToken(File tokenFile) throws IOException {
+		byte[] random = new byte[TOKEN_LENGTH];
+		new SecureRandom().nextBytes(random);
+		StringBuilder token = new StringBuilder();
+		for (byte b : random) {
+			token.append(Character.forDigit((b >> 4) & 0xf, 16));
+			token.append(Character.forDigit(b & 0xf, 16));
+		}
+
+		if (tokenFile.exists() && !tokenFile.delete()) {
+			throw new IOException("cannot replace the token file " + tokenFile);
+		}
+		if (!tokenFile.createNewFile()
+				|| !tokenFile.setReadable(false, false) || !tokenFile.setReadable(true, true)
+				|| !tokenFile.setWritable(false, false) || !tokenFile.setWritable(true, true)
+				|| !tokenFile.setExecutable(false, false)) {
+			throw new IOException("cannot create the token file " + tokenFile
+					+ " with permissions for its owner only");
+		}
+		tokenFile.deleteOnExit();
+
+		Writer writer = new OutputStreamWriter(new FileOutputStream(tokenFile), "US-ASCII");
+		try {
+			writer.write(token.toString());
+			writer.write('\n');
+		} finally {
+			writer.close();
+		}
+		return token.toString().getBytes("US-ASCII");
+	}
+
+	private static boolean isValidToken(byte[] token, String requestToken) throws IOException {
+		// compares in constant time
+		return requestToken != null
+				&& MessageDigest.isEqual(token, requestToken.getBytes("US-ASCII"));
+	}
+
+	private static void serve(Socket socket, byte[] token, PrintStream log) throws IOException {
+		socket.setTcpNoDelay(true);
+		socket.setSoTimeout(REQUEST_TIMEOUT);
+		InputStream in = new BufferedInputStream(socket.getInputStream());
+		OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+		// a stalled client ends in a SocketTimeoutException and is closed
+		DaemonProtocol.Request request = DaemonProtocol.readRequest(in);
+		socket.setSoTimeout(0);
+		if (!isValidToken(token, request.getToken())) {
+			if (log != null) {
+				log.println("rejected a request without valid token");
+			}
+			DaemonProtocol.writeOutput(out, DaemonProtocol.STDERR, INVALID_TOKEN, 0, INVALID_TOKEN.length);
+			DaemonProtocol.writeExit(out, 1);
+			return;
+		}
+		List<String> arguments = request.getArguments();
+		String tool = arguments.get(0);
+		String[] toolArgs = arguments.subList(1, arguments.size()).toArray(new String[arguments.size() - 1]);
+
+		if (log != null) {
+			log.println("running " + tool + " with " + toolArgs.length + " argument(s)");
+		}
+
+		PrintStream toolOut = new PrintStream(new LineOutputStream(out, DaemonProtocol.STDOUT), true);
+		PrintStream toolErr = new PrintStream(new LineOutputStream(out, DaemonProtocol.STDERR), true);
+
+		String className = TOOLS.get(tool);
+		if (className == null) {
+			toolErr.println("unknown tool '" + tool + "', available: " + TOOLS.keySet());
+			DaemonProtocol.writeExit(out, 1);
+			return;
+		}
+		File workingDirectory = null;
+		if (request.getWorkingDirectory() != null) {
+			workingDirectory = new File(request.getWorkingDirectory());
+			if (!workingDirectory.isAbsolute()) {
+				toolErr.println(tool + ": the working directory '" + workingDirectory
+						+ "' of the client is not absolute");
+				DaemonProtocol.writeExit(out, 1);
+				return;
+			}
+		}
+		for (String arg : toolArgs) {
+			if (arg.equals("-") || arg.endsWith("=-")) {
+				toolErr.println(tool + ": reading stdin ('-') is not supported by the ifmapcli daemon,"
+						+ " pass a file instead or run the tool directly");
+				DaemonProtocol.writeExit(out, 1);
+				return;
+			}
+		}
+
+		System.setOut(toolOut);
+		System.setErr(toolErr);
+		int status = run(className, toolArgs, workingDirectory);
+		toolOut.flush();
+		toolErr.flush();
+		DaemonProtocol.writeExit(out, status);
+	}
+
+	private static int run(String className, String[] args, File workingDirectory) {
+		try {
+			Class<?> clazz = Class.forName("de.hshannover.f4.trust.ifmapcli." + className);
+			return runInProcess(clazz.getMethod("main", String[].class), args, workingDirectory);
+		} catch (Exception e) {
+			e.printStackTrace();
+			return -1;
+		}
+	}
+}
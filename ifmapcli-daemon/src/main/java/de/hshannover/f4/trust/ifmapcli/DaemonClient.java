@@ -0,0 +1,130 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (ifmapcli-daemon), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Java client for the {@link Daemon}. It forwards its command line and<br/>
+ * working directory to the daemon, prints the output of the tool and exits<br/>
+ * with the tool's exit status. Example:<br/>
+ * <br/>
+ * <code>java -cp ifmapcli-daemon.jar de.hshannover.f4.trust.ifmapcli.DaemonClient
+ * ar-ip update ar1 192.168.0.1</code><br/>
+ * <br/>
+ * As a JVM of its own, it still pays for JVM startup; the<br/>
+ * <code>ifmapcli-client</code> script does not. The client only needs the<br/>
+ * classes of this module, not argparse4j, ifmapj or a truststore. The<br/>
+ * daemon port is taken from the environment variable<br/>
+ * IFMAPCLI_DAEMON_PORT, the token file from IFMAPCLI_DAEMON_TOKEN_FILE.
+ *
+ */
+public class DaemonClient {
+
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			System.err.println("usage: DaemonClient <tool> [tool arguments ...]");
+			System.exit(1);
+		}
+
+		int port = DaemonProtocol.DEFAULT_PORT;
+		String envPort = System.getenv(DaemonProtocol.ENV_PORT);
+		if (envPort != null) {
+			port = Integer.parseInt(envPort);
+		}
+
+		File tokenFile = DaemonProtocol.getTokenFile();
+		String token;
+		try {
+			token = DaemonProtocol.readToken(tokenFile);
+		} catch (IOException e) {
+			System.err.println("cannot read the ifmapcli daemon token from " + tokenFile + ": "
+					+ e.getMessage());
+			System.exit(1);
+			return;
+		}
+
+		int status;
+		try {
+			status = forward(port, token, args);
+		} catch (IOException e) {
+			System.err.println("ifmapcli daemon not reachable on port " + port + ": " + e.getMessage());
+			status = 1;
+		}
+		System.exit(status);
+	}
+
+	private static int forward(int port, String token, String[] args) throws IOException {
+		Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), port);
+		try {
+			socket.setTcpNoDelay(true);
+			OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+
+			DaemonProtocol.writeRequest(out, token, new File("").getAbsolutePath(), args);
+
+			while (true) {
+				DaemonProtocol.Line line = DaemonProtocol.readLine(in);
+				if (line == null) {
+					System.err.println("ifmapcli daemon closed the connection");
+					return 1;
+				}
+				String keyword = line.getKeyword();
+				if (keyword.equals(DaemonProtocol.EXIT)) {
+					System.out.flush();
+					System.err.flush();
+					return Integer.parseInt(line.getValueString());
+				} else if (keyword.equals(DaemonProtocol.STDOUT) && line.getValue() != null) {
+					System.out.write(line.getValue());
+				} else if (keyword.equals(DaemonProtocol.STDERR) && line.getValue() != null) {
+					System.err.write(line.getValue());
+				}
+			}
+		} finally {
+			socket.close();
+		}
+	}
+}
@@ -0,0 +1,324 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (ifmapcli-daemon), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wire format between the clients and the {@link Daemon}. It is line based<br/>
+ * UTF-8 text, so that a shell script can act as client, see<br/>
+ * <code>ifmapcli-client</code>.<br/>
+ * <br/>
+ * Every line consists of a keyword, optionally followed by a space and a<br/>
+ * value. In values, backslash, newline and carriage return are escaped as<br/>
+ * <code>\\</code>, <code>\n</code> and <code>\r</code>, which is what the<br/>
+ * <code>%b</code> format of printf decodes.<br/>
+ * <br/>
+ * Request: <code>token &lt;token&gt;</code>, <code>cwd &lt;directory&gt;</code>,<br/>
+ * one <code>arg &lt;argument&gt;</code> line per argument and <code>run</code>.<br/>
+ * The token is the content of the token file the daemon creates at<br/>
+ * startup, see {@link #getTokenFile()}. The first<br/>
+ * argument is the name of the tool (e.g. <code>ar-ip</code>), the rest is<br/>
+ * passed to its main() method. Relative file names are resolved against<br/>
+ * the directory.<br/>
+ * <br/>
+ * Response: <code>out &lt;output&gt;</code> and <code>err
+ * &lt;output&gt;</code> lines with the stdout and stderr output of the tool<br/>
+ * (no line separator is added when they are printed) and a final<br/>
+ * <code>exit &lt;status&gt;</code> line.
+ *
+ */
+final class DaemonProtocol {
+
+	static final String TOKEN = "token";
+	static final String CWD = "cwd";
+	static final String ARG = "arg";
+	static final String RUN = "run";
+
+	static final String STDOUT = "out";
+	static final String STDERR = "err";
+	static final String EXIT = "exit";
+
+	static final String ENV_PORT = "IFMAPCLI_DAEMON_PORT";
+	static final String ENV_TOKEN_FILE = "IFMAPCLI_DAEMON_TOKEN_FILE";
+
+	/**
+	 * Same as DefaultConfig.DEFAULT_DAEMON_PORT and
+	 * DefaultConfig.DEFAULT_DAEMON_TOKEN_FILE, the {@link DaemonClient} does
+	 * not load the common module.
+	 */
+	static final int DEFAULT_PORT = 8448;
+	static final String DEFAULT_TOKEN_FILE = ".ifmapcli-daemon.token";
+
+	/**
+	 * Maximum number of output bytes per line.
+	 */
+	static final int MAX_OUTPUT = 8192;
+
+	private static final int MAX_ARGUMENTS = 4096;
+	private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+	/**
+	 * A line of the protocol.
+	 */
+	static final class Line {
+
+		private final String mKeyword;
+		private final byte[] mValue;
+
+		private Line(String keyword, byte[] value) {
+			mKeyword = keyword;
+			mValue = value;
+		}
+
+		String getKeyword() {
+			return mKeyword;
+		}
+
+		/**
+		 * @return the unescaped value, <code>null</code> if there is none
+		 */
+		byte[] getValue() {
+			return mValue;
+		}
+
+		String getValueString() throws IOException {
+			return mValue == null ? null : new String(mValue, "UTF-8");
+		}
+	}
+
+	/**
+	 * A request of a client.
+	 */
+	static final class Request {
+
+		private String mToken;
+		private String mWorkingDirectory;
+		private final List<String> mArguments = new ArrayList<String>();
+
+		/**
+		 * @return the token sent by the client, <code>null</code> if it was
+		 *         not sent
+		 */
+		String getToken() {
+			return mToken;
+		}
+
+		/**
+		 * @return the working directory of the client, <code>null</code> if
+		 *         it was not sent
+		 */
+		String getWorkingDirectory() {
+			return mWorkingDirectory;
+		}
+
+		/**
+		 * @return the name of the tool followed by its arguments
+		 */
+		List<String> getArguments() {
+			return mArguments;
+		}
+	}
+
+	private DaemonProtocol() {
+	}
+
+	/**
+	 * @return the token file of the environment variable
+	 *         IFMAPCLI_DAEMON_TOKEN_FILE, by default
+	 *         <code>~/.ifmapcli-daemon.token</code>
+	 */
+	static File getTokenFile() {
+		String tokenFile = System.getenv(ENV_TOKEN_FILE);
+		if (tokenFile == null) {
+			return new File(System.getProperty("user.home"), DEFAULT_TOKEN_FILE);
+		}
+		return new File(tokenFile);
+	}
+
+	static String readToken(File tokenFile) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(tokenFile), "US-ASCII"));
+		try {
+			String token = reader.readLine();
+			if (token == null) {
+				throw new IOException(tokenFile + " is empty");
+			}
+			return token.trim();
+		} finally {
+			reader.close();
+		}
+	}
+
+	static void writeRequest(OutputStream out, String token, String workingDirectory,
+			String[] args) throws IOException {
+		writeLine(out, TOKEN, token);
+		writeLine(out, CWD, workingDirectory);
+		for (String arg : args) {
+			writeLine(out, ARG, arg);
+		}
+		writeLine(out, RUN, null);
+		out.flush();
+	}
+
+	static Request readRequest(InputStream in) throws IOException {
+		Request request = new Request();
+		while (true) {
+			Line line = readLine(in);
+			if (line == null) {
+				throw new EOFException("request ends before " + RUN);
+			}
+			String keyword = line.getKeyword();
+			if (keyword.equals(RUN) && !request.mArguments.isEmpty()) {
+				return request;
+			} else if (keyword.equals(ARG) && line.getValue() != null) {
+				if (request.mArguments.size() == MAX_ARGUMENTS) {
+					throw new IOException("more than " + MAX_ARGUMENTS + " arguments");
+				}
+				request.mArguments.add(line.getValueString());
+			} else if (keyword.equals(TOKEN) && line.getValue() != null) {
+				request.mToken = line.getValueString();
+			} else if (keyword.equals(CWD) && line.getValue() != null) {
+				request.mWorkingDirectory = line.getValueString();
+			} else {
+				throw new IOException("invalid request line '" + keyword + "'");
+			}
+		}
+	}
+
+	static void writeOutput(OutputStream out, String keyword, byte[] b, int off, int len)
+			throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream(keyword.length() + 2 * len + 2);
+		line.write(keyword.getBytes("UTF-8"));
+		line.write(' ');
+		for (int i = off; i < off + len; i++) {
+			if (b[i] == '\\') {
+				line.write('\\');
+				line.write('\\');
+			} else if (b[i] == '\n') {
+				line.write('\\');
+				line.write('n');
+			} else if (b[i] == '\r') {
+				line.write('\\');
+				line.write('r');
+			} else {
+				line.write(b[i]);
+			}
+		}
+		line.write('\n');
+		synchronized (out) {
+			line.writeTo(out);
+		}
+	}
+
+	static void writeExit(OutputStream out, int status) throws IOException {
+		synchronized (out) {
+			writeLine(out, EXIT, Integer.toString(status));
+			out.flush();
+		}
+	}
+
+	private static void writeLine(OutputStream out, String keyword, String value)
+			throws IOException {
+		if (value == null) {
+			out.write((keyword + "\n").getBytes("UTF-8"));
+		} else {
+			byte[] b = value.getBytes("UTF-8");
+			writeOutput(out, keyword, b, 0, b.length);
+		}
+	}
+
+	/**
+	 * @return the next line, <code>null</code> at the end of the stream
+	 */
+	static Line readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream keyword = new ByteArrayOutputStream();
+		ByteArrayOutputStream value = null;
+		int length = 0;
+		boolean escaped = false;
+		int b;
+		while ((b = in.read()) != '\n') {
+			if (b < 0) {
+				if (length == 0) {
+					return null;
+				}
+				throw new EOFException("incomplete line");
+			}
+			if (++length > MAX_LINE_LENGTH) {
+				throw new IOException("line longer than " + MAX_LINE_LENGTH + " bytes");
+			}
+			if (value == null) {
+				if (b == ' ') {
+					value = new ByteArrayOutputStream();
+				} else {
+					keyword.write(b);
+				}
+			} else if (escaped) {
+				if (b == 'n') {
+					value.write('\n');
+				} else if (b == 'r') {
+					value.write('\r');
+				} else if (b == '\\') {
+					value.write('\\');
+				} else {
+					throw new IOException("invalid escape sequence \\" + (char) b);
+				}
+				escaped = false;
+			} else if (b == '\\') {
+				escaped = true;
+			} else {
+				value.write(b);
+			}
+		}
+		if (escaped) {
+			throw new IOException("incomplete escape sequence");
+		}
+		return new Line(keyword.toString("UTF-8"), value == null ? null : value.toByteArray());
+	}
+}
@@ -47,6 +47,7 @@ import org.w3c.dom.Document;
 
 import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
 import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
+import de.hshannover.f4.trust.ifmapcli.common.PublishRequestFactory;
 import de.hshannover.f4.trust.ifmapcli.common.enums.IdType;
 import de.hshannover.f4.trust.ifmapj.binding.IfmapStrings;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
@@ -78,8 +79,15 @@ public class Location extends AbstractClient {
 		ParserUtil.addDiscoveredTime(parser);
 		ParserUtil.addDiscovererId(parser);
 
-		parseParameters(parser, args);
-		
+		publishIfmapData(parser, args, new PublishRequestFactory() {
+			@Override
+			public PublishRequest createPublishRequest() {
+				return createRequest();
+			}
+		});
+	}
+
+	private static PublishRequest createRequest() {
 		printParameters(KEY_OPERATION, new String[] {KEY_IDENTIFIER_TYPE, KEY_IDENTIFIER, KEY_LOCATION_INFORMATION_TYPE, KEY_LOCATION_INFORMATION_VALUE, KEY_DISCOVERED_TIME, KEY_DISCOVERER_ID});
 		
 		IdType identifierType = resource.get(KEY_IDENTIFIER_TYPE);
@@ -118,7 +126,6 @@ public class Location extends AbstractClient {
 			request = Requests.createPublishReq(publishDelete);
 		}
 
-		// publish
-		publishIfmapData(request);
+		return request;
 	}
 }
@@ -44,6 +44,7 @@ import org.w3c.dom.Document;
 
 import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
 import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
+import de.hshannover.f4.trust.ifmapcli.common.PublishRequestFactory;
 import de.hshannover.f4.trust.ifmapcli.common.enums.IdType;
 import de.hshannover.f4.trust.ifmapj.binding.IfmapStrings;
 import de.hshannover.f4.trust.ifmapj.extendedIdentifiers.IcsIdentifiers;
@@ -75,8 +76,15 @@ public class ObsBy extends AbstractClient {
 		ParserUtil.addIdentifierType(parser, IdType.ipv4, IdType.ipv6, IdType.mac);
 		ParserUtil.addIdentifier(parser);
 
-		parseParameters(parser, args);
+		publishIfmapData(parser, args, new PublishRequestFactory() {
+			@Override
+			public PublishRequest createPublishRequest() {
+				return createRequest();
+			}
+		});
+	}
 
+	private static PublishRequest createRequest() {
 		printParameters(KEY_OPERATION, new String[] {KEY_ICS_BACKHAUL_INTERFACE , KEY_IDENTIFIER_TYPE, KEY_IDENTIFIER});
 
 		String bhi = resource.getString(KEY_ICS_BACKHAUL_INTERFACE);
@@ -103,8 +111,7 @@ public class ObsBy extends AbstractClient {
 			request = Requests.createPublishReq(publishDelete);
 		}
 
-		// publish
-		publishIfmapData(request);
+		return request;
 	}
 
 }
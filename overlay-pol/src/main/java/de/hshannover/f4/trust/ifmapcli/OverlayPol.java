@@ -44,6 +44,7 @@ import org.w3c.dom.Document;
 
 import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
 import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
+import de.hshannover.f4.trust.ifmapcli.common.PublishRequestFactory;
 import de.hshannover.f4.trust.ifmapcli.common.enums.IdType;
 import de.hshannover.f4.trust.ifmapj.binding.IfmapStrings;
 import de.hshannover.f4.trust.ifmapj.extendedIdentifiers.IcsIdentifiers;
@@ -88,8 +89,15 @@ public class OverlayPol extends AbstractClient {
 		ParserUtil.addIcsNetworkName(parserA);
 		ParserUtil.addIcsPolicy(parserA);
 
-		parseParameters(parser, args);
+		publishIfmapData(parser, args, new PublishRequestFactory() {
+			@Override
+			public PublishRequest createPublishRequest() {
+				return createRequest();
+			}
+		});
+	}
 
+	private static PublishRequest createRequest() {
 		//metadata is assigned to an backhaul-interface identifier
 		if (resource.getString("target").equals("identifier")) {
 			
@@ -122,8 +130,7 @@ public class OverlayPol extends AbstractClient {
 				request = Requests.createPublishReq(publishDelete);
 			}
 
-			// publish
-			publishIfmapData(request);
+			return request;
 		} else { //metadata associates a backhaul-interface identifier with a ip or mac identifier
 
 			printParameters(KEY_OPERATION, new String[] {KEY_ICS_BACKHAUL_INTERFACE, KEY_IDENTIFIER_TYPE,
@@ -158,8 +165,7 @@ public class OverlayPol extends AbstractClient {
 				request = Requests.createPublishReq(publishDelete);
 			}
 
-			// publish
-			publishIfmapData(request);
+			return request;
 		}
 	}
 
@@ -38,19 +38,29 @@
  */
 package de.hshannover.f4.trust.ifmapcli;
 
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.List;
 
 import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
 
 import org.w3c.dom.Document;
 
 import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
+import de.hshannover.f4.trust.ifmapcli.common.BatchRecords;
 import de.hshannover.f4.trust.ifmapcli.common.Common;
+import de.hshannover.f4.trust.ifmapcli.common.MetadataTemplate;
 import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
+import de.hshannover.f4.trust.ifmapcli.common.PooledSession;
+import de.hshannover.f4.trust.ifmapcli.common.SessionPool;
 import de.hshannover.f4.trust.ifmapj.binding.IfmapStrings;
-import de.hshannover.f4.trust.ifmapj.channel.SSRC;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifiers;
 import de.hshannover.f4.trust.ifmapj.identifier.IdentityType;
@@ -87,12 +97,42 @@ import de.hshannover.f4.trust.ifmapj.metadata.WlanSecurityType;
  * The values of device and access request identifiers are created in such<br/>
  * a way that there is no connection between the subgraphs for each user.
  *
+ * <code>pdp simulate</code> emulates the logins and logoffs of a whole<br/>
+ * population of users over a pool of sessions, see {@link PdpSimulator}.<br/>
+ * <code>pdp replay</code> publishes a recorded stream of logins and<br/>
+ * logoffs as fast as possible over several sessions, see {@link PdpReplay}.<br/>
+ * <code>pdp logoff</code> removes the metadata of a list of users with<br/>
+ * batched deletes, see {@link PdpSweeper}.
+ *
  * @author ib
  *
  */
 public class Pdp extends AbstractClient {
 
-	private static PublishRequest publishRequest;
+	private static final List<String[]> POPULATION_FIELDS = BatchRecords.positionals(
+			"username", "ip", "mac");
+
+	// the metadata is the same for every user and publish, only the
+	// discovered-time of the device-characteristic changes
+	private static final MetadataTemplate ACCESS_REQUEST_DEVICE = new MetadataTemplate(mf.createArDev());
+	private static final MetadataTemplate ACCESS_REQUEST_MAC = new MetadataTemplate(mf.createArMac());
+	private static final MetadataTemplate ACCESS_REQUEST_IP = new MetadataTemplate(mf.createArIp());
+	private static final MetadataTemplate AUTHENTICATED_BY = new MetadataTemplate(mf.createAuthBy());
+	private static final MetadataTemplate AUTHENTICATED_AS = new MetadataTemplate(mf.createAuthAs());
+	private static final MetadataTemplate CAPABILITY = new MetadataTemplate(
+			mf.createCapability("trustworthy, for sure!"));
+	private static final MetadataTemplate DEVICE_ATTRIBUTE = new MetadataTemplate(
+			mf.createDevAttr("looks pretty"));
+	private static final MetadataTemplate DEVICE_CHARACTERISTIC = new MetadataTemplate(
+			mf.createDevChar("manufacturer1", "model1", "Linux", "3.0.0", "pdp",
+					Common.getTimeAsXsdDateTime(Calendar.getInstance().getTime()), "TNC Server",
+					"TPM Assessment"),
+			"discovered-time");
+	private static final MetadataTemplate ROLE = new MetadataTemplate(mf.createRole("employee"));
+	private static final MetadataTemplate LAYER2_INFORMATION = new MetadataTemplate(
+			mf.createLayer2Information(96, "vlan1", 1, null));
+	private static final MetadataTemplate WLAN_INFORMATION = new MetadataTemplate(
+			createWlanInformation());
 
 	private static boolean isUpdate;
 	private static String username;
@@ -100,61 +140,132 @@ public class Pdp extends AbstractClient {
 	private static String mac;
 
 	private static void publish() {
-		Identifier accessRequest;
-		Identifier macAddress, ipAddress;
-		Identifier identity;
-		Identifier pepDevice, pdpDevice, endpointDevice;
-
+		SessionPool pool = SessionPool.getDefault();
+		PooledSession session = null;
 		try {
-			// establish session
-			SSRC ssrc = createSSRC();
-			ssrc.newSession();
-			
-			// create identifiers
-			accessRequest = Identifiers.createAr(ssrc.getPublisherId() + ":" + username.hashCode());
-			macAddress = Identifiers.createMac(mac);
-			ipAddress = Identifiers.createIp4(ip);
-			identity = Identifiers.createIdentity(IdentityType.userName, username);
-			pepDevice = Identifiers.createDev("example-pep-id:" + username.hashCode());
-			pdpDevice = Identifiers.createDev("example-pdp-id:" + username.hashCode());
-			endpointDevice = Identifiers.createDev("example-endpoint-id:" + username.hashCode());
-			
-			// add mandatory metadata to publish request
-			addArDevice(accessRequest, endpointDevice);
-			addArMac(accessRequest, macAddress);
-			addArIp(accessRequest, ipAddress);
-			addAuthBy(accessRequest, pdpDevice);
-			
-			// add optional metadata to publish request
-			addAuthAs(accessRequest, identity);
-			addCap(accessRequest);
-			addDevAttr(accessRequest, endpointDevice);
-			addDevChar(accessRequest, pdpDevice);
-			addRole(accessRequest, identity);
-			addLayer2(accessRequest, pepDevice);
-			addWlanInfo(accessRequest, pepDevice);
+			session = pool.acquire(getConnectionConfig());
+
+			PublishRequest publishRequest = Requests.createPublishReq();
+			addUser(publishRequest, isUpdate, session.getSsrc().getPublisherId(), username, ip, mac);
 			
 			// do publish
-			ssrc.publish(publishRequest);
-			
-			// clean up
-			ssrc.endSession();
-			ssrc.closeTcpConnection();		
+			session.publish(publishRequest);
+			pool.release(session);
 		} catch (Exception e) {
+			if (session != null) {
+				pool.invalidate(session);
+			}
 			e.printStackTrace();
-			System.exit(-1);
+			exit(-1);
 		}
 	}
 
 	/**
-	 * wlan-information metadata on the link between the access-request
-	 * identifier and the device identifier of the PEP
+	 * Add the publish updates or deletes of all metadata of one user to a
+	 * publish request.
 	 *
-	 * @param accessRequest
-	 * @param pepDevice
+	 * @param request
+	 * @param isUpdate
+	 * @param publisherId - the publisher id of the session, the access-request is named after it
+	 * @param username
+	 * @param ip
+	 * @param mac
+	 */
+	static void addUser(PublishRequest request, boolean isUpdate, String publisherId,
+			String username, String ip, String mac) {
+		Identifier accessRequest;
+		Identifier macAddress, ipAddress;
+		Identifier identity;
+		Identifier pepDevice, pdpDevice, endpointDevice;
+
+		// create identifiers
+		accessRequest = Identifiers.createAr(publisherId + ":" + username.hashCode());
+		macAddress = Identifiers.createMac(mac);
+		ipAddress = Identifiers.createIp4(ip);
+		identity = Identifiers.createIdentity(IdentityType.userName, username);
+		pepDevice = Identifiers.createDev("example-pep-id:" + username.hashCode());
+		pdpDevice = Identifiers.createDev("example-pdp-id:" + username.hashCode());
+		endpointDevice = Identifiers.createDev("example-endpoint-id:" + username.hashCode());
+		
+		// add mandatory metadata to publish request
+		addArDevice(request, isUpdate, accessRequest, endpointDevice);
+		addArMac(request, isUpdate, accessRequest, macAddress);
+		addArIp(request, isUpdate, accessRequest, ipAddress);
+		addAuthBy(request, isUpdate, accessRequest, pdpDevice);
+		
+		// add optional metadata to publish request
+		addAuthAs(request, isUpdate, accessRequest, identity);
+		addCap(request, isUpdate, accessRequest);
+		addDevAttr(request, isUpdate, accessRequest, endpointDevice);
+		addDevChar(request, isUpdate, accessRequest, pdpDevice);
+		addRole(request, isUpdate, accessRequest, identity);
+		addLayer2(request, isUpdate, accessRequest, pepDevice);
+		addWlanInfo(request, isUpdate, accessRequest, pepDevice);
+	}
+
+	/**
+	 * Add the deletes of all metadata of one user to a publish request. In
+	 * contrast to {@link #addUser} with isUpdate false, the metadata on the
+	 * same identifier or link is deleted by one element with a combined
+	 * filter, which needs 7 instead of 11 elements per user.
+	 *
+	 * @param request
+	 * @param publisherId - the publisher id of the session, the access-request is named after it
+	 * @param username
+	 * @param ip
+	 * @param mac
 	 */
-	private static void addWlanInfo(Identifier accessRequest, Identifier pepDevice) {
-		// create and set wlan-information metadata
+	static void addLogoff(PublishRequest request, String publisherId,
+			String username, String ip, String mac) {
+		Identifier accessRequest = Identifiers.createAr(publisherId + ":" + username.hashCode());
+		Identifier macAddress = Identifiers.createMac(mac);
+		Identifier ipAddress = Identifiers.createIp4(ip);
+		Identifier identity = Identifiers.createIdentity(IdentityType.userName, username);
+		Identifier pepDevice = Identifiers.createDev("example-pep-id:" + username.hashCode());
+		Identifier pdpDevice = Identifiers.createDev("example-pdp-id:" + username.hashCode());
+		Identifier endpointDevice = Identifiers.createDev("example-endpoint-id:" + username.hashCode());
+
+		request.addPublishElement(createDelete(accessRequest, endpointDevice,
+				"access-request-device", "device-attribute"));
+		request.addPublishElement(createDelete(accessRequest, macAddress, "access-request-mac"));
+		request.addPublishElement(createDelete(accessRequest, ipAddress, "access-request-ip"));
+		request.addPublishElement(createDelete(accessRequest, pdpDevice,
+				"authenticated-by", "device-characteristic"));
+		request.addPublishElement(createDelete(accessRequest, identity, "authenticated-as", "role"));
+		request.addPublishElement(createDelete(accessRequest, pepDevice,
+				"layer2-information", "wlan-information"));
+		request.addPublishElement(createDelete(accessRequest, null, "capability"));
+	}
+
+	/**
+	 * Create a delete of the given standard metadata types on an identifier
+	 * (identifier2 null) or a link.
+	 */
+	static PublishDelete createDelete(Identifier identifier1, Identifier identifier2, String... types) {
+		String filter = createFilter(types);
+		PublishDelete publishDelete = identifier2 == null
+				? Requests.createPublishDelete(identifier1, filter)
+				: Requests.createPublishDelete(identifier1, identifier2, filter);
+		publishDelete.addNamespaceDeclaration(IfmapStrings.STD_METADATA_PREFIX, IfmapStrings.STD_METADATA_NS_URI);
+		return publishDelete;
+	}
+
+	/**
+	 * Create a filter that matches any of the given standard metadata types.
+	 */
+	static String createFilter(String... types) {
+		StringBuilder filter = new StringBuilder();
+		for (String type : types) {
+			if (filter.length() > 0) {
+				filter.append(" or ");
+			}
+			filter.append(IfmapStrings.STD_METADATA_PREFIX).append(':').append(type);
+		}
+		return filter.toString();
+	}
+
+	private static Document createWlanInformation() {
+		// create wlan-information metadata
 		WlanSecurityType wlan1 = new WlanSecurityType(WlanSecurityEnum.ccmp, null);
 		WlanSecurityType wlan2 = new WlanSecurityType(WlanSecurityEnum.other, "my own wlan security type");
 		WlanSecurityType wlan3 = new WlanSecurityType(WlanSecurityEnum.tkip, null);
@@ -162,16 +273,29 @@ public class Pdp extends AbstractClient {
 		unicastSec.add(wlan1);
 		List<WlanSecurityType> managementSec = new ArrayList<WlanSecurityType>();
 		managementSec.add(wlan3);
-		Document metadata = mf.createWlanInformation("eduroam", unicastSec, wlan2, managementSec);
+		return mf.createWlanInformation("eduroam", unicastSec, wlan2, managementSec);
+	}
+
+	/**
+	 * wlan-information metadata on the link between the access-request
+	 * identifier and the device identifier of the PEP
+	 *
+	 * @param request
+	 * @param isUpdate
+	 * @param accessRequest
+	 * @param pepDevice
+	 */
+	private static void addWlanInfo(PublishRequest request, boolean isUpdate, Identifier accessRequest, Identifier pepDevice) {
 		PublishElement publishEl;
 		if(isUpdate){
+			Document metadata = WLAN_INFORMATION.create();
 			publishEl = Requests.createPublishUpdate(accessRequest, pepDevice, metadata, MetadataLifetime.forever);
 		} else {
 			PublishDelete publishDelete = Requests.createPublishDelete(accessRequest, pepDevice, "meta:wlan-information");
 			publishDelete.addNamespaceDeclaration(IfmapStrings.STD_METADATA_PREFIX,	IfmapStrings.STD_METADATA_NS_URI);
 			publishEl = publishDelete;
 		}
-		publishRequest.addPublishElement(publishEl);
+		request.addPublishElement(publishEl);
 	}
 
 	/**
@@ -179,99 +303,109 @@ public class Pdp extends AbstractClient {
 	 * identifier and the device identifier of the PEP (when authenticated at
 	 * layer 2 or otherwise available)
 	 *
+	 * @param request
+	 * @param isUpdate
 	 * @param accessRequest
 	 * @param pepDevice
 	 */
-	private static void addLayer2(Identifier accessRequest, Identifier pepDevice) {
-		Document metadata = mf.createLayer2Information(96, "vlan1", 1, null);
+	private static void addLayer2(PublishRequest request, boolean isUpdate, Identifier accessRequest, Identifier pepDevice) {
 		PublishElement publishEl;
 		if(isUpdate){
+			Document metadata = LAYER2_INFORMATION.create();
 			publishEl = Requests.createPublishUpdate(accessRequest, pepDevice, metadata, MetadataLifetime.forever);
 		} else {
 			PublishDelete publishDelete = Requests.createPublishDelete(accessRequest, pepDevice, "meta:layer2-information");
 			publishDelete.addNamespaceDeclaration(IfmapStrings.STD_METADATA_PREFIX,	IfmapStrings.STD_METADATA_NS_URI);
 			publishEl = publishDelete;
 		}
-		publishRequest.addPublishElement(publishEl);
+		request.addPublishElement(publishEl);
 	}
 
 	/**
 	 * role metadata on the link between the access-request identifier and an
 	 * identity identifier
 	 *
+	 * @param request
+	 * @param isUpdate
 	 * @param accessRequest
 	 * @param identity
 	 */
-	private static void addRole(Identifier accessRequest, Identifier identity) {
-		Document metadata = mf.createRole("employee");
+	private static void addRole(PublishRequest request, boolean isUpdate, Identifier accessRequest, Identifier identity) {
 		PublishElement publishEl;
 		if(isUpdate){
+			Document metadata = ROLE.create();
 			publishEl = Requests.createPublishUpdate(accessRequest, identity, metadata, MetadataLifetime.forever);
 		} else {
 			PublishDelete publishDelete = Requests.createPublishDelete(accessRequest, identity, "meta:role");
 			publishDelete.addNamespaceDeclaration(IfmapStrings.STD_METADATA_PREFIX,	IfmapStrings.STD_METADATA_NS_URI);
 			publishEl = publishDelete;
 		}
-		publishRequest.addPublishElement(publishEl);
+		request.addPublishElement(publishEl);
 	}
 
 	/**
 	 * device-characteristic metadata on the link between the access-request
 	 * identifier and its own device identifier
 	 *
+	 * @param request
+	 * @param isUpdate
 	 * @param accessRequest
 	 * @param pdpDevice
 	 */
-	private static void addDevChar(Identifier accessRequest, Identifier pdpDevice) {
-		Calendar cal = Calendar.getInstance();
-		Document metadata = mf.createDevChar("manufacturer1", "model1", "Linux", "3.0.0", "pdp", Common.getTimeAsXsdDateTime(cal.getTime()), "TNC Server", "TPM Assessment");
+	private static void addDevChar(PublishRequest request, boolean isUpdate, Identifier accessRequest, Identifier pdpDevice) {
 		PublishElement publishEl;
 		if(isUpdate){
+			Calendar cal = Calendar.getInstance();
+			Document metadata = DEVICE_CHARACTERISTIC.create(Common.getTimeAsXsdDateTime(cal.getTime()));
 			publishEl = Requests.createPublishUpdate(accessRequest, pdpDevice, metadata, MetadataLifetime.forever);
 		} else {
 			PublishDelete publishDelete = Requests.createPublishDelete(accessRequest, pdpDevice, "meta:device-characteristic");
 			publishDelete.addNamespaceDeclaration(IfmapStrings.STD_METADATA_PREFIX,	IfmapStrings.STD_METADATA_NS_URI);
 			publishEl = publishDelete;
 		}
-		publishRequest.addPublishElement(publishEl);
+		request.addPublishElement(publishEl);
 	}
 
 	/**
 	 * device-attribute metadata on the link between the access-request
 	 * identifier and the endpoint's device identifier
 	 *
+	 * @param request
+	 * @param isUpdate
 	 * @param accessRequest
 	 * @param endpointDevice
 	 */
-	private static void addDevAttr(Identifier accessRequest, Identifier endpointDevice) {
-		Document metadata = mf.createDevAttr("looks pretty");
+	private static void addDevAttr(PublishRequest request, boolean isUpdate, Identifier accessRequest, Identifier endpointDevice) {
 		PublishElement publishEl;
 		if(isUpdate){
+			Document metadata = DEVICE_ATTRIBUTE.create();
 			publishEl = Requests.createPublishUpdate(accessRequest, endpointDevice, metadata, MetadataLifetime.forever);
 		} else {
 			PublishDelete publishDelete = Requests.createPublishDelete(accessRequest, endpointDevice, "meta:device-attribute");
 			publishDelete.addNamespaceDeclaration(IfmapStrings.STD_METADATA_PREFIX,	IfmapStrings.STD_METADATA_NS_URI);
 			publishEl = publishDelete;
 		}
-		publishRequest.addPublishElement(publishEl);
+		request.addPublishElement(publishEl);
 	}
 
 	/**
 	 * capability metadata on the access-request identifier
 	 *
+	 * @param request
+	 * @param isUpdate
 	 * @param accessRequest
 	 */
-	private static void addCap(Identifier accessRequest) {
-		Document metadata = mf.createCapability("trustworthy, for sure!");
+	private static void addCap(PublishRequest request, boolean isUpdate, Identifier accessRequest) {
 		PublishElement publishEl;
 		if(isUpdate){
+			Document metadata = CAPABILITY.create();
 			publishEl = Requests.createPublishUpdate(accessRequest, metadata, MetadataLifetime.forever);
 		} else {
 			PublishDelete publishDelete = Requests.createPublishDelete(accessRequest, "meta:capability");
 			publishDelete.addNamespaceDeclaration(IfmapStrings.STD_METADATA_PREFIX,	IfmapStrings.STD_METADATA_NS_URI);
 			publishEl = publishDelete;
 		}
-		publishRequest.addPublishElement(publishEl);
+		request.addPublishElement(publishEl);
 	}
 
 	/**
@@ -279,40 +413,44 @@ public class Pdp extends AbstractClient {
 	 * identifier and any identity identifiers associated with the user's
 	 * authenticated identity
 	 *
+	 * @param request
+	 * @param isUpdate
 	 * @param accessRequest
 	 * @param identity
 	 */
-	private static void addAuthAs(Identifier accessRequest, Identifier identity) {
-		Document metadata = mf.createAuthAs();
+	private static void addAuthAs(PublishRequest request, boolean isUpdate, Identifier accessRequest, Identifier identity) {
 		PublishElement publishEl;
 		if(isUpdate){
+			Document metadata = AUTHENTICATED_AS.create();
 			publishEl = Requests.createPublishUpdate(accessRequest, identity, metadata, MetadataLifetime.forever);
 		} else {
 			PublishDelete publishDelete = Requests.createPublishDelete(accessRequest, identity, "meta:authenticated-as");
 			publishDelete.addNamespaceDeclaration(IfmapStrings.STD_METADATA_PREFIX,	IfmapStrings.STD_METADATA_NS_URI);
 			publishEl = publishDelete;
 		}
-		publishRequest.addPublishElement(publishEl);
+		request.addPublishElement(publishEl);
 	}
 
 	/**
 	 * authenticated-by metadata on the link between the access-request
 	 * identifier and the PDP's device identifier
 	 *
+	 * @param request
+	 * @param isUpdate
 	 * @param accessRequest
 	 * @param pdpDevice
 	 */
-	private static void addAuthBy(Identifier accessRequest, Identifier pdpDevice) {
-		Document metadata = mf.createAuthBy();
+	private static void addAuthBy(PublishRequest request, boolean isUpdate, Identifier accessRequest, Identifier pdpDevice) {
 		PublishElement publishEl;
 		if(isUpdate){
+			Document metadata = AUTHENTICATED_BY.create();
 			publishEl = Requests.createPublishUpdate(accessRequest, pdpDevice, metadata, MetadataLifetime.forever);
 		} else {
 			PublishDelete publishDelete = Requests.createPublishDelete(accessRequest, pdpDevice, "meta:authenticated-by");
 			publishDelete.addNamespaceDeclaration(IfmapStrings.STD_METADATA_PREFIX,	IfmapStrings.STD_METADATA_NS_URI);
 			publishEl = publishDelete;
 		}
-		publishRequest.addPublishElement(publishEl);
+		request.addPublishElement(publishEl);
 	}
 
 	/**
@@ -320,20 +458,22 @@ public class Pdp extends AbstractClient {
 	 * identifier and the endpoint's ip-address identifier (when authenticated
 	 * at layer 3 or otherwise available)
 	 *
+	 * @param request
+	 * @param isUpdate
 	 * @param accessRequest
 	 * @param ipAddress
 	 */
-	private static void addArIp(Identifier accessRequest, Identifier ipAddress) {
-		Document metadata = mf.createArIp();
+	private static void addArIp(PublishRequest request, boolean isUpdate, Identifier accessRequest, Identifier ipAddress) {
 		PublishElement publishEl;
 		if(isUpdate){
+			Document metadata = ACCESS_REQUEST_IP.create();
 			publishEl = Requests.createPublishUpdate(accessRequest, ipAddress, metadata, MetadataLifetime.forever);
 		} else {
 			PublishDelete publishDelete = Requests.createPublishDelete(accessRequest, ipAddress, "meta:access-request-ip");
 			publishDelete.addNamespaceDeclaration(IfmapStrings.STD_METADATA_PREFIX,	IfmapStrings.STD_METADATA_NS_URI);
 			publishEl = publishDelete;
 		}
-		publishRequest.addPublishElement(publishEl);
+		request.addPublishElement(publishEl);
 	}
 
 	/**
@@ -341,43 +481,60 @@ public class Pdp extends AbstractClient {
 	 * identifier and the endpoint's mac-address identifier (when authenticated
 	 * at layer 2 or otherwise available)
 	 *
+	 * @param request
+	 * @param isUpdate
 	 * @param accessRequest
 	 * @param macAddress
 	 */
-	private static void addArMac(Identifier accessRequest, Identifier macAddress) {
-		Document metadata = mf.createArMac();
+	private static void addArMac(PublishRequest request, boolean isUpdate, Identifier accessRequest, Identifier macAddress) {
 		PublishElement publishEl;
 		if(isUpdate){
+			Document metadata = ACCESS_REQUEST_MAC.create();
 			publishEl = Requests.createPublishUpdate(accessRequest, macAddress, metadata, MetadataLifetime.forever);
 		} else {
 			PublishDelete publishDelete = Requests.createPublishDelete(accessRequest, macAddress, "meta:access-request-mac");
 			publishDelete.addNamespaceDeclaration(IfmapStrings.STD_METADATA_PREFIX,	IfmapStrings.STD_METADATA_NS_URI);
 			publishEl = publishDelete;
 		}
-		publishRequest.addPublishElement(publishEl);
+		request.addPublishElement(publishEl);
 	}
 
 	/**
 	 * access-request-device metadata on the link between the access-request
 	 * identifier and the endpoint's device identifier
+	 * @param request
+	 * @param isUpdate
 	 * @param accessRequest
 	 * @param endpointDevice
 	 */
-	private static void addArDevice(Identifier accessRequest, Identifier endpointDevice) {
-		Document metadata = mf.createArDev();
+	private static void addArDevice(PublishRequest request, boolean isUpdate, Identifier accessRequest, Identifier endpointDevice) {
 		PublishElement publishEl;
 		if(isUpdate){
+			Document metadata = ACCESS_REQUEST_DEVICE.create();
 			publishEl = Requests.createPublishUpdate(accessRequest, endpointDevice, metadata, MetadataLifetime.forever);
 		} else {
 			PublishDelete publishDelete = Requests.createPublishDelete(accessRequest, endpointDevice, "meta:access-request-device");
 			publishDelete.addNamespaceDeclaration(IfmapStrings.STD_METADATA_PREFIX,	IfmapStrings.STD_METADATA_NS_URI);
 			publishEl = publishDelete;
 		}
-		publishRequest.addPublishElement(publishEl);
+		request.addPublishElement(publishEl);
 	}
 
 	public static void main(String[] args) {
 		command = "pdp";
+
+		if (args.length > 0 && args[0].equals("simulate")) {
+			simulate(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 0 && args[0].equals("replay")) {
+			replay(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 0 && args[0].equals("logoff")) {
+			logoff(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
 		
 		ArgumentParser parser = createDefaultParser();
 		ParserUtil.addPublishOperation(parser);
@@ -394,7 +551,211 @@ public class Pdp extends AbstractClient {
 		mac = resource.getString(KEY_MAC);
 		username = resource.getString(KEY_IDENTITY_USERNAME);
 		
-		publishRequest = Requests.createPublishReq();
 		publish();
 	}
+
+	private static void simulate(String[] args) {
+		command = "pdp simulate";
+
+		ArgumentParser parser = createDefaultParser();
+		ParserUtil.addPdpPopulation(parser);
+		ParserUtil.addPdpSessions(parser);
+		ParserUtil.addPdpRate(parser);
+		ParserUtil.addPdpHold(parser);
+		ParserUtil.addPdpDuration(parser);
+
+		parseParameters(parser, args);
+
+		printParameters(new String[] {KEY_POPULATION, KEY_USERS, KEY_SESSIONS, KEY_RATE, KEY_HOLD, KEY_DURATION});
+
+		String populationFile = resource.getString(KEY_POPULATION);
+		Integer users = resource.getInt(KEY_USERS);
+		if ((populationFile == null) == (users == null)) {
+			parser.handleError(new ArgumentParserException(
+					"either --population or --users is required", parser));
+			exit(1);
+		}
+		List<PdpSimulator.User> population = populationFile != null
+				? readPopulation(populationFile) : generatePopulation(users);
+		if (population.isEmpty()) {
+			System.err.println(command + ": the population is empty");
+			exit(1);
+		}
+
+		PdpSimulator simulator = new PdpSimulator(getConnectionConfig(), population,
+				Math.max(1, resource.getInt(KEY_SESSIONS)), resource.getDouble(KEY_RATE),
+				resource.getInt(KEY_HOLD), resource.getInt(KEY_DURATION));
+		try {
+			simulator.run();
+		} catch (Exception e) {
+			e.printStackTrace();
+			exit(-1);
+		}
+		simulator.report(System.out);
+		if (simulator.getErrorCount() > 0) {
+			exit(1);
+		}
+	}
+
+	private static void replay(String[] args) {
+		command = "pdp replay";
+
+		ArgumentParser parser = createDefaultParser();
+		ParserUtil.addPdpRecords(parser);
+		ParserUtil.addPdpSessions(parser);
+		ParserUtil.addBatchSize(parser);
+
+		parseParameters(parser, args);
+
+		printParameters(new String[] {KEY_RECORDS, KEY_SESSIONS, KEY_BATCH_SIZE});
+
+		String recordsFile = resource.getString(KEY_RECORDS);
+		int batchSize = resource.getInt(KEY_BATCH_SIZE);
+		if (batchSize < 1) {
+			parser.handleError(new ArgumentParserException(
+					"--batch-size must be at least 1", parser));
+			exit(1);
+		}
+
+		PdpReplay replay = new PdpReplay(getConnectionConfig(),
+				Math.max(1, resource.getInt(KEY_SESSIONS)), batchSize);
+		BufferedReader reader = null;
+		try {
+			InputStream in = recordsFile.equals("-") ? System.in : new FileInputStream(resolveFile(recordsFile));
+			reader = new BufferedReader(new InputStreamReader(in, "UTF-8"), 64 * 1024);
+			replay.run(reader, recordsFile);
+		} catch (Exception e) {
+			e.printStackTrace();
+			exit(-1);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+		replay.report(System.out);
+		if (replay.getFailure() != null) {
+			replay.getFailure().printStackTrace();
+			exit(-1);
+		}
+		if (replay.getErrorCount() > 0) {
+			exit(1);
+		}
+	}
+
+	private static void logoff(String[] args) {
+		command = "pdp logoff";
+
+		ArgumentParser parser = createDefaultParser();
+		ParserUtil.addPdpLogoffList(parser);
+		ParserUtil.addBatchSize(parser);
+		ParserUtil.addPdpLogoffRate(parser);
+
+		parseParameters(parser, args);
+
+		printParameters(new String[] {KEY_RECORDS, KEY_BATCH_SIZE, KEY_RATE});
+
+		String usersFile = resource.getString(KEY_RECORDS);
+		int batchSize = resource.getInt(KEY_BATCH_SIZE);
+		if (batchSize < 1) {
+			parser.handleError(new ArgumentParserException(
+					"--batch-size must be at least 1", parser));
+			exit(1);
+		}
+
+		SessionPool pool = SessionPool.getDefault();
+		PooledSession session = null;
+		BufferedReader reader = null;
+		PdpSweeper sweeper = null;
+		try {
+			session = pool.acquire(getConnectionConfig());
+			sweeper = new PdpSweeper(session, batchSize, resource.getDouble(KEY_RATE));
+			InputStream in = usersFile.equals("-") ? System.in : new FileInputStream(resolveFile(usersFile));
+			reader = new BufferedReader(new InputStreamReader(in, "UTF-8"), 64 * 1024);
+			sweeper.run(reader, usersFile);
+			pool.release(session);
+		} catch (Exception e) {
+			if (session != null) {
+				pool.invalidate(session);
+			}
+			e.printStackTrace();
+			exit(-1);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+		sweeper.report(System.out);
+		if (sweeper.getErrorCount() > 0) {
+			exit(1);
+		}
+	}
+
+	/**
+	 * Read a population file (or stdin for '-') with one
+	 * 'username,ip,mac' record per user, see {@link BatchRecords}.
+	 */
+	private static List<PdpSimulator.User> readPopulation(String populationFile) {
+		List<PdpSimulator.User> population = new ArrayList<PdpSimulator.User>();
+		int errors = 0;
+		BufferedReader reader = null;
+		try {
+			InputStream in = populationFile.equals("-") ? System.in : new FileInputStream(resolveFile(populationFile));
+			reader = new BufferedReader(new InputStreamReader(in, "UTF-8"), 64 * 1024);
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (!BatchRecords.isRecord(line)) {
+					continue;
+				}
+				try {
+					List<String> record = BatchRecords.toArguments(line, POPULATION_FIELDS);
+					if (record.size() != 3) {
+						throw new IllegalArgumentException("expected username, ip and mac");
+					}
+					population.add(new PdpSimulator.User(record.get(0), record.get(1), record.get(2)));
+				} catch (RuntimeException e) {
+					errors++;
+					System.err.println(populationFile + ":" + lineNumber + ": " + e.getMessage());
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			exit(-1);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+		if (errors > 0) {
+			exit(1);
+		}
+		return population;
+	}
+
+	/**
+	 * Generate users named user0, user1, ... with addresses from 10.0.0.0/8
+	 * and locally administered MAC addresses.
+	 */
+	private static List<PdpSimulator.User> generatePopulation(int users) {
+		List<PdpSimulator.User> population = new ArrayList<PdpSimulator.User>(users);
+		for (int i = 0; i < users; i++) {
+			String ip = "10." + ((i >> 16) & 0xff) + "." + ((i >> 8) & 0xff) + "." + (i & 0xff);
+			String mac = String.format("02:00:00:%02x:%02x:%02x", (i >> 16) & 0xff, (i >> 8) & 0xff, i & 0xff);
+			population.add(new PdpSimulator.User("user" + i, ip, mac));
+		}
+		return population;
+	}
 }
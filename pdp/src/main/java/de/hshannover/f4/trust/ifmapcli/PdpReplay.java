@@ -0,0 +1,269 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (pdp), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import de.hshannover.f4.trust.ifmapcli.common.BatchRecords;
+import de.hshannover.f4.trust.ifmapcli.common.ChunkedPublisher;
+import de.hshannover.f4.trust.ifmapcli.common.ConnectionConfig;
+import de.hshannover.f4.trust.ifmapcli.common.PooledSession;
+import de.hshannover.f4.trust.ifmapcli.common.SessionPool;
+import de.hshannover.f4.trust.ifmapj.messages.PublishElement;
+import de.hshannover.f4.trust.ifmapj.messages.PublishRequest;
+import de.hshannover.f4.trust.ifmapj.messages.Requests;
+
+/**
+ * Replays a stream of pdp logins and logoffs, e.g. converted from RADIUS<br/>
+ * accounting logs, over several sessions. Every record has the positional<br/>
+ * arguments of pdp: <code>update|delete,ip,mac,username</code>.<br/>
+ * <br/>
+ * The users are partitioned by the hash of their name, so all records of<br/>
+ * one user are published in order by the same worker. Every worker has its<br/>
+ * own session and collects the elements of several users in one publish<br/>
+ * request of up to <code>batchSize</code> elements. The elements of a record<br/>
+ * are never split across requests, unless a record alone has more than<br/>
+ * <code>batchSize</code> elements. The records are read on the calling<br/>
+ * thread and handed to the workers through bounded queues, so the memory<br/>
+ * needed does not depend on the length of the stream.
+ *
+ */
+class PdpReplay {
+
+	private static final int QUEUE_SIZE = 1000;
+
+	// errors reported on the console, the others are only counted
+	private static final int MAX_REPORTED_ERRORS = 10;
+
+	private static final String[] END = new String[0];
+
+	private static final List<String[]> FIELDS = BatchRecords.positionals(
+			"operation", "ip", "mac", "username");
+
+	private final ConnectionConfig mConfig;
+	private final int mWorkerCount;
+	private final int mBatchSize;
+
+	private String mPublisherId;
+	private long mRecords;
+	private long mElements;
+	private long mRequests;
+	private int mErrors;
+	private long mElapsed;
+	private Exception mFailure;
+
+	PdpReplay(ConnectionConfig config, int workers, int batchSize) {
+		mConfig = config;
+		mWorkerCount = workers;
+		mBatchSize = batchSize;
+	}
+
+	/**
+	 * Publishes every record read from <code>reader</code>.
+	 *
+	 * @param source - the name of the input for error messages
+	 */
+	void run(BufferedReader reader, String source) throws Exception {
+		SessionPool pool = SessionPool.getDefault();
+		List<PooledSession> sessions = new ArrayList<PooledSession>(mWorkerCount);
+		try {
+			for (int i = 0; i < mWorkerCount; i++) {
+				sessions.add(pool.acquire(mConfig));
+			}
+		} catch (Exception e) {
+			for (PooledSession session : sessions) {
+				pool.release(session);
+			}
+			throw e;
+		}
+		// the access-request identifiers are named after the publisher id,
+		// which is the same for all sessions of the same client
+		mPublisherId = sessions.get(0).getSsrc().getPublisherId();
+
+		long start = System.nanoTime();
+		List<Worker> workers = new ArrayList<Worker>(mWorkerCount);
+		List<Thread> threads = new ArrayList<Thread>(mWorkerCount);
+		for (int i = 0; i < mWorkerCount; i++) {
+			Worker worker = new Worker(sessions.get(i));
+			Thread thread = new Thread(worker, "pdp-replay-" + i);
+			workers.add(worker);
+			threads.add(thread);
+			thread.start();
+		}
+
+		try {
+			dispatch(reader, source, workers);
+		} finally {
+			for (Worker worker : workers) {
+				worker.mQueue.put(END);
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		}
+		mElapsed = System.nanoTime() - start;
+
+		for (int i = 0; i < mWorkerCount; i++) {
+			Worker worker = workers.get(i);
+			mElements += worker.mPublisher.getElementCount();
+			mRequests += worker.mPublisher.getRequestCount();
+			if (worker.mError != null) {
+				if (mFailure == null) {
+					mFailure = worker.mError;
+				}
+				pool.invalidate(sessions.get(i));
+			} else {
+				pool.release(sessions.get(i));
+			}
+		}
+	}
+
+	/**
+	 * @return the first exception that stopped a worker, or null
+	 */
+	Exception getFailure() {
+		return mFailure;
+	}
+
+	int getErrorCount() {
+		return mErrors;
+	}
+
+	void report(PrintStream out) {
+		double seconds = mElapsed / 1e9;
+		out.println("Records:         " + mRecords);
+		out.println("Elements:        " + mElements + " in " + mRequests + " requests");
+		out.println("Errors:          " + mErrors);
+		out.println("Total Duration:  " + String.format("%.3f", seconds) + " s");
+		out.println("Throughput:      " + String.format("%.1f", mRecords / seconds) + " records/s");
+	}
+
+	private void dispatch(BufferedReader reader, String source, List<Worker> workers)
+			throws IOException, InterruptedException {
+		String line;
+		int lineNumber = 0;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			if (!BatchRecords.isRecord(line)) {
+				continue;
+			}
+			String[] record;
+			try {
+				List<String> fields = BatchRecords.toArguments(line, FIELDS);
+				if (fields.size() != 4) {
+					throw new IllegalArgumentException("expected operation, ip, mac and username");
+				}
+				if (!fields.get(0).equals("update") && !fields.get(0).equals("delete")) {
+					throw new IllegalArgumentException("unknown operation " + fields.get(0));
+				}
+				record = fields.toArray(new String[4]);
+			} catch (RuntimeException e) {
+				if (++mErrors <= MAX_REPORTED_ERRORS) {
+					System.err.println(source + ":" + lineNumber + ": " + e.getMessage());
+				}
+				continue;
+			}
+
+			Worker worker = workers.get((record[3].hashCode() & 0x7fffffff) % workers.size());
+			if (worker.mError != null) {
+				// the worker has stopped and would never take the record
+				return;
+			}
+			worker.mQueue.put(record);
+			mRecords++;
+		}
+	}
+
+	/**
+	 * Publishes the records of its partition of users on one session.
+	 */
+	private class Worker implements Runnable {
+
+		private final BlockingQueue<String[]> mQueue = new ArrayBlockingQueue<String[]>(QUEUE_SIZE);
+		private final ChunkedPublisher mPublisher;
+		private volatile Exception mError;
+
+		Worker(PooledSession session) {
+			mPublisher = new ChunkedPublisher(session, mBatchSize);
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					// publish what we have before waiting for more records
+					String[] record = mQueue.poll();
+					if (record == null) {
+						mPublisher.flush();
+						record = mQueue.take();
+					}
+					if (record == END) {
+						break;
+					}
+					PublishRequest request = Requests.createPublishReq();
+					Pdp.addUser(request, record[0].equals("update"), mPublisherId,
+							record[3], record[1], record[2]);
+					List<PublishElement> elements = request.getPublishElements();
+					if (mPublisher.getPendingCount() + elements.size() > mBatchSize) {
+						// keep a login or logoff in one request
+						mPublisher.flush();
+					}
+					mPublisher.addAll(elements);
+				}
+				mPublisher.flush();
+			} catch (Exception e) {
+				mError = e;
+				// keep taking records so the reader is never blocked
+				try {
+					while (mQueue.take() != END) {
+						// drop
+					}
+				} catch (InterruptedException ie) {
+					// stop
+				}
+			}
+		}
+	}
+}
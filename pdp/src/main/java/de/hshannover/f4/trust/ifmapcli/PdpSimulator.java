@@ -0,0 +1,372 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (pdp), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.hshannover.f4.trust.ifmapcli.common.ConnectionConfig;
+import de.hshannover.f4.trust.ifmapcli.common.LatencyHistogram;
+import de.hshannover.f4.trust.ifmapcli.common.PooledSession;
+import de.hshannover.f4.trust.ifmapcli.common.SessionPool;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapErrorCode;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapErrorResult;
+import de.hshannover.f4.trust.ifmapj.messages.PublishRequest;
+import de.hshannover.f4.trust.ifmapj.messages.Requests;
+
+/**
+ * Emulates the logins and logoffs of a population of endpoints against the<br/>
+ * MAPS, as a PDP would publish them. A login publishes the metadata of one<br/>
+ * user (see {@link Pdp#addUser}), a logoff deletes it again.<br/>
+ * <br/>
+ * Logins are started at a fixed rate over all sessions, going through the<br/>
+ * population in order; with a duration the population is cycled until the<br/>
+ * time is up, otherwise every user logs in once. If a hold time is given,<br/>
+ * each user logs off that long after its login; a login that is due while<br/>
+ * the user is still logged in is skipped. Every session is served by its<br/>
+ * own thread, which sends one login or logoff at a time. If a session fails<br/>
+ * (the connection broke or the session id is no longer valid), the thread<br/>
+ * continues on a new session from the pool, or stops if it cannot get one<br/>
+ * and hands its next login to the others. Logins and logoffs that are still<br/>
+ * due when the run ends are not sent, but reported.
+ *
+ */
+class PdpSimulator {
+
+	// how long an idle worker waits for a logoff before it looks again
+	private static final long POLL_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+	// errors reported on the console, the others are only counted
+	private static final int MAX_REPORTED_ERRORS = 10;
+
+	/**
+	 * An endpoint of the population.
+	 */
+	static class User {
+		private final String mName;
+		private final String mIp;
+		private final String mMac;
+
+		User(String name, String ip, String mac) {
+			mName = name;
+			mIp = ip;
+			mMac = mac;
+		}
+	}
+
+	/**
+	 * A logoff that is due at a certain time.
+	 */
+	private static class Logoff implements Delayed {
+		private final User mUser;
+		private final long mDue;
+
+		Logoff(User user, long due) {
+			mUser = user;
+			mDue = due;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(mDue - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed o) {
+			long other = ((Logoff) o).mDue;
+			return mDue < other ? -1 : (mDue == other ? 0 : 1);
+		}
+	}
+
+	private final ConnectionConfig mConfig;
+	private final List<User> mPopulation;
+	private final int mSessions;
+	private final long mInterval;
+	private final long mHold;
+	private final long mDuration;
+
+	private final AtomicLong mNextLogin = new AtomicLong();
+	// logins claimed by workers that stopped, sent before the next ones
+	private final Queue<Long> mReturnedLogins = new ConcurrentLinkedQueue<Long>();
+	// users with a due logoff, which must not log in again until it is sent
+	private final Set<User> mLoggedIn = Collections.newSetFromMap(new ConcurrentHashMap<User, Boolean>());
+	private final AtomicInteger mPendingLogoffs = new AtomicInteger();
+	private final DelayQueue<Logoff> mDueLogoffs = new DelayQueue<Logoff>();
+	private final AtomicInteger mErrors = new AtomicInteger();
+
+	private String mPublisherId;
+	private long mStart;
+	private long mEnd;
+	private long mTotalLogins;
+	private long mTotalLogoffs;
+	private long mTotalSkipped;
+	private long mElapsed;
+	private final LatencyHistogram mTotalLatency = new LatencyHistogram();
+
+	/**
+	 * @param rate - logins per second over all sessions, 0 for unlimited
+	 * @param holdSeconds - seconds after which a user logs off, 0 for never
+	 * @param durationSeconds - seconds to run, 0 for one login per user
+	 */
+	PdpSimulator(ConnectionConfig config, List<User> population, int sessions, double rate,
+			int holdSeconds, int durationSeconds) {
+		mConfig = config;
+		mPopulation = population;
+		mSessions = sessions;
+		mInterval = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+		mHold = TimeUnit.SECONDS.toNanos(holdSeconds);
+		mDuration = TimeUnit.SECONDS.toNanos(durationSeconds);
+	}
+
+	/**
+	 * Establishes the sessions, runs the simulation and releases the
+	 * sessions again.
+	 */
+	void run() throws Exception {
+		SessionPool pool = SessionPool.getDefault();
+		List<PooledSession> sessions = new ArrayList<PooledSession>(mSessions);
+		try {
+			for (int i = 0; i < mSessions; i++) {
+				sessions.add(pool.acquire(mConfig));
+			}
+		} catch (Exception e) {
+			for (PooledSession session : sessions) {
+				pool.release(session);
+			}
+			throw e;
+		}
+		// the access-request identifiers are named after the publisher id,
+		// which is the same for all sessions of the same client
+		mPublisherId = sessions.get(0).getSsrc().getPublisherId();
+
+		List<Worker> workers = new ArrayList<Worker>(mSessions);
+		List<Thread> threads = new ArrayList<Thread>(mSessions);
+		mStart = System.nanoTime();
+		mEnd = mDuration > 0 ? mStart + mDuration : 0;
+		for (int i = 0; i < mSessions; i++) {
+			Worker worker = new Worker(sessions.get(i));
+			Thread thread = new Thread(worker, "pdp-simulator-" + i);
+			workers.add(worker);
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		mElapsed = System.nanoTime() - mStart;
+
+		for (int i = 0; i < mSessions; i++) {
+			Worker worker = workers.get(i);
+			mTotalLogins += worker.mLogins;
+			mTotalLogoffs += worker.mLogoffs;
+			mTotalSkipped += worker.mSkipped;
+			mTotalLatency.add(worker.mLatency);
+			if (worker.mSession != null) {
+				pool.release(worker.mSession);
+			}
+		}
+	}
+
+	int getErrorCount() {
+		return mErrors.get();
+	}
+
+	void report(PrintStream out) {
+		double seconds = mElapsed / 1e9;
+		out.println("Logins:          " + mTotalLogins);
+		out.println("Logoffs:         " + mTotalLogoffs);
+		out.println("Skipped logins:  " + mTotalSkipped);
+		out.println("Logged in:       " + mPendingLogoffs.get());
+		out.println("Unsent logins:   " + mReturnedLogins.size());
+		out.println("Unsent logoffs:  " + mDueLogoffs.size());
+		out.println("Errors:          " + mErrors.get());
+		out.println("Total Duration:  " + String.format("%.3f", seconds) + " s");
+		out.println("Throughput:      " + String.format("%.1f", (mTotalLogins + mTotalLogoffs) / seconds)
+				+ " logins+logoffs/s");
+		out.println("Latency:         " + mTotalLatency.toPercentileString());
+	}
+
+	/**
+	 * @return the index of the next login in the population sequence, or -1
+	 *         if every user has logged in and there is no duration
+	 */
+	private long claimLogin() {
+		Long returned = mReturnedLogins.poll();
+		if (returned != null) {
+			return returned;
+		}
+		long login = mNextLogin.getAndIncrement();
+		return mDuration == 0 && login >= mPopulation.size() ? -1 : login;
+	}
+
+	/**
+	 * Sends the logins and logoffs on one session.
+	 */
+	private class Worker implements Runnable {
+
+		// null once a failed session could not be replaced
+		private PooledSession mSession;
+		private final LatencyHistogram mLatency = new LatencyHistogram();
+		private long mLogins;
+		private long mLogoffs;
+		private long mSkipped;
+
+		Worker(PooledSession session) {
+			mSession = session;
+		}
+
+		@Override
+		public void run() {
+			long login = claimLogin();
+			try {
+				while (mSession != null) {
+					long now = System.nanoTime();
+					if (mEnd > 0 && now >= mEnd) {
+						break;
+					}
+					if (login < 0) {
+						// pick up the logins of workers that stopped
+						login = claimLogin();
+					}
+					if (login < 0 && mPendingLogoffs.get() == 0) {
+						break;
+					}
+
+					long due = mStart + login * mInterval;
+					long wait = login >= 0 ? due - now : POLL_INTERVAL;
+					if (mEnd > 0) {
+						wait = Math.min(wait, mEnd - now);
+					}
+					Logoff logoff = wait > 0
+							? mDueLogoffs.poll(wait, TimeUnit.NANOSECONDS)
+							: mDueLogoffs.poll();
+					if (logoff != null) {
+						if (send(logoff.mUser, false)) {
+							mLogoffs++;
+						}
+						mLoggedIn.remove(logoff.mUser);
+						mPendingLogoffs.decrementAndGet();
+						continue;
+					}
+
+					if (login >= 0 && System.nanoTime() >= due) {
+						User user = mPopulation.get((int) (login % mPopulation.size()));
+						if (mHold > 0 && !mLoggedIn.add(user)) {
+							// the logoff of the previous login is still due
+							mSkipped++;
+						} else if (send(user, true)) {
+							mLogins++;
+							if (mHold > 0) {
+								mPendingLogoffs.incrementAndGet();
+								mDueLogoffs.put(new Logoff(user, System.nanoTime() + mHold));
+							}
+						} else if (mHold > 0) {
+							mLoggedIn.remove(user);
+						}
+						login = claimLogin();
+					}
+				}
+			} catch (InterruptedException e) {
+				// stop
+			}
+			if (mSession == null && login >= 0) {
+				mReturnedLogins.add(login);
+			}
+		}
+
+		/**
+		 * @return whether the login or logoff was published
+		 */
+		private boolean send(User user, boolean isUpdate) {
+			PublishRequest request = Requests.createPublishReq();
+			Pdp.addUser(request, isUpdate, mPublisherId, user.mName, user.mIp, user.mMac);
+
+			long start = System.nanoTime();
+			try {
+				mSession.publish(request);
+				mLatency.record(System.nanoTime() - start);
+				return true;
+			} catch (IfmapErrorResult e) {
+				error(user, isUpdate, e);
+				if (e.getErrorCode() == IfmapErrorCode.InvalidSessionID) {
+					replaceSession();
+				}
+				return false;
+			} catch (Exception e) {
+				// the connection failed, the session is of no use anymore
+				error(user, isUpdate, e);
+				replaceSession();
+				return false;
+			}
+		}
+
+		private void error(User user, boolean isUpdate, Exception e) {
+			if (mErrors.incrementAndGet() <= MAX_REPORTED_ERRORS) {
+				System.err.println((isUpdate ? "login" : "logoff") + " of " + user.mName
+						+ " failed: " + e);
+			}
+		}
+
+		/**
+		 * Replaces the session by a new one from the pool. If that fails,
+		 * the worker stops and the others take over its logins and logoffs.
+		 */
+		private void replaceSession() {
+			SessionPool pool = SessionPool.getDefault();
+			pool.invalidate(mSession);
+			mSession = null;
+			try {
+				mSession = pool.acquire(mConfig);
+			} catch (Exception e) {
+				System.err.println(Thread.currentThread().getName() + " stopped, no new session: " + e);
+			}
+		}
+	}
+}
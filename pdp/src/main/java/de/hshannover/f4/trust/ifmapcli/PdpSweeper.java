@@ -0,0 +1,207 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (pdp), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+import de.hshannover.f4.trust.ifmapcli.common.BatchRecords;
+import de.hshannover.f4.trust.ifmapcli.common.ChunkedPublisher;
+import de.hshannover.f4.trust.ifmapcli.common.PooledSession;
+import de.hshannover.f4.trust.ifmapj.binding.IfmapStrings;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapErrorResult;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapException;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifiers;
+import de.hshannover.f4.trust.ifmapj.messages.PublishElement;
+import de.hshannover.f4.trust.ifmapj.messages.PublishRequest;
+import de.hshannover.f4.trust.ifmapj.messages.Requests;
+import de.hshannover.f4.trust.ifmapj.messages.ResultItem;
+import de.hshannover.f4.trust.ifmapj.messages.SearchRequest;
+import de.hshannover.f4.trust.ifmapj.messages.SearchResult;
+
+/**
+ * Logs off a list of users in bulk, e.g. after a switch of a whole building<br/>
+ * was rebooted. Every record is either <code>username,ip,mac</code> as in a<br/>
+ * population file of <code>pdp simulate</code>, or <code>ar:name</code> for<br/>
+ * an access-request published by somebody else.<br/>
+ * <br/>
+ * The metadata of a user is removed with one delete per identifier or link,<br/>
+ * see {@link Pdp#addLogoff}, and the deletes of many users are sent in one<br/>
+ * publish request of up to <code>batchSize</code> elements. The links of an<br/>
+ * access-request are found with a search of depth 1. The list is read one<br/>
+ * record at a time, and at most <code>rate</code> users per second are<br/>
+ * logged off: a request is sent once it is full, but not before the users<br/>
+ * of the previous requests were due at that rate.
+ *
+ */
+class PdpSweeper {
+
+	private static final String AR_PREFIX = "ar:";
+
+	private static final List<String[]> FIELDS = BatchRecords.positionals("username", "ip", "mac");
+
+	// all metadata types published by pdp
+	private static final String[] PDP_TYPES = {
+		"access-request-device", "access-request-mac", "access-request-ip",
+		"authenticated-by", "authenticated-as", "capability", "device-attribute",
+		"device-characteristic", "role", "layer2-information", "wlan-information"
+	};
+
+	private static final String PDP_FILTER = Pdp.createFilter(PDP_TYPES);
+
+	private final PooledSession mSession;
+	private final ChunkedPublisher mPublisher;
+	private final int mBatchSize;
+	private final long mInterval;
+
+	private long mUsers;
+	// users in the requests sent so far, for the rate limit
+	private long mSentUsers;
+	private long mSearches;
+	private int mErrors;
+	private long mElapsed;
+
+	/**
+	 * @param rate - users per second, 0 for unlimited
+	 */
+	PdpSweeper(PooledSession session, int batchSize, double rate) {
+		mSession = session;
+		mPublisher = new ChunkedPublisher(session, batchSize);
+		mBatchSize = batchSize;
+		mInterval = rate > 0 ? (long) (1e9 / rate) : 0;
+	}
+
+	/**
+	 * Logs off every user read from <code>reader</code>.
+	 *
+	 * @param source - the name of the input for error messages
+	 */
+	void run(BufferedReader reader, String source)
+			throws IOException, InterruptedException, IfmapErrorResult, IfmapException {
+		String publisherId = mSession.getSsrc().getPublisherId();
+		long start = System.nanoTime();
+		String line;
+		int lineNumber = 0;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			if (!BatchRecords.isRecord(line)) {
+				continue;
+			}
+			PublishRequest request = Requests.createPublishReq();
+			try {
+				List<String> record = BatchRecords.toArguments(line, FIELDS);
+				if (record.size() == 1 && record.get(0).startsWith(AR_PREFIX)) {
+					addAccessRequest(request, record.get(0).substring(AR_PREFIX.length()));
+				} else if (record.size() == 3) {
+					Pdp.addLogoff(request, publisherId, record.get(0), record.get(1), record.get(2));
+				} else {
+					throw new IllegalArgumentException("expected username, ip and mac or ar:name");
+				}
+			} catch (RuntimeException e) {
+				mErrors++;
+				System.err.println(source + ":" + lineNumber + ": " + e.getMessage());
+				continue;
+			}
+
+			List<PublishElement> elements = request.getPublishElements();
+			boolean full = mPublisher.getPendingCount() + elements.size() >= mBatchSize;
+			if (mInterval > 0 && full) {
+				// the user completes a request, which may leave once the
+				// users before it are due
+				long wait = start + mSentUsers * mInterval - System.nanoTime();
+				if (wait > 0) {
+					Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+				}
+			}
+			mPublisher.addAll(elements);
+			mUsers++;
+			if (full) {
+				mSentUsers = mUsers;
+			}
+		}
+		mPublisher.flush();
+		mElapsed = System.nanoTime() - start;
+	}
+
+	int getErrorCount() {
+		return mErrors;
+	}
+
+	void report(PrintStream out) {
+		double seconds = mElapsed / 1e9;
+		out.println("Users:           " + mUsers);
+		out.println("Elements:        " + mPublisher.getElementCount() + " in "
+				+ mPublisher.getRequestCount() + " requests");
+		out.println("Searches:        " + mSearches);
+		out.println("Errors:          " + mErrors);
+		out.println("Total Duration:  " + String.format("%.3f", seconds) + " s");
+		out.println("Throughput:      " + String.format("%.1f", mUsers / seconds) + " users/s");
+	}
+
+	/**
+	 * Add one delete for the access-request and for each of its links that
+	 * carry pdp metadata.
+	 */
+	private void addAccessRequest(PublishRequest request, String name)
+			throws IfmapErrorResult, IfmapException {
+		Identifier accessRequest = Identifiers.createAr(name);
+		SearchRequest search = Requests.createSearchReq();
+		search.setStartIdentifier(accessRequest);
+		search.setMaxDepth(1);
+		search.setMatchLinksFilter(PDP_FILTER);
+		search.setResultFilter(PDP_FILTER);
+		search.addNamespaceDeclaration(IfmapStrings.STD_METADATA_PREFIX, IfmapStrings.STD_METADATA_NS_URI);
+		SearchResult result = mSession.search(search);
+		mSearches++;
+
+		for (ResultItem item : result.getResultItems()) {
+			if (item.getMetadata().isEmpty()) {
+				continue;
+			}
+			Identifier first = item.getIdentifier1();
+			Identifier second = item.getIdentifier2();
+			request.addPublishElement(first != null && second != null
+					? Pdp.createDelete(first, second, PDP_TYPES)
+					: Pdp.createDelete(first != null ? first : second, null, PDP_TYPES));
+		}
+	}
+}
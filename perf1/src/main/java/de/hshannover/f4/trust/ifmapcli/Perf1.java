@@ -38,22 +38,22 @@
  */
 package de.hshannover.f4.trust.ifmapcli;
 
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.sourceforge.argparse4j.inf.ArgumentParser;
-
-import org.w3c.dom.Document;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
 
 import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
+import de.hshannover.f4.trust.ifmapcli.common.LatencyHistogram;
+import de.hshannover.f4.trust.ifmapcli.common.MetadataTemplate;
 import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
 import de.hshannover.f4.trust.ifmapj.channel.SSRC;
 import de.hshannover.f4.trust.ifmapj.identifier.Device;
-import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifiers;
-import de.hshannover.f4.trust.ifmapj.identifier.IdentityType;
-import de.hshannover.f4.trust.ifmapj.messages.PublishRequest;
-import de.hshannover.f4.trust.ifmapj.messages.PublishUpdate;
-import de.hshannover.f4.trust.ifmapj.messages.Requests;
 
 /**
  * This is a class to test performance of an IF-MAP 2.0 server. It was created
@@ -66,12 +66,42 @@ import de.hshannover.f4.trust.ifmapj.messages.Requests;
  * messages - each publish will contain "update" elements to create a link with
  * the parent - lastly, do a poll
  *
+ * With --sessions the requests are spread over several concurrent sessions,
+ * each with its own SSRC and thread, in order to measure the throughput of
+ * the server instead of the round-trip latency of a single client. --rate,
+ * --ramp-up and --duration control the offered load.
+ *
+ * Latencies are reported as percentiles per sprint and overall; --histogram
+ * writes the overall distribution to a file for comparing server releases.
+ *
+ * By default all requests are built before the test starts. For large runs
+ * --generate lazy builds each request right before it is sent and
+ * --generate producer builds them on a separate thread per session that
+ * stays at most --queue-size requests ahead.
+ *
+ * With --open-loop the requests are sent at --rate regardless of how long
+ * the previous requests took, and latencies are measured from the intended
+ * send time. Since every session waits for its responses, use enough
+ * sessions to keep up with the target rate.
+ *
+ * With --end-to-end the scenario above is run: a separate session
+ * subscribes to the parent node and polls, and for every update the time
+ * from sending the publish request to receiving the poll result that
+ * contains it is reported. The latency distribution of the notifications
+ * is written to the --histogram file with an additional .e2e suffix.
+ *
  * @author ib
  *
  */
 public class Perf1 extends AbstractClient {
 
-	private static int counter = 0;
+	private static final String GENERATE_UPFRONT = "upfront";
+	private static final String GENERATE_PRODUCER = "producer";
+
+	// how long to wait for outstanding notifications after the last publish
+	private static final long END_TO_END_TIMEOUT = 30000;
+
+	private static AtomicInteger counter = new AtomicInteger();
 
 	public static void main(String[] args) {
 		command = "perf1";
@@ -83,74 +113,190 @@ public class Perf1 extends AbstractClient {
 		ParserUtil.addPerf1NumberRequests(parser);
 		ParserUtil.addPerf1NumberUpdates(parser);
 		ParserUtil.addPerf1NumberSprints(parser);
+		ParserUtil.addPerf1Sessions(parser);
+		ParserUtil.addPerf1Rate(parser);
+		ParserUtil.addPerf1RampUp(parser);
+		ParserUtil.addPerf1Duration(parser);
+		ParserUtil.addPerf1Histogram(parser);
+		ParserUtil.addPerf1Generate(parser);
+		ParserUtil.addPerf1QueueSize(parser);
+		ParserUtil.addPerf1OpenLoop(parser);
+		ParserUtil.addPerf1EndToEnd(parser);
 
 		parseParameters(parser, args);
 		
-		printParameters(new String[] {KEY_NUMBER_REQUESTS, KEY_NUMBER_UPDATES, KEY_NUMBER_SPRINTS});
+		printParameters(new String[] {KEY_NUMBER_REQUESTS, KEY_NUMBER_UPDATES, KEY_NUMBER_SPRINTS,
+				KEY_SESSIONS, KEY_RATE, KEY_RAMP_UP, KEY_DURATION, KEY_HISTOGRAM, KEY_GENERATE, KEY_QUEUE_SIZE,
+				KEY_OPEN_LOOP, KEY_END_TO_END});
 
 		int numberRequests = resource.getInt(KEY_NUMBER_REQUESTS);
 		int numberUpdates = resource.getInt(KEY_NUMBER_UPDATES);
-		int sizeSprint = resource.getInt(KEY_NUMBER_SPRINTS);
-		
-		int numberOfSprints;
-		if (sizeSprint > numberRequests){
-			// there is only one sprint
-			numberOfSprints = 1;
-			sizeSprint = numberRequests;
-		} else {
-			numberOfSprints = numberRequests / sizeSprint;
+		int sizeSprint = Math.max(1, resource.getInt(KEY_NUMBER_SPRINTS));
+		int numberSessions = Math.max(1, resource.getInt(KEY_SESSIONS));
+		double rate = resource.getDouble(KEY_RATE);
+		long rampUp = resource.getInt(KEY_RAMP_UP) * 1000000000L;
+		long duration = resource.getInt(KEY_DURATION) * 1000000000L;
+		String generate = resource.getString(KEY_GENERATE);
+		int queueSize = Math.max(1, resource.getInt(KEY_QUEUE_SIZE));
+		boolean openLoop = resource.getBoolean(KEY_OPEN_LOOP);
+		boolean endToEnd = resource.getBoolean(KEY_END_TO_END);
+
+		if (openLoop && rate <= 0) {
+			parser.handleError(new ArgumentParserException("--open-loop requires a --rate", parser));
+			exit(1);
 		}
-		
+
 		Device rootNode = Identifiers.createDev("parentNode");
-		Document authBy = mf.createAuthBy();
-		ArrayList<PublishRequest> publishRequests = new ArrayList<PublishRequest>(1000);
+		MetadataTemplate authBy = new MetadataTemplate(mf.createAuthBy());
 
-		PublishRequest pr;
-		PublishUpdate pu;
-		Identifier id;
-		
-		// create a certain number of publish requests
-		for (int i = 0; i < numberRequests; i++) {
-			pr = Requests.createPublishReq();
-			// create a certain number of publish updates
-			for (int j = 0; j < numberUpdates; j++) {
-				pu = Requests.createPublishUpdate();
-				// generate new Identifier
-				id = Identifiers.createIdentity(IdentityType.userName,
-						new Integer(Perf1.counter++).toString());
-				pu.setIdentifier1(rootNode);
-				pu.setIdentifier2(id);
-				pu.addMetadata(authBy);
-				pr.addPublishElement(pu);
+		// identities of earlier runs must not be mistaken for this one's
+		String namePrefix = endToEnd ? "perf1-" + System.currentTimeMillis() + "-" : "";
+		Perf1RequestSource.Generator generator = new Perf1RequestSource.Generator(rootNode,
+				authBy, numberUpdates, counter, namePrefix);
+
+		// the requests are divided between the sessions
+		List<Perf1RequestSource> sources = new ArrayList<Perf1RequestSource>();
+		for (int k = 0; k < numberSessions; k++) {
+			int share = numberRequests / numberSessions + (k < numberRequests % numberSessions ? 1 : 0);
+			if (share == 0 && (duration == 0 || !GENERATE_UPFRONT.equals(generate))) {
+				// nothing to do for this session
+				sources.add(null);
+			} else if (GENERATE_UPFRONT.equals(generate)) {
+				sources.add(Perf1RequestSource.upfront(generator, share, duration > 0));
+			} else {
+				Perf1RequestSource source = Perf1RequestSource.lazy(generator,
+						duration > 0 ? -1 : share);
+				if (GENERATE_PRODUCER.equals(generate)) {
+					source = Perf1RequestSource.producer(source, queueSize, "perf1-producer-" + k);
+				}
+				sources.add(source);
 			}
-			publishRequests.add(pr);
 		}
-		
+
+		List<Perf1Session> sessions = new ArrayList<Perf1Session>();
+		Perf1Subscriber subscriber = null;
 		try {
-			SSRC ssrc = createSSRC();
-			ssrc.newSession();
+			Thread pollThread = null;
+			if (endToEnd) {
+				SSRC ssrc = createSSRC();
+				ssrc.newSession();
+				subscriber = new Perf1Subscriber(ssrc, namePrefix, numberUpdates);
+				subscriber.subscribe(rootNode);
+				pollThread = new Thread(subscriber, "perf1-poll");
+				pollThread.start();
+			}
 
-			long start = System.currentTimeMillis();
+			List<SSRC> ssrcs = new ArrayList<SSRC>();
+			for (int k = 0; k < numberSessions; k++) {
+				SSRC ssrc = createSSRC();
+				ssrc.newSession();
+				ssrcs.add(ssrc);
+			}
 
-			for (int i = 0; i < numberOfSprints; i++) {
-				System.out.print("Do publish sprint " + i);
-				long startSprint = System.currentTimeMillis();
-				for (int j = i * sizeSprint; j < (i * sizeSprint) + sizeSprint; j++) {
-					pr = publishRequests.get(j);
-					ssrc.publish(pr);
+			long interval = rate > 0 ? (long) (numberSessions * 1000000000L / rate) : 0;
+			long start = System.nanoTime();
+			long deadline = duration > 0 ? start + rampUp + duration : 0;
+
+			List<Thread> threads = new ArrayList<Thread>();
+			for (int k = 0; k < numberSessions; k++) {
+				if (sources.get(k) == null) {
+					continue;
+				}
+				long sessionStart = start + rampUp * k / numberSessions;
+				if (openLoop) {
+					// request i of the run is due at start + i / rate
+					sessionStart += interval * k / numberSessions;
 				}
-				long endSprint = System.currentTimeMillis();
-				System.out.print(" done! -> ");
-				System.out.println("Duration: " + (endSprint - startSprint) + "ms");
+				Perf1Session session = new Perf1Session(k, ssrcs.get(k), sources.get(k),
+						sizeSprint, sessionStart, interval, deadline, openLoop, subscriber,
+						numberSessions > 1);
+				sessions.add(session);
+				Thread thread = new Thread(session, "perf1-session-" + k);
+				threads.add(thread);
+				thread.start();
 			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+
+			long end = System.nanoTime();
+			LatencyHistogram histogram = report(sessions, end - start);
+			writeHistogram(histogram, resource.getString(KEY_HISTOGRAM));
+
+			if (subscriber != null) {
+				long updates = 0;
+				for (Perf1Session session : sessions) {
+					updates += session.getUpdateCount();
+				}
+				subscriber.await(updates, END_TO_END_TIMEOUT);
+				subscriber.stop();
+				pollThread.join();
 
-			long end = System.currentTimeMillis();
-			System.out.println("Total Duration: " + (end - start) + "ms");
+				LatencyHistogram e2e = subscriber.getHistogram();
+				System.out.println(String.format("End-to-end: %d of %d updates notified, latency avg %.2fms, %s",
+						e2e.getTotalCount(), updates, e2e.getMean() / 1000000.0,
+						e2e.toPercentileString()));
+				if (resource.getString(KEY_HISTOGRAM) != null) {
+					writeHistogram(e2e, resource.getString(KEY_HISTOGRAM) + ".e2e");
+				}
+			}
 
-			ssrc.endSession();
+			for (SSRC ssrc : ssrcs) {
+				ssrc.endSession();
+			}
 		} catch (Exception e) {
 			e.printStackTrace();
-			System.exit(-1);
+			exit(-1);
+		}
+
+		for (Perf1Session session : sessions) {
+			if (session.getError() != null) {
+				exit(-1);
+			}
+		}
+		if (subscriber != null && subscriber.getError() != null) {
+			exit(-1);
+		}
+	}
+
+	/**
+	 * Prints the results of all sessions.
+	 *
+	 * @return the merged publish latencies of all sessions
+	 */
+	private static LatencyHistogram report(List<Perf1Session> sessions, long totalTime) {
+		LatencyHistogram histogram = new LatencyHistogram();
+		long requests = 0;
+		long updates = 0;
+		for (Perf1Session session : sessions) {
+			System.out.println(session.getSummary());
+			histogram.add(session.getHistogram());
+			requests += session.getCount();
+			updates += session.getUpdateCount();
+		}
+		if (sessions.size() > 1) {
+			System.out.println(String.format("All sessions: latency avg %.2fms, %s",
+					histogram.getMean() / 1000000.0, histogram.toPercentileString()));
+		}
+
+		double seconds = totalTime / 1000000000.0;
+		System.out.println("Total Duration: " + (totalTime / 1000000) + "ms");
+		System.out.println(String.format("Throughput: %d requests, %d updates -> %.1f requests/s, %.1f updates/s",
+				requests, updates, requests / seconds, updates / seconds));
+		return histogram;
+	}
+
+	private static void writeHistogram(LatencyHistogram histogram, String file)
+			throws FileNotFoundException {
+		if (file == null) {
+			return;
+		}
+		PrintStream out = new PrintStream(file);
+		try {
+			histogram.writePercentileDistribution(out);
+		} finally {
+			out.close();
 		}
+		System.out.println("Latency distribution written to " + file);
 	}
 }
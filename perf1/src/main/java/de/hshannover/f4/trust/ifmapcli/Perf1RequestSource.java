@@ -0,0 +1,263 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (perf1), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.hshannover.f4.trust.ifmapcli.common.MetadataTemplate;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifiers;
+import de.hshannover.f4.trust.ifmapj.identifier.IdentityType;
+import de.hshannover.f4.trust.ifmapj.messages.PublishRequest;
+import de.hshannover.f4.trust.ifmapj.messages.PublishUpdate;
+import de.hshannover.f4.trust.ifmapj.messages.Requests;
+
+/**
+ * Supplies the {@link PublishRequest}s of one {@link Perf1Session}. A source<br/>
+ * either builds all requests before the test starts ({@link #upfront}),<br/>
+ * builds each request right before it is sent ({@link #lazy}) or builds<br/>
+ * them on a producer thread that runs ahead by a bounded number of<br/>
+ * requests ({@link #producer}).<br/>
+ * <br/>
+ * Every request links <code>numberUpdates</code> new identities to the root<br/>
+ * node. The identity names are an optional prefix and a number taken from a<br/>
+ * counter shared by all sources; each request gets a block of consecutive<br/>
+ * numbers.
+ *
+ */
+abstract class Perf1RequestSource {
+
+	/**
+	 * @return the next request or <code>null</code> if there are no more
+	 */
+	abstract PublishRequest next() throws InterruptedException;
+
+	/**
+	 * Releases the resources of this source, e.g. stops a producer thread.
+	 */
+	void close() {
+	}
+
+	/**
+	 * Builds <code>count</code> requests now. With <code>repeat</code> the
+	 * requests are handed out over and over again.
+	 */
+	static Perf1RequestSource upfront(Generator generator, int count, boolean repeat) {
+		List<PublishRequest> requests = new ArrayList<PublishRequest>(count);
+		for (int i = 0; i < count; i++) {
+			requests.add(generator.create());
+		}
+		return new Upfront(requests, repeat);
+	}
+
+	/**
+	 * Builds each request when it is asked for.
+	 *
+	 * @param count - number of requests, -1 for no limit
+	 */
+	static Perf1RequestSource lazy(Generator generator, long count) {
+		return new Lazy(generator, count);
+	}
+
+	/**
+	 * Takes the requests from <code>source</code> on a separate thread that
+	 * keeps at most <code>queueSize</code> requests ready.
+	 */
+	static Perf1RequestSource producer(Perf1RequestSource source, int queueSize, String name) {
+		Producer producer = new Producer(source, queueSize);
+		Thread thread = new Thread(producer, name);
+		thread.setDaemon(true);
+		producer.mThread = thread;
+		thread.start();
+		return producer;
+	}
+
+	/**
+	 * Creates the requests of a Perf1 run.
+	 */
+	static class Generator {
+
+		private final Identifier mRootNode;
+		private final MetadataTemplate mMetadata;
+		private final int mNumberUpdates;
+		private final AtomicInteger mCounter;
+		private final String mNamePrefix;
+
+		Generator(Identifier rootNode, MetadataTemplate metadata, int numberUpdates,
+				AtomicInteger counter, String namePrefix) {
+			mRootNode = rootNode;
+			mMetadata = metadata;
+			mNumberUpdates = numberUpdates;
+			mCounter = counter;
+			mNamePrefix = namePrefix;
+		}
+
+		PublishRequest create() {
+			PublishRequest pr = Requests.createPublishReq();
+			int first = mCounter.getAndAdd(mNumberUpdates);
+			// create a certain number of publish updates
+			for (int j = 0; j < mNumberUpdates; j++) {
+				PublishUpdate pu = Requests.createPublishUpdate();
+				// generate new Identifier
+				Identifier id = Identifiers.createIdentity(IdentityType.userName,
+						mNamePrefix + (first + j));
+				pu.setIdentifier1(mRootNode);
+				pu.setIdentifier2(id);
+				// the sessions marshal their requests concurrently, so
+				// every update gets its own copy of the metadata
+				pu.addMetadata(mMetadata.create());
+				pr.addPublishElement(pu);
+			}
+			return pr;
+		}
+	}
+
+	private static class Upfront extends Perf1RequestSource {
+
+		private final List<PublishRequest> mRequests;
+		private final boolean mRepeat;
+		private int mNext;
+
+		Upfront(List<PublishRequest> requests, boolean repeat) {
+			mRequests = requests;
+			mRepeat = repeat;
+		}
+
+		@Override
+		PublishRequest next() {
+			if (mNext == mRequests.size()) {
+				if (!mRepeat || mRequests.isEmpty()) {
+					return null;
+				}
+				mNext = 0;
+			}
+			return mRequests.get(mNext++);
+		}
+	}
+
+	private static class Lazy extends Perf1RequestSource {
+
+		private final Generator mGenerator;
+		private long mRemaining;
+
+		Lazy(Generator generator, long count) {
+			mGenerator = generator;
+			mRemaining = count;
+		}
+
+		@Override
+		PublishRequest next() {
+			if (mRemaining == 0) {
+				return null;
+			}
+			if (mRemaining > 0) {
+				mRemaining--;
+			}
+			return mGenerator.create();
+		}
+	}
+
+	private static class Producer extends Perf1RequestSource implements Runnable {
+
+		// marks the end of the requests, a queue cannot hold null
+		private static final PublishRequest END = Requests.createPublishReq();
+
+		private final Perf1RequestSource mSource;
+		private final BlockingQueue<PublishRequest> mQueue;
+		private Thread mThread;
+		private boolean mDone;
+		// thrown by the source, passed on to the consumer after END
+		private volatile Throwable mError;
+
+		Producer(Perf1RequestSource source, int queueSize) {
+			mSource = source;
+			mQueue = new ArrayBlockingQueue<PublishRequest>(queueSize);
+		}
+
+		@Override
+		public void run() {
+			try {
+				PublishRequest pr;
+				while ((pr = mSource.next()) != null) {
+					mQueue.put(pr);
+				}
+			} catch (InterruptedException e) {
+				// closed by the consumer
+				return;
+			} catch (Throwable e) {
+				mError = e;
+			}
+			try {
+				mQueue.put(END);
+			} catch (InterruptedException e) {
+				// closed by the consumer
+			}
+		}
+
+		@Override
+		PublishRequest next() throws InterruptedException {
+			if (mDone) {
+				return null;
+			}
+			PublishRequest pr = mQueue.take();
+			if (pr == END) {
+				mDone = true;
+				if (mError instanceof Error) {
+					throw (Error) mError;
+				} else if (mError instanceof RuntimeException) {
+					throw (RuntimeException) mError;
+				} else if (mError != null) {
+					throw new RuntimeException(mError);
+				}
+				return null;
+			}
+			return pr;
+		}
+
+		@Override
+		void close() {
+			mThread.interrupt();
+			mSource.close();
+		}
+	}
+}
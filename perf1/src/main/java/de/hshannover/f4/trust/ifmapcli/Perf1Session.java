@@ -0,0 +1,236 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (perf1), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli;
+
+import de.hshannover.f4.trust.ifmapcli.common.LatencyHistogram;
+import de.hshannover.f4.trust.ifmapj.channel.SSRC;
+import de.hshannover.f4.trust.ifmapj.messages.PublishRequest;
+
+/**
+ * One session of a {@link Perf1} run. It publishes the requests of its<br/>
+ * {@link Perf1RequestSource} on its own SSRC, optionally paced to a fixed<br/>
+ * interval, and records the latency of every publish in a<br/>
+ * {@link LatencyHistogram} per sprint and overall.<br/>
+ * <br/>
+ * In closed-loop mode a late response delays all following requests, so<br/>
+ * the latency is measured from the actual send time. In open-loop mode<br/>
+ * every request has a fixed intended send time. A session that falls<br/>
+ * behind sends the late requests right away, and their latency is measured<br/>
+ * from the intended send time, so that server stalls show up in the<br/>
+ * latencies instead of silently lowering the offered load.<br/>
+ * <br/>
+ * All points in time are {@link System#nanoTime()} values.
+ *
+ */
+class Perf1Session implements Runnable {
+
+	private final int mId;
+	private final SSRC mSsrc;
+	private final Perf1RequestSource mSource;
+	private final int mSprintSize;
+	private final long mStartTime;
+	private final long mInterval;
+	private final long mDeadline;
+	private final boolean mOpenLoop;
+	private final Perf1Subscriber mSubscriber;
+	private final String mPrefix;
+
+	private final LatencyHistogram mSprintHistogram = new LatencyHistogram();
+	private final LatencyHistogram mHistogram = new LatencyHistogram();
+	private long mCount;
+	private long mUpdateCount;
+	private long mLateCount;
+	private long mFinishTime;
+	private Exception mError;
+
+	/**
+	 * @param id - number of the session, used for output
+	 * @param ssrc - an SSRC with an established session
+	 * @param source - supplies the requests to publish
+	 * @param sprintSize - number of requests after which a sprint is reported
+	 * @param startTime - when to send the first request
+	 * @param interval - time between two requests, 0 for no pacing
+	 * @param deadline - when to stop, 0 to stop after all requests
+	 * @param openLoop - whether the requests are scheduled independently of
+	 *            the responses; requires an interval
+	 * @param subscriber - is told about every request before it is sent,
+	 *            may be <code>null</code>
+	 * @param printSessionId - whether to prefix the output with the id
+	 */
+	Perf1Session(int id, SSRC ssrc, Perf1RequestSource source, int sprintSize,
+			long startTime, long interval, long deadline, boolean openLoop,
+			Perf1Subscriber subscriber, boolean printSessionId) {
+		mId = id;
+		mSsrc = ssrc;
+		mSource = source;
+		mSprintSize = sprintSize;
+		mStartTime = startTime;
+		mInterval = interval;
+		mDeadline = deadline;
+		mOpenLoop = openLoop && interval > 0;
+		mSubscriber = subscriber;
+		mPrefix = printSessionId ? "Session " + id + ": " : "";
+	}
+
+	@Override
+	public void run() {
+		try {
+			sleepUntil(mStartTime);
+
+			long next = mOpenLoop ? mStartTime : System.nanoTime();
+			int sprint = 0;
+			int inSprint = 0;
+			long sprintStart = next;
+
+			while (mDeadline == 0 || System.nanoTime() < mDeadline) {
+				PublishRequest pr = mSource.next();
+				if (pr == null) {
+					break;
+				}
+				long intendedTime = next;
+				if (mInterval > 0) {
+					sleepUntil(next);
+					if (mOpenLoop) {
+						next += mInterval;
+					} else {
+						// closed loop: a late response delays the following requests
+						next = Math.max(next, System.nanoTime()) + mInterval;
+					}
+				}
+
+				long sendTime = System.nanoTime();
+				if (mOpenLoop && sendTime - intendedTime > mInterval) {
+					mLateCount++;
+				}
+				long measureFrom = mOpenLoop ? intendedTime : sendTime;
+				if (mSubscriber != null) {
+					mSubscriber.sent(pr, measureFrom);
+				}
+				mSsrc.publish(pr);
+				long latency = System.nanoTime() - measureFrom;
+				record(latency, pr.getPublishElements().size());
+
+				if (++inSprint == mSprintSize) {
+					long now = System.nanoTime();
+					printSprint(sprint++, now - sprintStart);
+					inSprint = 0;
+					sprintStart = now;
+				}
+			}
+			if (inSprint > 0) {
+				printSprint(sprint, System.nanoTime() - sprintStart);
+			}
+		} catch (Exception e) {
+			mError = e;
+			System.err.println(mPrefix + "publish failed after " + mCount + " requests");
+			e.printStackTrace();
+		} finally {
+			mSource.close();
+			// latencies of an interrupted sprint
+			mHistogram.add(mSprintHistogram);
+			mSprintHistogram.reset();
+			mFinishTime = System.nanoTime();
+		}
+	}
+
+	int getId() {
+		return mId;
+	}
+
+	SSRC getSsrc() {
+		return mSsrc;
+	}
+
+	long getCount() {
+		return mCount;
+	}
+
+	LatencyHistogram getHistogram() {
+		return mHistogram;
+	}
+
+	long getUpdateCount() {
+		return mUpdateCount;
+	}
+
+	long getLateCount() {
+		return mLateCount;
+	}
+
+	long getFinishTime() {
+		return mFinishTime;
+	}
+
+	Exception getError() {
+		return mError;
+	}
+
+	String getSummary() {
+		if (mCount == 0) {
+			return mPrefix + "no requests";
+		}
+		String summary = String.format("%s%d requests, %d updates, latency avg %.2fms, %s",
+				mPrefix, mCount, mUpdateCount, mHistogram.getMean() / 1000000.0,
+				mHistogram.toPercentileString());
+		if (mOpenLoop) {
+			summary += ", " + mLateCount + " requests behind schedule";
+		}
+		return summary;
+	}
+
+	private void record(long latency, int updates) {
+		mCount++;
+		mUpdateCount += updates;
+		mSprintHistogram.record(latency);
+	}
+
+	private void printSprint(int sprint, long duration) {
+		System.out.println(mPrefix + "publish sprint " + sprint + " done! -> Duration: "
+				+ (duration / 1000000) + "ms, " + mSprintHistogram.toPercentileString());
+		mHistogram.add(mSprintHistogram);
+		mSprintHistogram.reset();
+	}
+
+	static void sleepUntil(long time) throws InterruptedException {
+		long delay = time - System.nanoTime();
+		if (delay > 0) {
+			Thread.sleep(delay / 1000000, (int) (delay % 1000000));
+		}
+	}
+}
@@ -0,0 +1,254 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (perf1), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.hshannover.f4.trust.ifmapcli.common.LatencyHistogram;
+import de.hshannover.f4.trust.ifmapj.channel.ARC;
+import de.hshannover.f4.trust.ifmapj.channel.SSRC;
+import de.hshannover.f4.trust.ifmapj.exception.EndSessionException;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapErrorResult;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapException;
+import de.hshannover.f4.trust.ifmapj.exception.InitializationException;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+import de.hshannover.f4.trust.ifmapj.identifier.Identity;
+import de.hshannover.f4.trust.ifmapj.messages.PollResult;
+import de.hshannover.f4.trust.ifmapj.messages.PublishElement;
+import de.hshannover.f4.trust.ifmapj.messages.PublishRequest;
+import de.hshannover.f4.trust.ifmapj.messages.Requests;
+import de.hshannover.f4.trust.ifmapj.messages.ResultItem;
+import de.hshannover.f4.trust.ifmapj.messages.SearchResult;
+import de.hshannover.f4.trust.ifmapj.messages.SubscribeRequest;
+import de.hshannover.f4.trust.ifmapj.messages.SubscribeUpdate;
+
+/**
+ * The subscribing side of an end-to-end {@link Perf1} run. It subscribes<br/>
+ * to the root node with a max-depth of 1 on a session of its own and polls<br/>
+ * on its ARC. For every link to one of the published identities that shows<br/>
+ * up in an update result, the time from sending the publish request to<br/>
+ * receiving the poll result is recorded.<br/>
+ * <br/>
+ * The identity names are the name prefix followed by a sequence number, and<br/>
+ * each request holds the block of <code>numberUpdates</code> numbers that<br/>
+ * starts at a multiple of <code>numberUpdates</code> (see<br/>
+ * {@link Perf1RequestSource.Generator}). So the first number of a block<br/>
+ * identifies the request that carried an update.
+ *
+ */
+class Perf1Subscriber implements Runnable {
+
+	private static final String SUBSCRIPTION_NAME = "perf1";
+
+	private final SSRC mSsrc;
+	private final ARC mArc;
+	private final String mNamePrefix;
+	private final int mNumberUpdates;
+
+	// first sequence number of a request -> send time
+	private final Map<Integer, Long> mSendTimes = new ConcurrentHashMap<Integer, Long>();
+	// first sequence number of a request -> updates received so far, poll thread only
+	private final Map<Integer, Integer> mReceived = new HashMap<Integer, Integer>();
+
+	private final LatencyHistogram mHistogram = new LatencyHistogram();
+	private long mNotificationCount;
+	private volatile boolean mStopped;
+	private Exception mError;
+
+	/**
+	 * @param ssrc - an SSRC with an established session
+	 */
+	Perf1Subscriber(SSRC ssrc, String namePrefix, int numberUpdates)
+			throws InitializationException {
+		mSsrc = ssrc;
+		mArc = ssrc.getArc();
+		mNamePrefix = namePrefix;
+		mNumberUpdates = Math.max(1, numberUpdates);
+	}
+
+	void subscribe(Identifier rootNode) throws IfmapErrorResult, IfmapException {
+		SubscribeRequest sr = Requests.createSubscribeReq();
+		SubscribeUpdate su = Requests.createSubscribeUpdate();
+		su.setName(SUBSCRIPTION_NAME);
+		su.setStartIdentifier(rootNode);
+		su.setMaxDepth(1);
+		sr.addSubscribeElement(su);
+		mSsrc.subscribe(sr);
+	}
+
+	/**
+	 * Notes the time at which <code>pr</code> was sent. Must be called
+	 * before the request is published.
+	 */
+	void sent(PublishRequest pr, long time) {
+		List<PublishElement> elements = pr.getPublishElements();
+		if (!elements.isEmpty()) {
+			int seq = sequenceNumber(elements.get(0).getIdentifier2());
+			if (seq >= 0) {
+				mSendTimes.put(seq, time);
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (!mStopped) {
+				PollResult pollResult = mArc.poll();
+				long receiveTime = System.nanoTime();
+				if (!pollResult.getErrorResults().isEmpty()) {
+					throw pollResult.getErrorResults().iterator().next();
+				}
+				for (SearchResult result : pollResult.getResults()) {
+					if (result.getType() == SearchResult.Type.updateResult) {
+						received(result, receiveTime);
+					}
+				}
+			}
+		} catch (EndSessionException e) {
+			if (!mStopped) {
+				mError = e;
+			}
+		} catch (Exception e) {
+			if (!mStopped) {
+				mError = e;
+				System.err.println("polling failed after " + getNotificationCount() + " notifications");
+				e.printStackTrace();
+			}
+		} finally {
+			synchronized (this) {
+				mStopped = true;
+				notifyAll();
+			}
+		}
+	}
+
+	private void received(SearchResult result, long receiveTime) {
+		int count = 0;
+		for (ResultItem item : result.getResultItems()) {
+			int seq = sequenceNumber(item.getIdentifier2());
+			if (seq < 0) {
+				seq = sequenceNumber(item.getIdentifier1());
+			}
+			if (seq < 0) {
+				continue;
+			}
+
+			int first = seq - seq % mNumberUpdates;
+			Long sendTime = mSendTimes.get(first);
+			if (sendTime == null) {
+				continue;
+			}
+			mHistogram.record(receiveTime - sendTime);
+			count++;
+
+			Integer received = mReceived.get(first);
+			int total = received == null ? 1 : received + 1;
+			if (total == mNumberUpdates) {
+				mReceived.remove(first);
+				mSendTimes.remove(first);
+			} else {
+				mReceived.put(first, total);
+			}
+		}
+		synchronized (this) {
+			mNotificationCount += count;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Waits until <code>expected</code> notifications were received or the
+	 * timeout expired.
+	 *
+	 * @return whether all notifications were received
+	 */
+	synchronized boolean await(long expected, long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (mNotificationCount < expected && !mStopped) {
+			long left = deadline - System.currentTimeMillis();
+			if (left <= 0) {
+				break;
+			}
+			wait(left);
+		}
+		return mNotificationCount >= expected;
+	}
+
+	/**
+	 * Stops polling by ending the session of the subscriber.
+	 */
+	void stop() throws IfmapErrorResult, IfmapException {
+		mStopped = true;
+		mSsrc.endSession();
+	}
+
+	synchronized long getNotificationCount() {
+		return mNotificationCount;
+	}
+
+	/**
+	 * Only valid after the polling thread has finished.
+	 */
+	LatencyHistogram getHistogram() {
+		return mHistogram;
+	}
+
+	Exception getError() {
+		return mError;
+	}
+
+	private int sequenceNumber(Identifier identifier) {
+		if (!(identifier instanceof Identity)) {
+			return -1;
+		}
+		String name = ((Identity) identifier).getName();
+		if (name == null || !name.startsWith(mNamePrefix)) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(name.substring(mNamePrefix.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
@@ -41,7 +41,8 @@ package de.hshannover.f4.trust.ifmapcli;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
 import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
-import de.hshannover.f4.trust.ifmapj.channel.SSRC;
+import de.hshannover.f4.trust.ifmapcli.common.PooledSession;
+import de.hshannover.f4.trust.ifmapcli.common.SessionPool;
 
 /**
  * A simple tool that purges a publisher </br>.
@@ -64,18 +65,22 @@ public class Purge extends AbstractClient {
 		String publisherId = resource.getString(KEY_PUBLISHER_ID);
 		
 		// purge
+		SessionPool pool = SessionPool.getDefault();
+		PooledSession session = null;
 		try {
-			SSRC ssrc = createSSRC();
-			ssrc.newSession();
+			session = pool.acquire(getConnectionConfig());
 			if (publisherId != null) {
-				ssrc.purgePublisher(publisherId);
+				session.purgePublisher(publisherId);
 			} else {
-				ssrc.purgePublisher();
+				session.purgePublisher(session.getSsrc().getPublisherId());
 			}
-			ssrc.endSession();
+			pool.release(session);
 		} catch (Exception e) {
+			if (session != null) {
+				pool.invalidate(session);
+			}
 			e.printStackTrace();
-			System.exit(-1);
+			exit(-1);
 		}
 	}
 }
@@ -44,9 +44,10 @@ import org.w3c.dom.Document;
 
 import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
 import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
+import de.hshannover.f4.trust.ifmapcli.common.PooledSession;
+import de.hshannover.f4.trust.ifmapcli.common.SessionPool;
 import de.hshannover.f4.trust.ifmapcli.common.enums.IdType;
 import de.hshannover.f4.trust.ifmapj.binding.IfmapStrings;
-import de.hshannover.f4.trust.ifmapj.channel.SSRC;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifiers;
 import de.hshannover.f4.trust.ifmapj.messages.MetadataLifetime;
@@ -86,9 +87,10 @@ public class ReqInv extends AbstractClient {
 		String qualifier = (resource.getString(KEY_QUALIFIER) == null) ? "" : resource.getString(KEY_QUALIFIER);
 		Document metadata = mf.createRequestForInvestigation(qualifier);
 
+		SessionPool pool = SessionPool.getDefault();
+		PooledSession session = null;
 		try {
-			SSRC ssrc = createSSRC();
-			ssrc.newSession();
+			session = pool.acquire(getConnectionConfig());
 
 			PublishRequest req = Requests.createPublishReq();
 		
@@ -99,18 +101,21 @@ public class ReqInv extends AbstractClient {
 			} else if (isDelete(KEY_OPERATION)) {
 				String filter = String.format(
 					"meta:request-for-investigation[@ifmap-publisher-id='%s' and @qualifier='%s']",
-					ssrc.getPublisherId(), qualifier);
+					session.getSsrc().getPublisherId(), qualifier);
 				PublishDelete publishDelete = Requests.createPublishDelete(
 						deviceIdentifier, otherIdentifier, filter);
 				publishDelete.addNamespaceDeclaration("meta", IfmapStrings.STD_METADATA_NS_URI);
 				req.addPublishElement(publishDelete);
 			}
 		
-			ssrc.publish(req);
-			ssrc.endSession();
+			session.publish(req);
+			pool.release(session);
 		} catch (Exception e) {
+			if (session != null) {
+				pool.invalidate(session);
+			}
 			e.printStackTrace();
-			System.exit(1);
+			exit(1);
 		}
 	}
 }
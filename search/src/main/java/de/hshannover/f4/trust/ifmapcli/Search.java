@@ -38,36 +38,86 @@
  */
 package de.hshannover.f4.trust.ifmapcli;
 
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.xml.transform.TransformerException;
+
 import net.sourceforge.argparse4j.inf.ArgumentParser;
+
+import org.w3c.dom.Document;
+
 import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
+import de.hshannover.f4.trust.ifmapcli.common.BatchRecords;
+import de.hshannover.f4.trust.ifmapcli.common.ConnectionConfig;
+import de.hshannover.f4.trust.ifmapcli.common.GraphSnapshot;
+import de.hshannover.f4.trust.ifmapcli.common.IdentifierAttributes;
 import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
+import de.hshannover.f4.trust.ifmapcli.common.PooledSession;
+import de.hshannover.f4.trust.ifmapcli.common.ResultWriter;
+import de.hshannover.f4.trust.ifmapcli.common.SearchResultCache;
+import de.hshannover.f4.trust.ifmapcli.common.SessionPool;
 import de.hshannover.f4.trust.ifmapcli.common.enums.IdType;
 import de.hshannover.f4.trust.ifmapj.binding.IfmapStrings;
-import de.hshannover.f4.trust.ifmapj.channel.SSRC;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapErrorResult;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapException;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
 import de.hshannover.f4.trust.ifmapj.messages.Requests;
+import de.hshannover.f4.trust.ifmapj.messages.ResultItem;
 import de.hshannover.f4.trust.ifmapj.messages.SearchRequest;
 import de.hshannover.f4.trust.ifmapj.messages.SearchResult;
 
 /**
  * A simple tool that does an IF-MAP search. The result is printed to the
- * command line.
+ * command line or written to a file, see {@link ResultWriter}.
  *
  * Command line arguments specify the search parameters.
  *
  * Environment variables define the connection details of the MAPS.
  *
+ * With --roots FILE the tool searches from every start identifier in the
+ * file instead, running up to --sessions searches concurrently on pooled
+ * sessions. The results are merged into one output; a result item that is
+ * reached from several start identifiers is written only once.
+ *
+ * With --export FILE the result is not printed but written as
+ * {@link GraphSnapshot} for offline analysis. With --diff FILE only the
+ * identifiers and metadata that were added or removed since that snapshot
+ * was exported are printed in the --format; the result items are compared
+ * with the snapshot as they arrive. Both options can be combined to keep a
+ * snapshot up to date.
+ *
+ * With --cache-ttl SECONDS results are taken from the process wide
+ * {@link SearchResultCache} if an identical search was done recently, which
+ * pays off when the tool runs in the ifmapcli daemon.
+ *
  * @author ib
  *
  */
 public class Search extends AbstractClient {
 
+	private static final List<String[]> ROOT_FIELDS = BatchRecords.positionals(
+			"identifier-type", "identifier");
+
 	public static void main(String[] args) {
 		command = "search";
-		
+
 		ArgumentParser parser = createDefaultParser();
-		ParserUtil.addIdentifierType(parser, IdType.ipv4, IdType.ipv6, IdType.mac, IdType.dev, IdType.ar, IdType.id);
-		ParserUtil.addIdentifier(parser);
+		ParserUtil.addOptionalIdentifier(parser, ParserUtil.ROOTS_OPTION,
+				IdType.ipv4, IdType.ipv6, IdType.mac, IdType.dev, IdType.ar, IdType.id);
+		ParserUtil.addRootsArguments(parser);
 		ParserUtil.addMatchLinks(parser);
 		ParserUtil.addMaxDepth(parser);
 		ParserUtil.addMaxSize(parser);
@@ -75,17 +125,72 @@ public class Search extends AbstractClient {
 		ParserUtil.addTerminalIdentifierType(parser);
 		ParserUtil.addNamespacePrefix(parser);
 		ParserUtil.addNamespaceUri(parser);
+		ParserUtil.addOutputArguments(parser);
+		ParserUtil.addExport(parser);
+		ParserUtil.addDiff(parser);
+		ParserUtil.addCacheTtl(parser);
 
 		parseParameters(parser, args);
+		checkIdentifierOr(parser, KEY_ROOTS, ParserUtil.ROOTS_OPTION);
 		
-		printParameters(new String[] {KEY_IDENTIFIER_TYPE, KEY_IDENTIFIER, KEY_MATCH_LINKS, KEY_MAX_DEPTH, KEY_MAX_SIZE, KEY_RESULT_FILTER, KEY_TERMINAL_IDENTIFIER_TYPE, KEY_NAMESPACE_PREFIX, KEY_NAMESPACE_URI});
-		
-		SearchRequest searchRequest = Requests.createSearchReq();
+		printParameters(new String[] {KEY_IDENTIFIER_TYPE, KEY_IDENTIFIER, KEY_ROOTS, KEY_SESSIONS, KEY_MATCH_LINKS, KEY_MAX_DEPTH, KEY_MAX_SIZE, KEY_RESULT_FILTER, KEY_TERMINAL_IDENTIFIER_TYPE, KEY_NAMESPACE_PREFIX, KEY_NAMESPACE_URI, KEY_OUTPUT, KEY_FORMAT, KEY_EXPORT, KEY_DIFF, KEY_CACHE_TTL});
+
+		if (resource.getString(KEY_ROOTS) != null) {
+			searchRoots(resource.getString(KEY_ROOTS), Math.max(1, resource.getInt(KEY_SESSIONS)));
+			return;
+		}
 
 		// set start identifier
 		IdType identifierType = resource.get(KEY_IDENTIFIER_TYPE);
 		String identifierName = resource.getString(KEY_IDENTIFIER);
 		Identifier startIdentifier = getIdentifier(identifierType, identifierName);
+		SearchRequest searchRequest = createSearchRequest(startIdentifier);
+		
+		// search
+		SessionPool pool = SessionPool.getDefault();
+		PooledSession session = null;
+		try {
+			long cacheTtl = resource.getInt(KEY_CACHE_TTL) * 1000L;
+			SearchResultCache cache = SearchResultCache.getDefault();
+			ConnectionConfig config = getConnectionConfig();
+			SearchResult searchResult = cacheTtl > 0 ? cache.get(config, searchRequest, cacheTtl) : null;
+			if (searchResult == null) {
+				session = pool.acquire(config);
+				searchResult = session.search(searchRequest);
+				pool.release(session);
+				session = null;
+				if (cacheTtl > 0) {
+					cache.put(config, searchRequest, searchResult);
+				}
+			}
+
+			GraphSnapshot.Builder snapshot = createSnapshotBuilder();
+			DiffWriter diff = createDiffWriter();
+			if (snapshot != null || diff != null) {
+				for (ResultItem item : searchResult.getResultItems()) {
+					addToSnapshot(item, snapshot, diff);
+				}
+				finishSnapshot(snapshot, diff);
+			} else {
+				ResultWriter writer = createResultWriter();
+				writer.write(searchResult);
+				writer.close();
+			}
+		} catch (Exception e) {
+			if (session != null) {
+				pool.invalidate(session);
+			}
+			e.printStackTrace();
+			exit(-1);
+		}
+	}
+
+	/**
+	 * Create a search request for the given start identifier with the search
+	 * parameters of the command line.
+	 */
+	private static SearchRequest createSearchRequest(Identifier startIdentifier) {
+		SearchRequest searchRequest = Requests.createSearchReq();
 		searchRequest.setStartIdentifier(startIdentifier);
 		
 		String matchLinks = resource.getString(KEY_MATCH_LINKS);
@@ -132,17 +237,289 @@ public class Search extends AbstractClient {
 		if ((namespacePrefix != null) && (namespaceUri != null)) {
 			searchRequest.addNamespaceDeclaration(namespacePrefix, namespaceUri);
 		}
-		
-		// search
+
+		return searchRequest;
+	}
+
+	/**
+	 * The outcome of the search from one start identifier.
+	 */
+	private static class RootResult {
+		private final String mRoot;
+		private SearchResult mResult;
+		private Exception mError;
+
+		RootResult(String root) {
+			mRoot = root;
+		}
+	}
+
+	/**
+	 * Search from every start identifier of the roots file, with at most
+	 * <code>sessions</code> searches at a time, and write the merged
+	 * results as they arrive.
+	 */
+	private static void searchRoots(String rootsFile, int sessions) {
+		List<String> roots = new ArrayList<String>();
+		List<SearchRequest> requests = new ArrayList<SearchRequest>();
+		int errors = readRoots(rootsFile, roots, requests);
+
+		final SessionPool pool = SessionPool.getDefault();
+		final ConnectionConfig config = getConnectionConfig();
+		final long cacheTtl = resource.getInt(KEY_CACHE_TTL) * 1000L;
+		final SearchResultCache cache = SearchResultCache.getDefault();
+		ExecutorService executor = Executors.newFixedThreadPool(sessions);
+		CompletionService<RootResult> completion = new ExecutorCompletionService<RootResult>(executor);
+
+		for (int i = 0; i < roots.size(); i++) {
+			final String root = roots.get(i);
+			final SearchRequest request = requests.get(i);
+			completion.submit(new Callable<RootResult>() {
+				@Override
+				public RootResult call() {
+					RootResult rootResult = new RootResult(root);
+					if (cacheTtl > 0) {
+						rootResult.mResult = cache.get(config, request, cacheTtl);
+						if (rootResult.mResult != null) {
+							return rootResult;
+						}
+					}
+					PooledSession session = null;
+					try {
+						session = pool.acquire(config);
+						rootResult.mResult = session.search(request);
+						pool.release(session);
+						if (cacheTtl > 0) {
+							cache.put(config, request, rootResult.mResult);
+						}
+					} catch (Exception e) {
+						if (session != null) {
+							pool.invalidate(session);
+						}
+						rootResult.mError = e;
+					}
+					return rootResult;
+				}
+			});
+		}
+		executor.shutdown();
+
+		long start = System.currentTimeMillis();
+		long items = 0;
+		long duplicates = 0;
+		Set<String> seen = new HashSet<String>();
 		try {
-			SSRC ssrc = createSSRC();
-			ssrc.newSession();
-			SearchResult searchResult = ssrc.search(searchRequest);
-			parseSearchResult(searchResult);
-			ssrc.endSession();
+			GraphSnapshot.Builder snapshot = createSnapshotBuilder();
+			DiffWriter diff = createDiffWriter();
+			ResultWriter writer = snapshot != null || diff != null ? null : createResultWriter();
+			for (int i = 0; i < roots.size(); i++) {
+				RootResult rootResult = completion.take().get();
+				if (rootResult.mError != null) {
+					errors++;
+					System.err.println(rootResult.mRoot + ": " + describe(rootResult.mError));
+					continue;
+				}
+				for (ResultItem item : rootResult.mResult.getResultItems()) {
+					if (!seen.add(itemKey(item))) {
+						duplicates++;
+					} else if (writer == null) {
+						addToSnapshot(item, snapshot, diff);
+						items++;
+					} else {
+						writer.write(rootResult.mResult, item);
+						items++;
+					}
+				}
+				if (writer != null) {
+					writer.flush();
+				}
+			}
+			if (writer != null) {
+				writer.close();
+			} else {
+				finishSnapshot(snapshot, diff);
+			}
 		} catch (Exception e) {
 			e.printStackTrace();
-			System.exit(-1);
+			exit(-1);
+		}
+
+		if (resource.getBoolean(ParserUtil.VERBOSE)) {
+			System.out.println(command + ": " + roots.size() + " roots, " + items + " items, "
+					+ duplicates + " duplicates, " + errors + " errors, "
+					+ (System.currentTimeMillis() - start) + "ms");
+		}
+		if (errors > 0) {
+			exit(1);
+		}
+	}
+
+	/**
+	 * @return a builder for the --export snapshot, or <code>null</code>
+	 */
+	private static GraphSnapshot.Builder createSnapshotBuilder() {
+		return resource.getString(KEY_EXPORT) != null ? new GraphSnapshot.Builder() : null;
+	}
+
+	/**
+	 * @return a writer for the differences to the --diff snapshot, or
+	 *         <code>null</code>
+	 */
+	private static DiffWriter createDiffWriter() throws IOException {
+		String diff = resource.getString(KEY_DIFF);
+		return diff != null ? new DiffWriter(GraphSnapshot.load(resolveFile(diff))) : null;
+	}
+
+	private static void addToSnapshot(ResultItem item, GraphSnapshot.Builder snapshot,
+			DiffWriter diff) throws IOException, TransformerException {
+		if (diff != null) {
+			diff.mDiff.add(item);
+		}
+		if (snapshot != null) {
+			snapshot.add(item);
+		}
+	}
+
+	/**
+	 * Print the removed items of the --diff snapshot and write the --export
+	 * snapshot, if requested.
+	 */
+	private static void finishSnapshot(GraphSnapshot.Builder snapshot, DiffWriter diff)
+			throws IOException {
+		boolean verbose = resource.getBoolean(ParserUtil.VERBOSE);
+
+		if (diff != null) {
+			diff.mDiff.finish();
+			diff.mWriter.close();
+			if (verbose) {
+				System.out.println(command + ": " + diff.mCounts[0] + " identifiers added, "
+						+ diff.mCounts[1] + " removed, " + diff.mCounts[2] + " metadata added, "
+						+ diff.mCounts[3] + " removed");
+			}
+		}
+
+		if (snapshot != null) {
+			String export = resource.getString(KEY_EXPORT);
+			snapshot.write(resolveFile(export));
+			if (verbose) {
+				System.out.println(command + ": exported " + snapshot.getIdentifierCount()
+						+ " identifiers and " + snapshot.getLinkCount() + " links to " + export);
+			}
+		}
+	}
+
+	/**
+	 * Writes the differences between the result items and the --diff
+	 * snapshot as they are found, in the --format of the output.
+	 */
+	private static class DiffWriter implements GraphSnapshot.DiffHandler {
+		private final GraphSnapshot mPrevious;
+		private final GraphSnapshot.Diff mDiff;
+		private final ResultWriter mWriter;
+		private final int[] mCounts = new int[4];
+
+		DiffWriter(GraphSnapshot previous) throws IOException {
+			mPrevious = previous;
+			mDiff = new GraphSnapshot.Diff(previous, this);
+			mWriter = createResultWriter();
+		}
+
+		@Override
+		public void identifierAdded(Identifier identifier) throws IOException {
+			mWriter.writeAdded(identifier);
+			mCounts[0]++;
+		}
+
+		@Override
+		public void identifierRemoved(int identifier) throws IOException {
+			mWriter.writeRemovedIdentifier(mPrevious, identifier);
+			mCounts[1]++;
+		}
+
+		@Override
+		public void metadataAdded(ResultItem item, Document metadata) throws IOException {
+			mWriter.writeAdded(item, metadata);
+			mCounts[2]++;
+		}
+
+		@Override
+		public void metadataRemoved(int metadata) throws IOException {
+			mWriter.writeRemovedMetadata(mPrevious, metadata);
+			mCounts[3]++;
+		}
+	}
+
+	/**
+	 * Read the start identifiers of a roots file (or stdin for '-'). Every
+	 * record is an identifier type and an identifier, see
+	 * {@link BatchRecords}.
+	 *
+	 * @return the number of records that could not be read
+	 */
+	private static int readRoots(String rootsFile, List<String> roots, List<SearchRequest> requests) {
+		int errors = 0;
+		BufferedReader reader = null;
+		try {
+			InputStream in = rootsFile.equals("-") ? System.in : new FileInputStream(resolveFile(rootsFile));
+			reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (!BatchRecords.isRecord(line)) {
+					continue;
+				}
+				try {
+					List<String> record = BatchRecords.toArguments(line, ROOT_FIELDS);
+					if (record.size() != 2) {
+						throw new IllegalArgumentException("expected identifier-type and identifier");
+					}
+					Identifier root = getIdentifier(IdType.valueOf(record.get(0)), record.get(1));
+					requests.add(createSearchRequest(root));
+					roots.add(record.get(0) + " " + record.get(1));
+				} catch (RuntimeException e) {
+					errors++;
+					System.err.println(rootsFile + ":" + lineNumber + ": " + e.getMessage());
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			exit(-1);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+		return errors;
+	}
+
+	/**
+	 * @return a key that is equal for the result items of two searches if
+	 *         they are about the same identifier or link
+	 */
+	private static String itemKey(ResultItem item) {
+		Identifier first = item.getIdentifier1();
+		Identifier second = item.getIdentifier2();
+		if (first == null || second == null) {
+			return IdentifierAttributes.getKey(first != null ? first : second);
+		}
+		String key1 = IdentifierAttributes.getKey(first);
+		String key2 = IdentifierAttributes.getKey(second);
+		// a link is the same in both directions
+		return key1.compareTo(key2) <= 0 ? key1 + " | " + key2 : key2 + " | " + key1;
+	}
+
+	private static String describe(Exception e) {
+		if (e instanceof IfmapErrorResult) {
+			IfmapErrorResult error = (IfmapErrorResult) e;
+			return error.getErrorCode() + " " + error.getErrorString();
+		} else if (e instanceof IfmapException) {
+			return ((IfmapException) e).getDescription();
 		}
+		return e.toString();
 	}
 }
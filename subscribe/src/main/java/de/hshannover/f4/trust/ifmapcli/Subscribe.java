@@ -39,15 +39,28 @@
 package de.hshannover.f4.trust.ifmapcli;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Vector;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
 import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
+import de.hshannover.f4.trust.ifmapcli.common.BatchRecords;
+import de.hshannover.f4.trust.ifmapcli.common.IdentifierAttributes;
 import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
+import de.hshannover.f4.trust.ifmapcli.common.ResultWriter;
 import de.hshannover.f4.trust.ifmapcli.common.enums.IdType;
+import de.hshannover.f4.trust.ifmapcli.common.enums.OutputFormat;
 import de.hshannover.f4.trust.ifmapj.binding.IfmapStrings;
 import de.hshannover.f4.trust.ifmapj.channel.ARC;
 import de.hshannover.f4.trust.ifmapj.channel.SSRC;
@@ -55,15 +68,34 @@ import de.hshannover.f4.trust.ifmapj.exception.IfmapErrorResult;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
 import de.hshannover.f4.trust.ifmapj.messages.PollResult;
 import de.hshannover.f4.trust.ifmapj.messages.Requests;
-import de.hshannover.f4.trust.ifmapj.messages.SearchResult;
 import de.hshannover.f4.trust.ifmapj.messages.SubscribeRequest;
 import de.hshannover.f4.trust.ifmapj.messages.SubscribeUpdate;
 
 /**
  * A simple tool that does an IF-MAP subscribe operation and polls for results.<br/>
- * The results are printed to the command line. Each time a pollResult is<br/>
+ * The results are printed to the command line or written to a file, see<br/>
+ * {@link ResultWriter}. Each time a pollResult is<br/>
  * received, a new poll is sent.
  *
+ * By default every poll has to be confirmed on the console. With --follow<br/>
+ * the tool polls continuously on a separate thread and re-subscribes if<br/>
+ * the session is lost, see {@link SubscribeFollower}. The results are<br/>
+ * formatted by --workers threads while the next poll is outstanding, see<br/>
+ * {@link SubscribePipeline}.
+ *
+ * With --view the results are not printed but applied to a local replica<br/>
+ * of the subscribed graph, see {@link SubscribeView}. Queries are read<br/>
+ * from stdin, one CSV record per line:<br/>
+ * <code>neighbours,TYPE,IDENTIFIER</code>,<br/>
+ * <code>metadata,TYPE,IDENTIFIER[,METADATA-TYPE]</code>,<br/>
+ * <code>link-metadata,TYPE,IDENTIFIER,TYPE,IDENTIFIER[,METADATA-TYPE]</code>,<br/>
+ * <code>stats</code> and <code>quit</code>.
+ *
+ * With --subscriptions FILE every record of the file (a name followed by<br/>
+ * the arguments of one subscription) becomes a subscription of one<br/>
+ * subscribe request on one session. The tool polls continuously and writes<br/>
+ * the results per subscription name, see {@link SubscribeDemultiplexer}.
+ *
  * Command line arguments specify the subscribe parameters.
  *
  * Environment variables define the connection details of the MAPS.
@@ -76,81 +108,27 @@ public class Subscribe extends AbstractClient {
 	private static int counter = 0;
 
 	/**
-	 * Fetch poll results and print them to console
-	 * @param pollResult 
+	 * Print the error results of a poll, if any, and exit.
+	 * @param pollResult
 	 */
-	private static void parsePollResult(PollResult pollResult) {
-
-		// error, search, update, delete, notify
+	static void printErrorResults(PollResult pollResult) {
 		Collection<IfmapErrorResult> errorRes = pollResult.getErrorResults();
-		Collection<SearchResult> allRes    = pollResult.getResults();
-		Collection<SearchResult> searchRes = new Vector<SearchResult>();
-		Collection<SearchResult> updateRes = new Vector<SearchResult>();
-		Collection<SearchResult> deleteRes = new Vector<SearchResult>();
-		Collection<SearchResult> notifyRes = new Vector<SearchResult>();
-
-		for (SearchResult res : allRes) {
-			switch (res.getType()) {
-			case searchResult:
-				searchRes.add(res);
-				break;
-			case updateResult:
-				updateRes.add(res);
-				break;
-			case deleteResult:
-				deleteRes.add(res);
-				break;
-			case notifyResult:
-				notifyRes.add(res);
-				break;
-			default:
-				break;
-			}
-		}
 
 		if(errorRes.size() > 0){
 			System.err.println("== ERROR RESULTS ==");
 			for (IfmapErrorResult error : errorRes) {
 				System.err.println(error);
 			}
-			System.exit(1);
-		}
-
-		if(searchRes.size() > 0){
-			System.out.println("== SEARCH RESULTS ==");
-			for (SearchResult searchResult : searchRes) {
-				parseSearchResult(searchResult);
-			}
-		}
-
-		if(updateRes.size() > 0){
-			System.out.println("== UPDATE RESULTS ==");
-			for (SearchResult searchResult : updateRes) {
-				parseSearchResult(searchResult);
-			}
-		}
-
-		if(deleteRes.size() > 0){
-			System.out.println("== DELETE RESULTS ==");
-			for (SearchResult searchResult : deleteRes) {
-				parseSearchResult(searchResult);
-			}
+			exit(1);
 		}
-
-		if(notifyRes.size() > 0){
-			System.out.println("== NOTIFY RESULTS ==");
-			for (SearchResult searchResult : notifyRes) {
-				parseSearchResult(searchResult);
-			}
-		}
-	}	
+	}
 
 	public static void main(String[] args) {
 		command = "subscribe";
-		
+
 		ArgumentParser parser = createDefaultParser();
-		ParserUtil.addIdentifierType(parser, IdType.ipv4, IdType.ipv6, IdType.mac, IdType.dev, IdType.ar, IdType.id);
-		ParserUtil.addIdentifier(parser);
+		ParserUtil.addOptionalIdentifier(parser, ParserUtil.SUBSCRIPTIONS_OPTION,
+				IdType.ipv4, IdType.ipv6, IdType.mac, IdType.dev, IdType.ar, IdType.id);
 		ParserUtil.addMatchLinks(parser);
 		ParserUtil.addMaxDepth(parser);
 		ParserUtil.addMaxSize(parser);
@@ -158,16 +136,174 @@ public class Subscribe extends AbstractClient {
 		ParserUtil.addTerminalIdentifierType(parser);
 		ParserUtil.addNamespacePrefix(parser);
 		ParserUtil.addNamespaceUri(parser);
+		ParserUtil.addFollow(parser);
+		ParserUtil.addWorkers(parser);
+		ParserUtil.addView(parser);
+		ParserUtil.addSubscriptions(parser);
+		ParserUtil.addOutputArguments(parser);
 
 		parseParameters(parser, args);
+		checkIdentifierOr(parser, KEY_SUBSCRIPTIONS, ParserUtil.SUBSCRIPTIONS_OPTION);
+
+		if (resource.getString(KEY_SUBSCRIPTIONS) != null) {
+			subscribeAll(parser, resource.getString(KEY_SUBSCRIPTIONS));
+			return;
+		}
 		
-		printParameters(new String[] {KEY_IDENTIFIER_TYPE, KEY_IDENTIFIER, KEY_MATCH_LINKS, KEY_MAX_DEPTH, KEY_MAX_SIZE, KEY_RESULT_FILTER, KEY_TERMINAL_IDENTIFIER_TYPE, KEY_NAMESPACE_PREFIX, KEY_NAMESPACE_URI});
+		printParameters(new String[] {KEY_IDENTIFIER_TYPE, KEY_IDENTIFIER, KEY_MATCH_LINKS, KEY_MAX_DEPTH, KEY_MAX_SIZE, KEY_RESULT_FILTER, KEY_TERMINAL_IDENTIFIER_TYPE, KEY_NAMESPACE_PREFIX, KEY_NAMESPACE_URI, KEY_FOLLOW, KEY_WORKERS, KEY_VIEW, KEY_OUTPUT, KEY_FORMAT});
 		
 		SubscribeRequest subscribeRequest = Requests.createSubscribeReq();
+		subscribeRequest.addSubscribeElement(createSubscribeUpdate("example-subscription"));
+
+		if (resource.getBoolean(KEY_VIEW)) {
+			view(subscribeRequest);
+			return;
+		}
+
+		if (resource.getBoolean(KEY_FOLLOW)) {
+			follow(subscribeRequest);
+			return;
+		}
+		
+		try {
+			ResultWriter writer = createResultWriter();
+			SSRC ssrc = createSSRC();
+			ssrc.newSession();
+			ARC mArc = ssrc.getArc();
+			
+			ssrc.newSession();
+			ssrc.subscribe(subscribeRequest);
+			while (true) {
+				System.out.println("Hit enter to proceed ...");
+				try {
+					new BufferedReader(new InputStreamReader(System.in)).readLine();
+				} catch (IOException e1) {
+					e1.printStackTrace();
+					exit(-1);
+				}
+				System.out.println("Polling #" + Subscribe.counter++ + " ...");
+				PollResult pollResult = mArc.poll();
+				printErrorResults(pollResult);
+				writer.write(pollResult);
+				writer.flush();
+				try {
+					Thread.sleep(1000);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+					exit(-1);
+				}
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			exit(-1);
+		}
+	}
+
+	private static void follow(SubscribeRequest subscribeRequest) {
+		int workers = Math.max(1, resource.getInt(KEY_WORKERS));
+		SubscribePipeline pipeline = null;
+		try {
+			pipeline = new SubscribePipeline(workers, 2 * workers, createResultWriter());
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+			exit(-1);
+		}
+		SubscribeFollower follower = new SubscribeFollower(getConnectionConfig(),
+				subscribeRequest, pipeline);
+
+		Thread arcThread = new Thread(follower, "subscribe-arc");
+		arcThread.start();
+		try {
+			arcThread.join();
+			pipeline.close();
+		} catch (InterruptedException e) {
+			follower.stop();
+		}
+
+		if (follower.getError() != null) {
+			follower.getError().printStackTrace();
+			exit(-1);
+		}
+	}
+
+	private static void view(SubscribeRequest subscribeRequest) {
+		SubscribeView view = new SubscribeView();
+		SubscribeFollower follower = new SubscribeFollower(getConnectionConfig(),
+				subscribeRequest, view);
+
+		Thread arcThread = new Thread(follower, "subscribe-arc");
+		arcThread.setDaemon(true);
+		arcThread.start();
+
+		boolean verbose = resource.getBoolean(ParserUtil.VERBOSE);
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+			String line;
+			while ((line = reader.readLine()) != null && follower.getError() == null) {
+				if (!BatchRecords.isRecord(line)) {
+					continue;
+				}
+				try {
+					List<String> query = BatchRecords.toArguments(line);
+					if (query.get(0).equals("quit")) {
+						break;
+					}
+					long start = System.nanoTime();
+					List<String> answer = query(view, query);
+					long nanos = System.nanoTime() - start;
+					for (String item : answer) {
+						System.out.println(item);
+					}
+					if (verbose) {
+						System.out.println("(" + answer.size() + " results, "
+								+ String.format("%.3f", nanos / 1000000.0) + " ms)");
+					}
+				} catch (RuntimeException e) {
+					System.err.println("invalid query '" + line + "': " + e.getMessage());
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			exit(-1);
+		}
+		follower.stop();
+
+		if (follower.getError() != null) {
+			follower.getError().printStackTrace();
+			exit(-1);
+		}
+	}
+
+	private static List<String> query(SubscribeView view, List<String> query) {
+		String operation = query.get(0);
+		if (operation.equals("stats")) {
+			return Collections.singletonList(view.stats());
+		} else if (operation.equals("neighbours") && query.size() == 3) {
+			return view.neighbours(identifierKey(query.get(1), query.get(2)));
+		} else if (operation.equals("metadata") && (query.size() == 3 || query.size() == 4)) {
+			return view.metadata(identifierKey(query.get(1), query.get(2)), null,
+					query.size() == 4 ? query.get(3) : null);
+		} else if (operation.equals("link-metadata") && (query.size() == 5 || query.size() == 6)) {
+			return view.metadata(identifierKey(query.get(1), query.get(2)),
+					identifierKey(query.get(3), query.get(4)),
+					query.size() == 6 ? query.get(5) : null);
+		}
+		throw new IllegalArgumentException("unknown query or wrong number of arguments");
+	}
+
+	private static String identifierKey(String type, String name) {
+		return IdentifierAttributes.getKey(getIdentifier(IdType.valueOf(type), name));
+	}
+
+	/**
+	 * Create a subscription with the given name and the subscribe
+	 * parameters of the command line.
+	 */
+	private static SubscribeUpdate createSubscribeUpdate(String name) {
 		SubscribeUpdate su = Requests.createSubscribeUpdate();
 
 		// set name
-		su.setName("example-subscription");
+		su.setName(name);
 
 		// set start identifier
 		IdType identifierType = resource.get(KEY_IDENTIFIER_TYPE);
@@ -220,36 +356,119 @@ public class Subscribe extends AbstractClient {
 			su.addNamespaceDeclaration(namespacePrefix, namespaceUri);
 		}
 
-		subscribeRequest.addSubscribeElement(su);
-		
+		return su;
+	}
+
+	/**
+	 * Subscribe to every record of a subscriptions file (or stdin for '-') in
+	 * one request on one session and poll continuously. Every record is the
+	 * name of the subscription, followed by the arguments of a single
+	 * subscription (see {@link BatchRecords}); the parameters of the command
+	 * line apply to every record. Records that cannot be parsed are reported
+	 * and the tool exits without subscribing.
+	 */
+	private static void subscribeAll(ArgumentParser parser, String subscriptionsFile) {
+		// the parameters of the command line are the defaults of the records
+		parser.setDefaults(resource.getAttrs());
+		List<String[]> positionals = new ArrayList<String[]>();
+		positionals.add(new String[] {"name"});
+		positionals.addAll(getPositionals(parser));
+
+		SubscribeRequest subscribeRequest = Requests.createSubscribeReq();
+		Set<String> names = new HashSet<String>();
+		int errors = 0;
+		BufferedReader reader = null;
 		try {
-			SSRC ssrc = createSSRC();
-			ssrc.newSession();
-			ARC mArc = ssrc.getArc();
-			
-			ssrc.newSession();
-			ssrc.subscribe(subscribeRequest);
-			while (true) {
-				System.out.println("Hit enter to proceed ...");
+			InputStream in = subscriptionsFile.equals("-") ? System.in : new FileInputStream(resolveFile(subscriptionsFile));
+			reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (!BatchRecords.isRecord(line)) {
+					continue;
+				}
 				try {
-					new BufferedReader(new InputStreamReader(System.in)).readLine();
-				} catch (IOException e1) {
-					e1.printStackTrace();
-					System.exit(-1);
+					List<String> recordArgs = BatchRecords.toArguments(line, positionals);
+					if (recordArgs.isEmpty()) {
+						throw new IllegalArgumentException("missing subscription name");
+					}
+					String name = recordArgs.remove(0);
+					if (names.contains(name)) {
+						throw new IllegalArgumentException("duplicate subscription name " + name);
+					}
+					resource = parser.parseArgs(recordArgs.toArray(new String[recordArgs.size()]));
+					if (resource.get(KEY_IDENTIFIER_TYPE) == null || resource.get(KEY_IDENTIFIER) == null) {
+						throw new IllegalArgumentException("missing identifier-type or identifier");
+					}
+					subscribeRequest.addSubscribeElement(createSubscribeUpdate(name));
+					names.add(name);
+				} catch (ArgumentParserException e) {
+					errors++;
+					System.err.println(subscriptionsFile + ":" + lineNumber + ": " + e.getMessage());
+				} catch (RuntimeException e) {
+					errors++;
+					System.err.println(subscriptionsFile + ":" + lineNumber + ": " + e.getMessage());
 				}
-				System.out.println("Polling #" + Subscribe.counter++ + " ...");
-				PollResult pollResult = mArc.poll();
-				parsePollResult(pollResult);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			exit(-1);
+		} finally {
+			if (reader != null) {
 				try {
-					Thread.sleep(1000);
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-					System.exit(-1);
+					reader.close();
+				} catch (IOException e) {
+					// ignore
 				}
 			}
-		} catch (Exception e) {
+		}
+		if (errors > 0 || names.isEmpty()) {
+			System.err.println(command + ": " + errors + " invalid and " + names.size()
+					+ " valid subscriptions in " + subscriptionsFile);
+			exit(1);
+		}
+
+		boolean verbose = resource.getBoolean(ParserUtil.VERBOSE);
+		if (verbose) {
+			System.out.println(command + ": " + names.size() + " subscriptions");
+		}
+
+		SubscribeDemultiplexer demultiplexer = null;
+		try {
+			String output = resource.getString(KEY_OUTPUT);
+			if (output != null && new File(output).isDirectory()) {
+				OutputFormat format = resource.get(KEY_FORMAT);
+				demultiplexer = new SubscribeDemultiplexer(new File(output),
+						format == null ? OutputFormat.text : format);
+			} else {
+				demultiplexer = new SubscribeDemultiplexer(createResultWriter());
+			}
+		} catch (FileNotFoundException e) {
 			e.printStackTrace();
-			System.exit(-1);
+			exit(-1);
+		}
+		SubscribeFollower follower = new SubscribeFollower(getConnectionConfig(),
+				subscribeRequest, demultiplexer);
+
+		Thread arcThread = new Thread(follower, "subscribe-arc");
+		arcThread.start();
+		try {
+			arcThread.join();
+			demultiplexer.close();
+		} catch (InterruptedException e) {
+			follower.stop();
+		} catch (IOException e) {
+			e.printStackTrace();
+			exit(-1);
+		}
+
+		if (verbose) {
+			System.out.println(command + ": results per subscription " + demultiplexer.getResultCounts());
+		}
+		if (follower.getError() != null) {
+			follower.getError().printStackTrace();
+			exit(-1);
 		}
-	}	
+	}
 }
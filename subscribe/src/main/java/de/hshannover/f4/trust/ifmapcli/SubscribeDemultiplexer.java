@@ -0,0 +1,162 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (subscribe), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import de.hshannover.f4.trust.ifmapcli.common.ResultWriter;
+import de.hshannover.f4.trust.ifmapcli.common.enums.OutputFormat;
+import de.hshannover.f4.trust.ifmapj.messages.PollResult;
+import de.hshannover.f4.trust.ifmapj.messages.SearchResult;
+
+/**
+ * Writes the poll results of many subscriptions on one session, split by<br/>
+ * subscription name. Either every name gets its own file in a directory<br/>
+ * (<code>NAME.txt</code>, <code>NAME.xml</code> or <code>NAME.jsonl</code>,<br/>
+ * opened when the first result for it arrives) or all results go to one<br/>
+ * {@link ResultWriter}, with the name written before each result.<br/>
+ * <br/>
+ * Characters that are not safe in file names become '_'. If two names map<br/>
+ * to the same file, ignoring case, the later one gets a suffix, e.g.<br/>
+ * <code>a_b-2.txt</code> for <code>a:b</code> after <code>a/b</code>.
+ *
+ */
+class SubscribeDemultiplexer implements SubscribeFollower.Handler {
+
+	private final File mDirectory;
+	private final OutputFormat mFormat;
+	private final ResultWriter mSharedWriter;
+	private final Map<String, ResultWriter> mWriters = new LinkedHashMap<String, ResultWriter>();
+	private final Set<String> mFileNames = new HashSet<String>();
+	private final Map<String, Long> mResults = new LinkedHashMap<String, Long>();
+
+	/**
+	 * Write the results of each subscription to its own file in a directory.
+	 */
+	SubscribeDemultiplexer(File directory, OutputFormat format) {
+		mDirectory = directory;
+		mFormat = format;
+		mSharedWriter = null;
+	}
+
+	/**
+	 * Write the results of all subscriptions to one writer.
+	 */
+	SubscribeDemultiplexer(ResultWriter writer) {
+		mDirectory = null;
+		mFormat = writer.getFormat();
+		mSharedWriter = writer;
+	}
+
+	@Override
+	public void handle(PollResult pollResult) throws Exception {
+		Subscribe.printErrorResults(pollResult);
+
+		Set<ResultWriter> written = new HashSet<ResultWriter>();
+		for (SearchResult result : pollResult.getResults()) {
+			ResultWriter writer = writerFor(result.getName());
+			writer.writeNamed(result);
+			written.add(writer);
+			count(result.getName());
+		}
+		for (ResultWriter writer : written) {
+			writer.flush();
+		}
+	}
+
+	/**
+	 * @return the number of search, update, delete and notify results per
+	 *         subscription name
+	 */
+	Map<String, Long> getResultCounts() {
+		return mResults;
+	}
+
+	void close() throws IOException {
+		for (ResultWriter writer : mWriters.values()) {
+			writer.close();
+		}
+		if (mSharedWriter != null) {
+			mSharedWriter.close();
+		}
+	}
+
+	private ResultWriter writerFor(String name) throws IOException {
+		if (mSharedWriter != null) {
+			return mSharedWriter;
+		}
+		ResultWriter writer = mWriters.get(name);
+		if (writer == null) {
+			String extension = mFormat == OutputFormat.text ? "txt" : mFormat.toString();
+			String fileName = fileName(name);
+			String unique = fileName;
+			for (int i = 2; !mFileNames.add(unique.toLowerCase(Locale.ENGLISH)); i++) {
+				unique = fileName + "-" + i;
+			}
+			File file = new File(mDirectory, unique + "." + extension);
+			writer = ResultWriter.open(file.getPath(), mFormat);
+			mWriters.put(name, writer);
+		}
+		return writer;
+	}
+
+	private void count(String name) {
+		Long count = mResults.get(name);
+		mResults.put(name, count == null ? 1 : count + 1);
+	}
+
+	/**
+	 * @return the name with all characters that are not safe in file names
+	 *         replaced by '_'
+	 */
+	private static String fileName(String name) {
+		StringBuilder sb = new StringBuilder(name.length());
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			sb.append(Character.isLetterOrDigit(c) || c == '-' || c == '.' ? c : '_');
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (subscribe), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli;
+
+import de.hshannover.f4.trust.ifmapcli.common.ConnectionConfig;
+import de.hshannover.f4.trust.ifmapj.channel.ARC;
+import de.hshannover.f4.trust.ifmapj.channel.IfmapChannel;
+import de.hshannover.f4.trust.ifmapj.channel.SSRC;
+import de.hshannover.f4.trust.ifmapj.exception.EndSessionException;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapErrorCode;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapErrorResult;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapException;
+import de.hshannover.f4.trust.ifmapj.messages.PollResult;
+import de.hshannover.f4.trust.ifmapj.messages.SubscribeRequest;
+
+/**
+ * Keeps a subscription alive and polls for its results without pause.<br/>
+ * Each {@link PollResult} is passed to a {@link Handler} and the next poll<br/>
+ * is sent right afterwards.<br/>
+ * <br/>
+ * If the session is lost (the MAPS ended it, reported an invalid session<br/>
+ * id or the connection failed), a new session is established and the<br/>
+ * subscription is sent again, with a back-off of up to<br/>
+ * {@value #MAX_RETRY_DELAY} ms between attempts. The first poll result<br/>
+ * after a reconnect is the complete search result of the subscription.<br/>
+ * Other errors end the follower. The session is ended whenever the<br/>
+ * follower leaves it.
+ *
+ */
+class SubscribeFollower implements Runnable {
+
+	private static final long MIN_RETRY_DELAY = 1000;
+	private static final long MAX_RETRY_DELAY = 30000;
+
+	/**
+	 * Receives the poll results on the polling thread.
+	 */
+	interface Handler {
+		void handle(PollResult pollResult) throws Exception;
+	}
+
+	private final ConnectionConfig mConfig;
+	private final SubscribeRequest mRequest;
+	private final Handler mHandler;
+
+	private volatile boolean mStopped;
+	private volatile Exception mError;
+
+	SubscribeFollower(ConnectionConfig config, SubscribeRequest request, Handler handler) {
+		mConfig = config;
+		mRequest = request;
+		mHandler = handler;
+	}
+
+	@Override
+	public void run() {
+		long retryDelay = MIN_RETRY_DELAY;
+		boolean subscribed = false;
+
+		while (!mStopped) {
+			SSRC ssrc = null;
+			ARC arc = null;
+			try {
+				ssrc = mConfig.createSsrc();
+				ssrc.newSession();
+				arc = ssrc.getArc();
+				ssrc.subscribe(mRequest);
+				if (subscribed) {
+					System.err.println("Re-subscribed on session " + ssrc.getSessionId());
+				}
+				subscribed = true;
+
+				while (!mStopped) {
+					PollResult pollResult = arc.poll();
+					retryDelay = MIN_RETRY_DELAY;
+					mHandler.handle(pollResult);
+				}
+			} catch (EndSessionException e) {
+				System.err.println("Session was ended by the MAPS");
+			} catch (IfmapErrorResult e) {
+				if (e.getErrorCode() != IfmapErrorCode.InvalidSessionID) {
+					fail(e);
+					return;
+				}
+				System.err.println("Session is no longer valid");
+			} catch (IfmapException e) {
+				System.err.println("Connection failed: " + e.getDescription());
+			} catch (Exception e) {
+				fail(e);
+				return;
+			} finally {
+				close(ssrc, arc);
+			}
+
+			if (!mStopped) {
+				System.err.println("Reconnecting in " + retryDelay / 1000 + "s ...");
+				try {
+					Thread.sleep(retryDelay);
+				} catch (InterruptedException e) {
+					return;
+				}
+				retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+			}
+		}
+	}
+
+	/**
+	 * Stops following after the current poll.
+	 */
+	void stop() {
+		mStopped = true;
+	}
+
+	/**
+	 * @return the error that ended the follower, or <code>null</code>
+	 */
+	Exception getError() {
+		return mError;
+	}
+
+	/**
+	 * End the session and close its connections, so that retries do not
+	 * leave sessions behind. Errors are ignored, the session is usually
+	 * broken already.
+	 */
+	private static void close(SSRC ssrc, ARC arc) {
+		if (ssrc == null) {
+			return;
+		}
+		try {
+			ssrc.endSession();
+		} catch (Exception e) {
+			// the session may already be gone on the server side
+		}
+		for (IfmapChannel channel : new IfmapChannel[] {arc, ssrc}) {
+			try {
+				if (channel != null) {
+					channel.closeTcpConnection();
+				}
+			} catch (Exception e) {
+				// nothing we can do about it
+			}
+		}
+	}
+
+	private void fail(Exception e) {
+		mError = e;
+		mStopped = true;
+	}
+}
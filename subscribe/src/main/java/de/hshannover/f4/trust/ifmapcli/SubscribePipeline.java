@@ -0,0 +1,155 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (subscribe), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.hshannover.f4.trust.ifmapcli.common.ResultWriter;
+import de.hshannover.f4.trust.ifmapj.messages.PollResult;
+
+/**
+ * Takes the classification and formatting of poll results off the polling<br/>
+ * thread. {@link #submit(PollResult)} hands a result to a pool of workers<br/>
+ * and returns; a writer thread passes the formatted results to a<br/>
+ * {@link ResultWriter} in the order in which they were polled.<br/>
+ * <br/>
+ * At most <code>capacity</code> results are pending. When the writer falls<br/>
+ * behind, {@link #submit(PollResult)} blocks, the next poll is not sent and<br/>
+ * the results pile up on the MAPS instead of in our heap.
+ *
+ */
+class SubscribePipeline implements SubscribeFollower.Handler {
+
+	private static final Pending END = new Pending(null, null);
+
+	private final ResultWriter mWriter;
+	private final ExecutorService mWorkers;
+	private final BlockingQueue<Pending> mPending;
+	private final Thread mWriterThread;
+
+	/**
+	 * A polled result and its formatted text, in the order of polling.
+	 */
+	private static class Pending {
+		private final PollResult mPollResult;
+		private final Future<CharSequence> mText;
+
+		Pending(PollResult pollResult, Future<CharSequence> text) {
+			mPollResult = pollResult;
+			mText = text;
+		}
+	}
+
+	SubscribePipeline(int workers, int capacity, ResultWriter writer) {
+		mWriter = writer;
+		mWorkers = Executors.newFixedThreadPool(workers);
+		mPending = new ArrayBlockingQueue<Pending>(capacity);
+		mWriterThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				write();
+			}
+		}, "subscribe-writer");
+		mWriterThread.start();
+	}
+
+	@Override
+	public void handle(PollResult pollResult) throws InterruptedException {
+		submit(pollResult);
+	}
+
+	/**
+	 * Queues a poll result for formatting and output. Blocks while
+	 * <code>capacity</code> results are pending.
+	 */
+	void submit(final PollResult pollResult) throws InterruptedException {
+		Future<CharSequence> text = null;
+		if (pollResult.getErrorResults().isEmpty()) {
+			text = mWorkers.submit(new Callable<CharSequence>() {
+				@Override
+				public CharSequence call() throws IOException {
+					StringBuilder sb = new StringBuilder();
+					mWriter.format(sb, pollResult);
+					return sb;
+				}
+			});
+		}
+		mPending.put(new Pending(pollResult, text));
+	}
+
+	/**
+	 * Prints the pending results, stops the threads and closes the writer.
+	 */
+	void close() throws InterruptedException {
+		mPending.put(END);
+		mWriterThread.join();
+		mWorkers.shutdown();
+	}
+
+	private void write() {
+		try {
+			Pending pending;
+			while ((pending = mPending.take()) != END) {
+				if (pending.mText == null) {
+					// exits
+					Subscribe.printErrorResults(pending.mPollResult);
+				} else {
+					mWriter.write(pending.mText.get());
+					mWriter.flush();
+				}
+			}
+			mWriter.close();
+		} catch (InterruptedException e) {
+			return;
+		} catch (ExecutionException e) {
+			e.getCause().printStackTrace();
+			System.exit(-1);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(-1);
+		}
+	}
+}
@@ -0,0 +1,349 @@
+/*
+ * #%L
+ * =====================================================
+ *   _____                _     ____  _   _       _   _
+ *  |_   _|_ __ _   _ ___| |_  / __ \| | | | ___ | | | |
+ *    | | | '__| | | / __| __|/ / _` | |_| |/ __|| |_| |
+ *    | | | |  | |_| \__ \ |_| | (_| |  _  |\__ \|  _  |
+ *    |_| |_|   \__,_|___/\__|\ \__,_|_| |_||___/|_| |_|
+ *                             \____/
+ * 
+ * =====================================================
+ * 
+ * Hochschule Hannover
+ * (University of Applied Sciences and Arts, Hannover)
+ * Faculty IV, Dept. of Computer Science
+ * Ricklinger Stadtweg 118, 30459 Hannover, Germany
+ * 
+ * Email: trust@f4-i.fh-hannover.de
+ * Website: http://trust.f4.hs-hannover.de
+ * 
+ * This file is part of ifmapcli (subscribe), version 0.3.1, implemented by the Trust@HsH
+ * research group at the Hochschule Hannover.
+ * %%
+ * Copyright (C) 2010 - 2015 Trust@HsH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshannover.f4.trust.ifmapcli;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import de.hshannover.f4.trust.ifmapcli.common.CanonicalHash;
+import de.hshannover.f4.trust.ifmapcli.common.DocumentSerializer;
+import de.hshannover.f4.trust.ifmapcli.common.IdentifierAttributes;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+import de.hshannover.f4.trust.ifmapj.messages.PollResult;
+import de.hshannover.f4.trust.ifmapj.messages.ResultItem;
+import de.hshannover.f4.trust.ifmapj.messages.SearchResult;
+
+/**
+ * A local replica of the subgraph of a subscription, kept up to date from<br/>
+ * its poll results. A searchResult (the first one and the one after every<br/>
+ * re-subscribe) replaces the replica, updateResults and deleteResults are<br/>
+ * applied to it. Notifications are not stored in the MAP graph and are only<br/>
+ * counted.<br/>
+ * <br/>
+ * Identifiers are addressed by their key, see<br/>
+ * {@link IdentifierAttributes#getKey(Identifier)}, metadata types by the<br/>
+ * local name of the metadata element, e.g. <code>ip-mac</code>. Metadata is<br/>
+ * serialized before the replica is locked for an update, so queries only<br/>
+ * wait for a few map operations and never for the MAPS.
+ *
+ */
+class SubscribeView implements SubscribeFollower.Handler {
+
+	private static final String CARDINALITY = "ifmap-cardinality";
+	private static final String SINGLE_VALUE = "singleValue";
+
+	/**
+	 * One metadata item of an identifier or link.
+	 */
+	private static class Metadata {
+		private final String mType;
+		private final long mHash;
+		private final boolean mSingleValue;
+		private final String mXml;
+
+		Metadata(Document document) throws Exception {
+			Element root = document.getDocumentElement();
+			mType = root.getLocalName() != null ? root.getLocalName() : root.getTagName();
+			mHash = CanonicalHash.hash(document);
+			mSingleValue = SINGLE_VALUE.equals(root.getAttribute(CARDINALITY));
+			mXml = DocumentSerializer.serialize(document, false);
+		}
+	}
+
+	/**
+	 * A result item whose keys and metadata are prepared for the replica.
+	 */
+	private static class Change {
+		private final String mKey1;
+		private final String mKey2;
+		private final List<Metadata> mMetadata;
+
+		Change(ResultItem item) throws Exception {
+			Identifier first = item.getIdentifier1();
+			Identifier second = item.getIdentifier2();
+			mKey1 = IdentifierAttributes.getKey(first != null ? first : second);
+			mKey2 = first != null && second != null ? IdentifierAttributes.getKey(second) : null;
+			mMetadata = new ArrayList<Metadata>(item.getMetadata().size());
+			for (Document document : item.getMetadata()) {
+				mMetadata.add(new Metadata(document));
+			}
+		}
+	}
+
+	private final ReadWriteLock mLock = new ReentrantReadWriteLock();
+
+	// metadata of identifiers and links, by identifier key or link key
+	private final Map<String, List<Metadata>> mMetadata = new HashMap<String, List<Metadata>>();
+	private final Map<String, Set<String>> mNeighbours = new HashMap<String, Set<String>>();
+	private int mLinks;
+	private long mPolls;
+	private long mNotifications;
+	private long mLastUpdate;
+
+	@Override
+	public void handle(PollResult pollResult) throws Exception {
+		Subscribe.printErrorResults(pollResult);
+
+		// the changes of each result, in the order of the results
+		List<List<Change>> changesByResult = new ArrayList<List<Change>>();
+		for (SearchResult result : pollResult.getResults()) {
+			List<Change> changes = new ArrayList<Change>(result.getResultItems().size());
+			for (ResultItem item : result.getResultItems()) {
+				changes.add(new Change(item));
+			}
+			changesByResult.add(changes);
+		}
+
+		mLock.writeLock().lock();
+		try {
+			mPolls++;
+			mLastUpdate = System.currentTimeMillis();
+			Iterator<List<Change>> changesIterator = changesByResult.iterator();
+			for (SearchResult result : pollResult.getResults()) {
+				List<Change> changes = changesIterator.next();
+				switch (result.getType()) {
+				case searchResult:
+					// a search result replaces the replica, even if it is empty
+					mMetadata.clear();
+					mNeighbours.clear();
+					mLinks = 0;
+					for (Change change : changes) {
+						update(change);
+					}
+					break;
+				case updateResult:
+					for (Change change : changes) {
+						update(change);
+					}
+					break;
+				case deleteResult:
+					for (Change change : changes) {
+						delete(change);
+					}
+					break;
+				case notifyResult:
+					mNotifications += changes.size();
+					break;
+				}
+			}
+		} finally {
+			mLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the keys of the identifiers linked to an identifier, each
+	 *         followed by the metadata types of the link
+	 */
+	List<String> neighbours(String key) {
+		mLock.readLock().lock();
+		try {
+			List<String> neighbours = new ArrayList<String>();
+			Set<String> keys = mNeighbours.get(key);
+			if (keys != null) {
+				for (String neighbour : keys) {
+					Set<String> types = new TreeSet<String>();
+					for (Metadata metadata : metadataOf(linkKey(key, neighbour))) {
+						types.add(metadata.mType);
+					}
+					neighbours.add(neighbour + " " + types);
+				}
+			}
+			return neighbours;
+		} finally {
+			mLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param key2 - the key of the other identifier for link metadata, or null
+	 * @param type - the metadata type, or null for all metadata
+	 * @return the metadata of an identifier or link as compact XML
+	 */
+	List<String> metadata(String key1, String key2, String type) {
+		mLock.readLock().lock();
+		try {
+			List<String> result = new ArrayList<String>();
+			for (Metadata metadata : metadataOf(key2 == null ? key1 : linkKey(key1, key2))) {
+				if (type == null || type.equals(metadata.mType)) {
+					result.add(metadata.mXml);
+				}
+			}
+			return result;
+		} finally {
+			mLock.readLock().unlock();
+		}
+	}
+
+	String stats() {
+		mLock.readLock().lock();
+		try {
+			int metadata = 0;
+			for (List<Metadata> list : mMetadata.values()) {
+				metadata += list.size();
+			}
+			return (mMetadata.size() - mLinks) + " identifiers, " + mLinks + " links, "
+					+ metadata + " metadata, " + mPolls + " polls, "
+					+ mNotifications + " notifications, last update "
+					+ (mLastUpdate == 0 ? "never" : (System.currentTimeMillis() - mLastUpdate) + "ms ago");
+		} finally {
+			mLock.readLock().unlock();
+		}
+	}
+
+	private void update(Change change) {
+		String key = change.mKey1;
+		if (change.mKey2 != null) {
+			key = linkKey(change.mKey1, change.mKey2);
+			addNeighbour(change.mKey1, change.mKey2);
+			addNeighbour(change.mKey2, change.mKey1);
+			ensure(change.mKey1);
+			ensure(change.mKey2);
+		}
+		List<Metadata> list = mMetadata.get(key);
+		if (list == null) {
+			list = new ArrayList<Metadata>(Math.max(1, change.mMetadata.size()));
+			mMetadata.put(key, list);
+			if (change.mKey2 != null) {
+				mLinks++;
+			}
+		}
+		for (Metadata metadata : change.mMetadata) {
+			if (metadata.mSingleValue) {
+				removeType(list, metadata.mType);
+			}
+			list.add(metadata);
+		}
+	}
+
+	private void delete(Change change) {
+		String key = change.mKey2 == null ? change.mKey1 : linkKey(change.mKey1, change.mKey2);
+		List<Metadata> list = mMetadata.get(key);
+		if (list == null) {
+			return;
+		}
+		for (Metadata metadata : change.mMetadata) {
+			for (Iterator<Metadata> it = list.iterator(); it.hasNext();) {
+				if (it.next().mHash == metadata.mHash) {
+					it.remove();
+					break;
+				}
+			}
+		}
+		if (!list.isEmpty()) {
+			return;
+		}
+
+		// a link without metadata no longer exists, nor does an identifier
+		// without metadata and links
+		if (change.mKey2 != null) {
+			mMetadata.remove(key);
+			mLinks--;
+			removeNeighbour(change.mKey1, change.mKey2);
+			removeNeighbour(change.mKey2, change.mKey1);
+			removeIfUnused(change.mKey1);
+			removeIfUnused(change.mKey2);
+		} else {
+			removeIfUnused(change.mKey1);
+		}
+	}
+
+	private void ensure(String key) {
+		if (!mMetadata.containsKey(key)) {
+			mMetadata.put(key, new ArrayList<Metadata>(1));
+		}
+	}
+
+	private void addNeighbour(String key, String neighbour) {
+		Set<String> neighbours = mNeighbours.get(key);
+		if (neighbours == null) {
+			neighbours = new TreeSet<String>();
+			mNeighbours.put(key, neighbours);
+		}
+		neighbours.add(neighbour);
+	}
+
+	private void removeNeighbour(String key, String neighbour) {
+		Set<String> neighbours = mNeighbours.get(key);
+		if (neighbours != null) {
+			neighbours.remove(neighbour);
+			if (neighbours.isEmpty()) {
+				mNeighbours.remove(key);
+			}
+		}
+	}
+
+	private void removeIfUnused(String key) {
+		List<Metadata> list = mMetadata.get(key);
+		if (list != null && list.isEmpty() && !mNeighbours.containsKey(key)) {
+			mMetadata.remove(key);
+		}
+	}
+
+	private List<Metadata> metadataOf(String key) {
+		List<Metadata> list = mMetadata.get(key);
+		return list != null ? list : new ArrayList<Metadata>(0);
+	}
+
+	private static void removeType(List<Metadata> list, String type) {
+		for (Iterator<Metadata> it = list.iterator(); it.hasNext();) {
+			if (it.next().mType.equals(type)) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return the key of the link between two identifiers, which does not
+	 *         depend on their order
+	 */
+	private static String linkKey(String key1, String key2) {
+		return key1.compareTo(key2) <= 0 ? key1 + " | " + key2 : key2 + " | " + key1;
+	}
+}
@@ -45,6 +45,7 @@ import org.w3c.dom.Document;
 import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
 import de.hshannover.f4.trust.ifmapcli.common.IfmapjEnumConverter;
 import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
+import de.hshannover.f4.trust.ifmapcli.common.PublishRequestFactory;
 import de.hshannover.f4.trust.ifmapcli.common.enums.IdType;
 import de.hshannover.f4.trust.ifmapcli.common.enums.Significance;
 import de.hshannover.f4.trust.ifmapj.binding.IfmapStrings;
@@ -79,8 +80,15 @@ public class UnexpBehavior extends AbstractClient {
 		ParserUtil.addSignificance(parser);
 		ParserUtil.addUnexpBehaviorType(parser);
 
-		parseParameters(parser, args);
-		
+		publishIfmapData(parser, args, new PublishRequestFactory() {
+			@Override
+			public PublishRequest createPublishRequest() {
+				return createRequest();
+			}
+		});
+	}
+
+	private static PublishRequest createRequest() {
 		printParameters(KEY_OPERATION, new String[] {KEY_IDENTIFIER_TYPE, KEY_IDENTIFIER, KEY_DISCOVERED_TIME, KEY_DISCOVERER_ID, KEY_INFORMATION, KEY_MAGNITUDE, KEY_CONFIDENCE, KEY_SIGNIFICANCE, KEY_UNEXP_BEHAVIOR_TYPE});
 
 		Identifier identifier = getIdentifier();
@@ -108,7 +116,6 @@ public class UnexpBehavior extends AbstractClient {
 			request = Requests.createPublishReq(publishDelete);
 		}
 
-		// publish
-		publishIfmapData(request);
+		return request;
 	}
 }
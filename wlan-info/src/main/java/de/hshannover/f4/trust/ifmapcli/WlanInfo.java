@@ -47,6 +47,7 @@ import org.w3c.dom.Document;
 import de.hshannover.f4.trust.ifmapcli.common.AbstractClient;
 import de.hshannover.f4.trust.ifmapcli.common.IfmapjEnumConverter;
 import de.hshannover.f4.trust.ifmapcli.common.ParserUtil;
+import de.hshannover.f4.trust.ifmapcli.common.PublishRequestFactory;
 import de.hshannover.f4.trust.ifmapcli.common.enums.WlanSecurityEnum;
 import de.hshannover.f4.trust.ifmapj.binding.IfmapStrings;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
@@ -79,8 +80,15 @@ public class WlanInfo extends AbstractClient {
 		ParserUtil.addWlanInfoGroupSecurity(parser);
 		ParserUtil.addWlanInfoManagementSecurity(parser);
 		
-		parseParameters(parser, args);
-		
+		publishIfmapData(parser, args, new PublishRequestFactory() {
+			@Override
+			public PublishRequest createPublishRequest() {
+				return createRequest();
+			}
+		});
+	}
+
+	private static PublishRequest createRequest() {
 		printParameters(KEY_OPERATION, new String[] {KEY_ACCESS_REQUEST, 
 				KEY_DEVICE,
 				KEY_WLAN_INFORMATION_SSID,
@@ -119,7 +127,6 @@ public class WlanInfo extends AbstractClient {
 			request = Requests.createPublishReq(publishDelete);
 		}
 
-		// publish
-		publishIfmapData(request);
+		return request;
 	}
 }